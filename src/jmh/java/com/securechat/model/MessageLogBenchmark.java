@@ -0,0 +1,53 @@
+package com.securechat.model;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of concurrent appends to the message log, against the synchronized Vector it
+ * replaced. Run with {@code -t} to compare other sender counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MessageLogBenchmark {
+
+    private static final Message MESSAGE = new Message("alice", "bob", "Hello", new byte[64]);
+
+    private MessageLog log;
+    private Vector<Message> vector;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        log = new MessageLog();
+        vector = new Vector<>();
+    }
+
+    @Benchmark
+    public long appendLog() {
+        return log.append(new Message(MESSAGE.getSender(), MESSAGE.getReceiver(), MESSAGE.getOriginalContent(),
+                MESSAGE.getCiphertext()));
+    }
+
+    @Benchmark
+    public boolean appendVector() {
+        return vector.add(new Message(MESSAGE.getSender(), MESSAGE.getReceiver(), MESSAGE.getOriginalContent(),
+                MESSAGE.getCiphertext()));
+    }
+}
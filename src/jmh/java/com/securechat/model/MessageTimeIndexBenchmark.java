@@ -0,0 +1,66 @@
+package com.securechat.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of "what is new since my last login" over a long history: the time index,
+ * against scanning a snapshot of the log for the participant's recent messages.
+ * Ten participants each receive one message per second; the query covers the last minute.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageTimeIndexBenchmark {
+
+    private static final int PARTICIPANTS = 10;
+
+    @Param({"10000", "1000000"})
+    public int historySize;
+
+    private MessageListModel messageModel;
+    private long lastLogin;
+
+    @Setup
+    public void setUp() {
+        messageModel = new MessageListModel();
+        MessageLog log = messageModel.getMessageLog();
+        long start = System.currentTimeMillis() - historySize * 100L;
+        for (int i = 0; i < historySize; i++) {
+            // Restored so the history spans a long time without waiting for it
+            log.restore(new Message("alice", "user" + i % PARTICIPANTS, null, new byte[16]), start + i * 100L);
+        }
+        lastLogin = start + historySize * 100L - TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Benchmark
+    public List<Message> inboxSinceIndexed() {
+        return messageModel.getInboxSince("user3", lastLogin);
+    }
+
+    @Benchmark
+    public List<Message> inboxSinceScan() {
+        List<Message> recent = new ArrayList<>();
+        for (Message message : messageModel.getMessages()) {
+            if (message.getTimestamp() >= lastLogin && message.getReceiver().equals("user3")) {
+                recent.add(message);
+            }
+        }
+        return recent;
+    }
+}
@@ -0,0 +1,69 @@
+package com.securechat.model;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the per-message filter the chat view and message proxy apply to a page of
+ * messages: which ones the user sent. Compares the pseudonyms, as typed at login and so not
+ * the same String instances, against comparing interned participant ids.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParticipantFilterBenchmark {
+
+    private static final int PARTICIPANTS = 10;
+    private static final int MESSAGES = 10000;
+
+    private List<Message> messages;
+    private String me;
+    private int myId;
+
+    @Setup
+    public void setUp() {
+        MessageListModel messageModel = new MessageListModel();
+        for (int i = 0; i < MESSAGES; i++) {
+            messageModel.sendMessage("participant-" + i % PARTICIPANTS, "participant-" + (i + 1) % PARTICIPANTS,
+                    null, new byte[16]);
+        }
+        messages = messageModel.getMessages();
+        me = new String("participant-3");
+        myId = messageModel.getParticipantIds().userId(me);
+    }
+
+    @Benchmark
+    public int sentByName() {
+        int sent = 0;
+        for (Message message : messages) {
+            if (message.getSender().equals(me)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    @Benchmark
+    public int sentById() {
+        int sent = 0;
+        for (Message message : messages) {
+            if (message.getSenderId() == myId) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+}
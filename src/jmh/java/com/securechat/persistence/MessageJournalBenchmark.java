@@ -0,0 +1,82 @@
+package com.securechat.persistence;
+
+import com.securechat.model.Message;
+import com.securechat.model.MessageLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the message journal's write path.
+ * {@code append} only copies the record into the mapped segment and leaves durability to
+ * the next group commit; {@code appendDurable} waits for that commit; {@code appendForced}
+ * forces the segment after every message, as a journal without group commit would.
+ * Every iteration starts a fresh journal in a temporary directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageJournalBenchmark {
+
+    @Param({"256"})
+    public int messageSize;
+
+    private Path directory;
+    private MessageJournal journal;
+    private Message message;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new MessageJournal(directory, MessageJournal.DEFAULT_SEGMENT_SIZE, MessageJournal.DEFAULT_FLUSH_MILLIS);
+        message = new Message("alice", "bob", null, new byte[messageSize], new byte[256]);
+        new MessageLog().append(message);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Object append() {
+        return journal.append(message);
+    }
+
+    @Benchmark
+    public Object appendDurable() {
+        return journal.append(message).join();
+    }
+
+    @Benchmark
+    public Object appendForced() {
+        Object committed = journal.append(message);
+        journal.flush();
+        return committed;
+    }
+}
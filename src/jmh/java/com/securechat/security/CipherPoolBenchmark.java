@@ -0,0 +1,79 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a fresh {@link Cipher#getInstance(String)} per operation against the
+ * thread-confined {@link CipherPool}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CipherPoolBenchmark {
+
+    private static final String GCM = "AES/GCM/NoPadding";
+    private static final String OAEP = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private final byte[] message = "Hello, this is a typical chat message!".getBytes();
+    private final byte[] iv = new byte[12];
+    private final SecureRandom random = new SecureRandom();
+    private SecretKey key;
+    private KeyPair keyPair;
+
+    @Setup
+    public void setUp() {
+        key = RSAUtil.generateContentKey();
+        keyPair = RSAUtil.generateKeyPair();
+    }
+
+    @Benchmark
+    public byte[] gcmEncryptFreshCipher() throws Exception {
+        return gcmEncrypt(Cipher.getInstance(GCM));
+    }
+
+    @Benchmark
+    public byte[] gcmEncryptPooledCipher() throws Exception {
+        return gcmEncrypt(CipherPool.cipher(GCM));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] oaepWrapFreshCipher() throws Exception {
+        return oaepWrap(Cipher.getInstance(OAEP));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] oaepWrapPooledCipher() throws Exception {
+        return oaepWrap(CipherPool.cipher(OAEP));
+    }
+
+    private byte[] gcmEncrypt(Cipher cipher) throws Exception {
+        random.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(message);
+    }
+
+    private byte[] oaepWrap(Cipher cipher) throws Exception {
+        cipher.init(Cipher.WRAP_MODE, keyPair.getPublic());
+        return cipher.wrap(key);
+    }
+}
@@ -0,0 +1,75 @@
+package com.securechat.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Side-by-side benchmarks of the RSA and EC providers for the operations that involve
+ * user keys: key generation, key wrapping and unwrapping, and signing and verification.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoProviderBenchmark {
+
+    @Param({"rsa", "ec"})
+    public String provider;
+
+    private CryptoProvider crypto;
+    private KeyPair keyPair;
+    private SecretKey contentKey;
+    private byte[] wrappedKey;
+    private byte[] data;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() {
+        crypto = CryptoProviders.forName(provider);
+        keyPair = crypto.generateKeyPair();
+        contentKey = RSAUtil.generateContentKey();
+        wrappedKey = crypto.wrapKey(contentKey, keyPair.getPublic());
+        data = "benchmark message signed by its sender".getBytes(StandardCharsets.UTF_8);
+        signature = crypto.sign(data, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return crypto.generateKeyPair();
+    }
+
+    @Benchmark
+    public byte[] wrapKey() {
+        return crypto.wrapKey(contentKey, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public SecretKey unwrapKey() {
+        return crypto.unwrapKey(wrappedKey, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return crypto.sign(data, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return crypto.verify(data, signature, keyPair.getPublic());
+    }
+}
@@ -0,0 +1,55 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of RSAUtil hybrid envelope encryption across message sizes,
+ * including sizes that raw RSA cannot handle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HybridEncryptionBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int messageSize;
+
+    private KeyPair keyPair;
+    private String message;
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        keyPair = RSAUtil.generateKeyPair();
+        char[] chars = new char[messageSize];
+        Arrays.fill(chars, 'a');
+        message = new String(chars);
+        encrypted = RSAUtil.encryptHybrid(message, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public String encryptHybrid() {
+        return RSAUtil.encryptHybrid(message, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public String decryptHybrid() {
+        return RSAUtil.decryptHybrid(encrypted, keyPair.getPrivate());
+    }
+}
@@ -0,0 +1,28 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of RSAUtil key pair generation. Key generation time varies widely with
+ * the primes found, so it is measured as many single shots rather than a throughput.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class KeyPairGenerationBenchmark {
+
+    @Benchmark
+    public KeyPair generateKeyPair() {
+        return RSAUtil.generateKeyPair();
+    }
+}
@@ -0,0 +1,100 @@
+package com.securechat.security;
+
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+import com.securechat.model.User;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of MessageProxy send and decrypt round trips.
+ * Every iteration sends and decrypts a new message, so the plain text cache never hits.
+ * The warm variant reuses the conversation's session key; the cold variant starts from
+ * empty caches, paying session setup and the private-key unwrap for every message.
+ * Console logging of sends is silenced during the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageProxyBenchmark {
+
+    @Param({"16", "1024"})
+    public int messageSize;
+
+    private LastMessageModel messageModel;
+    private MessageProxy messageProxy;
+    private User alice;
+    private User bob;
+    private String message;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        messageModel = new LastMessageModel();
+        messageProxy = new MessageProxy(messageModel);
+        KeyPair aliceKeys = RSAUtil.generateKeyPair();
+        KeyPair bobKeys = RSAUtil.generateKeyPair();
+        alice = new User("1", "alice", "hash", () -> aliceKeys);
+        bob = new User("2", "bob", "hash", () -> bobKeys);
+        char[] chars = new char[messageSize];
+        Arrays.fill(chars, 'a');
+        message = new String(chars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public String roundTripWarmSession() {
+        messageProxy.sendEncryptedMessage(alice, bob, message);
+        return messageProxy.decryptMessage(messageModel.last, bob);
+    }
+
+    @Benchmark
+    public String roundTripColdSession() {
+        MessageProxy coldProxy = new MessageProxy(messageModel);
+        coldProxy.sendEncryptedMessage(alice, bob, message);
+        return coldProxy.decryptMessage(messageModel.last, bob);
+    }
+
+    /**
+     * Message model that only keeps the last message, so benchmarks do not accumulate history.
+     */
+    private static class LastMessageModel extends MessageListModel {
+        Message last;
+
+        @Override
+        public synchronized void sendMessage(String sender, String receiver, String original, byte[] encrypted,
+                                             byte[] signature) {
+            last = new Message(sender, receiver, original, encrypted, signature);
+        }
+    }
+}
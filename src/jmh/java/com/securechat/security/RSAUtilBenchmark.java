@@ -0,0 +1,55 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of RSAUtil raw RSA encryption and decryption.
+ * Raw RSA is limited to one RSA block, so message sizes stay below 245 bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RSAUtilBenchmark {
+
+    @Param({"16", "128", "240"})
+    public int messageSize;
+
+    private KeyPair keyPair;
+    private String message;
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        keyPair = RSAUtil.generateKeyPair();
+        char[] chars = new char[messageSize];
+        Arrays.fill(chars, 'a');
+        message = new String(chars);
+        encrypted = RSAUtil.encrypt(message, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return RSAUtil.encrypt(message, keyPair.getPublic());
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return RSAUtil.decrypt(encrypted, keyPair.getPrivate());
+    }
+}
@@ -2,10 +2,20 @@ package com.securechat.controller;
 
 import com.securechat.model.ParticipantListModel;
 import com.securechat.model.MessageListModel;
+import com.securechat.model.User;
+import com.securechat.persistence.JournalCompactor;
+import com.securechat.persistence.MessageJournal;
+import com.securechat.security.CryptoProviders;
+import com.securechat.security.KeyPairPool;
+import com.securechat.security.KeyRotationJob;
+import com.securechat.security.RandomSource;
+import com.securechat.security.UserKeyStore;
 import com.securechat.view.LoginView;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application controller for the Secure Chat application.
@@ -26,6 +36,9 @@ public class SecureChatApplication {
             System.err.println("Warning: Could not set system look and feel: " + e.getMessage());
         }
 
+        // Start pre-generating key pairs so registration does not block the UI
+        KeyPairPool.getDefault();
+
         // Run the application on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             initializeApplication();
@@ -37,13 +50,18 @@ public class SecureChatApplication {
      */
     private static void initializeApplication() {
         System.out.println("Starting Secure Chat Application...");
+        System.out.println("Crypto provider: " + CryptoProviders.getDefault().getName());
+        RandomSource.current();
+        System.out.println("Random source: " + RandomSource.getSource() + " (seeded in "
+                + TimeUnit.NANOSECONDS.toMillis(RandomSource.getMaxSeedNanos()) + " ms)");
         
         // Create the models
-        ParticipantListModel participantModel = new ParticipantListModel();
-        MessageListModel messageModel = new MessageListModel();
+        ParticipantListModel participantModel = new ParticipantListModel(openKeyStore());
+        MessageListModel messageModel = new MessageListModel(openJournal(), participantModel.getParticipantIds());
 
         // Pre-populate with demo users for testing
         setupDemoUsers(participantModel);
+        resumeKeyRotations(participantModel, messageModel);
 
         // Launch the login screen
         new LoginView(participantModel, messageModel);
@@ -51,6 +69,73 @@ public class SecureChatApplication {
         System.out.println("Application initialized successfully.");
     }
 
+    /**
+     * Opens the persistent key store so users keep their keys across restarts.
+     * 
+     * @return The key store, or null if it cannot be opened (keys are then not persisted)
+     */
+    private static UserKeyStore openKeyStore() {
+        try {
+            return UserKeyStore.openDefault();
+        } catch (RuntimeException e) {
+            System.err.println("Warning: Could not open key store, keys will not be persisted: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the message journal so messages survive restarts, starts its compactor, and
+     * closes both on exit so the last appends are flushed.
+     * 
+     * @return The journal, or null if it cannot be opened (messages are then kept in memory only)
+     */
+    private static MessageJournal openJournal() {
+        MessageJournal journal;
+        try {
+            journal = MessageJournal.openDefault();
+        } catch (RuntimeException e) {
+            System.err.println("Warning: Could not open message journal, messages will not be persisted: "
+                    + e.getMessage());
+            return null;
+        }
+        System.out.println("Message journal: " + journal.getRecoveredEntries().size() + " messages recovered"
+                + (journal.wasTruncated() ? ", torn tail truncated" : ""));
+        JournalCompactor compactor = JournalCompactor.startDefault(journal);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            compactor.close();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Warning: Could not close message journal: " + e.getMessage());
+            }
+        }, "journal-shutdown"));
+        return journal;
+    }
+
+    /**
+     * Resumes key rotations that were interrupted, e.g. by a crash, in the background.
+     * 
+     * @param participantModel The participant model holding the users
+     * @param messageModel The message model holding their messages
+     */
+    private static void resumeKeyRotations(ParticipantListModel participantModel, MessageListModel messageModel) {
+        UserKeyStore keyStore = participantModel.getKeyStore();
+        if (keyStore == null) {
+            return;
+        }
+        for (User user : participantModel.getParticipants()) {
+            if (keyStore.hasPrevious(user.getId())) {
+                System.out.println("Resuming key rotation for " + user.getPseudoName() + "...");
+                new KeyRotationJob(messageModel, user, keyStore).start().whenComplete((count, error) -> {
+                    if (error != null) {
+                        System.err.println("Warning: Key rotation for " + user.getPseudoName() + " failed: "
+                                + error.getMessage());
+                    }
+                });
+            }
+        }
+    }
+
     /**
      * Sets up demo users for testing purposes.
      * In a production environment, this would be replaced with database initialization.
@@ -66,7 +151,9 @@ public class SecureChatApplication {
         participantModel.registerParticipant("3", "bob", "123456");
         participantModel.registerParticipant("4", "charlie", "secure");
         
-        System.out.println("Demo users created:");
+        KeyPairPool keyPool = KeyPairPool.getDefault();
+        System.out.println("Demo users created (key pool hits: " + keyPool.getHits()
+                + ", misses: " + keyPool.getMisses() + "):");
         System.out.println("- admin / admin123");
         System.out.println("- alice / password");
         System.out.println("- bob / 123456");
@@ -0,0 +1,97 @@
+package com.securechat.model;
+
+import java.nio.file.Path;
+
+/**
+ * Represents a file attachment sent to a user.
+ * The file itself is stored encrypted on disk; the message only carries its
+ * location, its name and size, and the content key wrapped for the receiver together
+ * with a commitment to that key, which is what the sender signs.
+ */
+public class AttachmentMessage extends Message {
+    private String fileName;
+    private long fileSize;
+    private Path encryptedFile;
+    private byte[] keyCommitment;
+
+    /**
+     * Creates a new attachment message with the specified details, interning the participants
+     * in a table of its own.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param fileName The original name of the attached file
+     * @param fileSize The size of the attached file in bytes
+     * @param encryptedFile The location of the encrypted file
+     * @param wrappedKey The file's content key wrapped for the receiver
+     * @param keyCommitment The commitment to the file's content key
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public AttachmentMessage(String sender, String receiver, String fileName, long fileSize,
+                             Path encryptedFile, byte[] wrappedKey, byte[] keyCommitment, byte[] signature) {
+        this(new ParticipantIds(), sender, receiver, fileName, fileSize, encryptedFile, wrappedKey,
+                keyCommitment, signature);
+    }
+
+    /**
+     * Creates a new attachment message with the specified details, interning the participants
+     * in the given table, e.g. the one of the message model it is stored in.
+     * 
+     * @param participantIds The table to intern the sender and receiver in
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param fileName The original name of the attached file
+     * @param fileSize The size of the attached file in bytes
+     * @param encryptedFile The location of the encrypted file
+     * @param wrappedKey The file's content key wrapped for the receiver
+     * @param keyCommitment The commitment to the file's content key
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public AttachmentMessage(ParticipantIds participantIds, String sender, String receiver, String fileName,
+                             long fileSize, Path encryptedFile, byte[] wrappedKey, byte[] keyCommitment,
+                             byte[] signature) {
+        super(participantIds, sender, receiver, "📎 " + fileName + " (" + fileSize + " bytes)", wrappedKey,
+                signature);
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.encryptedFile = encryptedFile;
+        this.keyCommitment = keyCommitment;
+    }
+
+    /**
+     * Gets the original name of the attached file.
+     * 
+     * @return The file name
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets the size of the attached file.
+     * 
+     * @return The file size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the location of the encrypted file.
+     * 
+     * @return The encrypted file path
+     */
+    public Path getEncryptedFile() {
+        return encryptedFile;
+    }
+
+    /**
+     * Gets the commitment to the file's content key.
+     * The returned array is shared with the message and must not be modified.
+     * 
+     * @return The key commitment
+     */
+    public byte[] getKeyCommitment() {
+        return keyCommitment;
+    }
+}
@@ -0,0 +1,42 @@
+package com.securechat.model;
+
+/**
+ * Change to a {@link CourseModel}, passed to observers as the notification argument.
+ */
+public final class CourseEvent {
+
+    /**
+     * Kinds of course changes.
+     */
+    public enum Type {
+        /** The course ID changed; the content is unchanged. */
+        ID_CHANGED,
+        /** The course file path changed, so the content must be reloaded. */
+        PATH_CHANGED
+    }
+
+    private final Type type;
+
+    /**
+     * Creates a course event.
+     * 
+     * @param type The kind of change
+     */
+    public CourseEvent(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the kind of change.
+     * 
+     * @return The event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return type.toString();
+    }
+}
@@ -4,7 +4,7 @@ import java.util.Observable;
 
 /**
  * Model class for managing course information in the application.
- * Handles course data and notifies observers of changes.
+ * Handles course data and notifies observers of changes with a {@link CourseEvent}.
  */
 public class CourseModel extends Observable {
     private int courseId;
@@ -38,7 +38,7 @@ public class CourseModel extends Observable {
     public void setCourseId(int id) {
         this.courseId = id;
         setChanged();
-        notifyObservers();
+        notifyObservers(new CourseEvent(CourseEvent.Type.ID_CHANGED));
     }
 
     /**
@@ -58,6 +58,6 @@ public class CourseModel extends Observable {
     public void setCoursePath(String coursePath) {
         this.coursePath = coursePath;
         setChanged();
-        notifyObservers();
+        notifyObservers(new CourseEvent(CourseEvent.Type.PATH_CHANGED));
     }
 }
@@ -0,0 +1,160 @@
+package com.securechat.model;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents a message sent to a group of users.
+ * The body is encrypted once under a symmetric content key, and the message keeps
+ * a key table with that content key wrapped for each recipient.
+ * The key table is kept as arrays of the recipients' interned ids and wrapped keys. The
+ * group's id is in the group namespace of the {@link ParticipantIds}, apart from the
+ * participants' ids.
+ */
+public class GroupMessage extends Message {
+    private int[] recipientIds;
+    private byte[][] wrappedKeys;
+
+    /**
+     * Creates a new group message with the specified details, interning the participants
+     * in a table of its own.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param groupName The name of the group the message was sent to
+     * @param originalContent The original plain text message
+     * @param encryptedContent The body encrypted under the content key
+     * @param wrappedKeys The content key wrapped for each recipient, keyed by recipient pseudonym
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public GroupMessage(String sender, String groupName, String originalContent, byte[] encryptedContent,
+                        Map<String, byte[]> wrappedKeys, byte[] signature) {
+        this(new ParticipantIds(), sender, groupName, originalContent, encryptedContent, wrappedKeys, signature);
+    }
+
+    /**
+     * Creates a new group message with the specified details, interning the participants
+     * in the given table, e.g. the one of the message model it is stored in.
+     * 
+     * @param participantIds The table to intern the sender, group and recipients in
+     * @param sender The pseudonym of the message sender
+     * @param groupName The name of the group the message was sent to
+     * @param originalContent The original plain text message
+     * @param encryptedContent The body encrypted under the content key
+     * @param wrappedKeys The content key wrapped for each recipient, keyed by recipient pseudonym
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public GroupMessage(ParticipantIds participantIds, String sender, String groupName, String originalContent,
+                        byte[] encryptedContent, Map<String, byte[]> wrappedKeys, byte[] signature) {
+        super(participantIds, participantIds.internUser(sender), participantIds.internGroup(groupName),
+                originalContent, encryptedContent, signature);
+        this.recipientIds = new int[wrappedKeys.size()];
+        this.wrappedKeys = new byte[wrappedKeys.size()][];
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : wrappedKeys.entrySet()) {
+            recipientIds[i] = participantIds.internUser(entry.getKey());
+            this.wrappedKeys[i++] = entry.getValue();
+        }
+    }
+
+    /**
+     * Gets the name of the group the message was sent to.
+     * 
+     * @return The group name
+     */
+    public String getGroupName() {
+        return getReceiver();
+    }
+
+    /**
+     * Gets the pseudonyms of all recipients.
+     * 
+     * @return The recipients' pseudonyms
+     */
+    public Set<String> getRecipients() {
+        ParticipantIds ids = getParticipantIds();
+        Set<String> recipients = new LinkedHashSet<>();
+        for (int recipientId : recipientIds) {
+            recipients.add(ids.nameOf(recipientId));
+        }
+        return Collections.unmodifiableSet(recipients);
+    }
+
+    /**
+     * Gets the interned ids of all recipients.
+     * The returned array is shared with the message and must not be modified.
+     * 
+     * @return The recipients' ids in {@link #getParticipantIds()}, in the order of the key table
+     */
+    public int[] getRecipientIds() {
+        return recipientIds;
+    }
+
+    /**
+     * Checks whether the given user is a recipient of this message.
+     * 
+     * @param pseudo The pseudonym to check
+     * @return true if the user is a recipient, false otherwise
+     */
+    public boolean isRecipient(String pseudo) {
+        return indexOf(getParticipantIds().userId(pseudo)) >= 0;
+    }
+
+    /**
+     * Checks whether the given participant is a recipient of this message.
+     * 
+     * @param participantId The participant's id in {@link #getParticipantIds()}
+     * @return true if the participant is a recipient, false otherwise
+     */
+    public boolean isRecipient(int participantId) {
+        return indexOf(participantId) >= 0;
+    }
+
+    /**
+     * Gets the content key wrapped for the given recipient.
+     * 
+     * @param pseudo The recipient's pseudonym
+     * @return The wrapped content key, or null if the user is not a recipient
+     */
+    public byte[] getWrappedKey(String pseudo) {
+        return getWrappedKey(getParticipantIds().userId(pseudo));
+    }
+
+    /**
+     * Gets the content key wrapped for the given recipient.
+     * 
+     * @param participantId The recipient's id in {@link #getParticipantIds()}
+     * @return The wrapped content key, or null if the participant is not a recipient
+     */
+    public byte[] getWrappedKey(int participantId) {
+        int i = indexOf(participantId);
+        return i >= 0 ? wrappedKeys[i] : null;
+    }
+
+    @Override
+    void intern(ParticipantIds ids) {
+        ParticipantIds current = getParticipantIds();
+        if (ids != current) {
+            for (int i = 0; i < recipientIds.length; i++) {
+                recipientIds[i] = ids.internUser(current.nameOf(recipientIds[i]));
+            }
+        }
+        super.intern(ids);
+    }
+
+    /**
+     * Finds a recipient in the key table; groups are small, so a scan beats hashing.
+     */
+    private int indexOf(int participantId) {
+        if (participantId == ParticipantIds.UNKNOWN) {
+            return -1;
+        }
+        for (int i = 0; i < recipientIds.length; i++) {
+            if (recipientIds[i] == participantId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.securechat.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of message history, read backwards from a sequence number.
+ * Pages are requested with a cursor: the first page with {@link #LATEST}, each older page
+ * with the {@link #getOlderCursor() cursor} of the page before it.
+ */
+public final class HistoryPage {
+
+    /** Cursor of the newest page. */
+    public static final long LATEST = Long.MAX_VALUE;
+
+    private final List<Message> messages;
+    private final boolean hasOlder;
+    private final long olderCursor;
+
+    /**
+     * Creates a page of history read from the message log.
+     *
+     * @param messages The messages of the page, oldest first
+     * @param hasOlder Whether older messages exist before the page
+     */
+    HistoryPage(List<Message> messages, boolean hasOlder) {
+        this(messages, hasOlder, messages.isEmpty() ? LATEST : messages.get(0).getSequence());
+    }
+
+    /**
+     * Creates a page of history with its own cursor, e.g. a position in the message journal.
+     *
+     * @param messages The messages of the page, oldest first
+     * @param hasOlder Whether older messages exist before the page
+     * @param olderCursor The cursor to read the page before this one
+     */
+    HistoryPage(List<Message> messages, boolean hasOlder, long olderCursor) {
+        this.messages = Collections.unmodifiableList(messages);
+        this.hasOlder = hasOlder;
+        this.olderCursor = olderCursor;
+    }
+
+    /**
+     * Gets the messages of the page.
+     *
+     * @return The messages, oldest first
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Checks whether older messages exist before this page.
+     *
+     * @return true if another page can be read with {@link #getOlderCursor()}
+     */
+    public boolean hasOlder() {
+        return hasOlder;
+    }
+
+    /**
+     * Gets the cursor to read the page before this one.
+     *
+     * @return The position of the oldest message on the page, or {@link #LATEST} if the page is empty
+     */
+    public long getOlderCursor() {
+        return olderCursor;
+    }
+}
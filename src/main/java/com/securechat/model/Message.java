@@ -1,14 +1,26 @@
 package com.securechat.model;
 
+import java.util.Base64;
+
 /**
  * Represents a message in the secure chat application.
  * Contains both the original plain text and encrypted content.
+ * The encrypted content is kept as raw bytes; Base64 is only produced for display.
+ * Messages sent through the message proxy also carry the sender's signature.
+ * Sender and receiver are kept as ids in a {@link ParticipantIds} table, so a message holds no
+ * names of its own; they are resolved from the table for display.
+ * Once stored, a message has a stable sequence number in the message log, the time it was stored,
+ * and ids in the {@link ParticipantIds} of the message model, for filtering by integer comparison.
  */
 public class Message {
-    private String sender;
-    private String receiver;
-    private String encryptedContent;
+    private ParticipantIds participantIds;
+    private int senderId;
+    private int receiverId;
+    private byte[] encryptedContent;
     private String originalContent;
+    private byte[] signature;
+    private long sequence = -1;
+    private long timestamp;
 
     /**
      * Creates a new message with the specified details.
@@ -18,11 +30,52 @@ public class Message {
      * @param originalContent The original plain text message
      * @param encryptedContent The encrypted version of the message
      */
-    public Message(String sender, String receiver, String originalContent, String encryptedContent) {
-        this.sender = sender;
-        this.receiver = receiver;
+    public Message(String sender, String receiver, String originalContent, byte[] encryptedContent) {
+        this(sender, receiver, originalContent, encryptedContent, null);
+    }
+
+    /**
+     * Creates a new signed message with the specified details, interning the participants
+     * in a table of its own.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param originalContent The original plain text message
+     * @param encryptedContent The encrypted version of the message
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public Message(String sender, String receiver, String originalContent, byte[] encryptedContent, byte[] signature) {
+        this(new ParticipantIds(), sender, receiver, originalContent, encryptedContent, signature);
+    }
+
+    /**
+     * Creates a new signed message with the specified details, interning the participants
+     * in the given table, e.g. the one of the message model it is stored in.
+     * 
+     * @param participantIds The table to intern the sender and receiver in
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param originalContent The original plain text message
+     * @param encryptedContent The encrypted version of the message
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public Message(ParticipantIds participantIds, String sender, String receiver, String originalContent,
+                   byte[] encryptedContent, byte[] signature) {
+        this(participantIds, participantIds.internUser(sender), participantIds.internUser(receiver),
+                originalContent, encryptedContent, signature);
+    }
+
+    /**
+     * Creates a new message whose participants are already interned in the given table.
+     */
+    Message(ParticipantIds participantIds, int senderId, int receiverId, String originalContent,
+            byte[] encryptedContent, byte[] signature) {
+        this.participantIds = participantIds;
+        this.senderId = senderId;
+        this.receiverId = receiverId;
         this.originalContent = originalContent;
         this.encryptedContent = encryptedContent;
+        this.signature = signature;
     }
 
     /**
@@ -31,7 +84,7 @@ public class Message {
      * @return The sender's pseudonym
      */
     public String getSender() {
-        return sender;
+        return participantIds.nameOf(senderId);
     }
 
     /**
@@ -40,18 +93,117 @@ public class Message {
      * @return The receiver's pseudonym
      */
     public String getReceiver() {
-        return receiver;
+        return participantIds.nameOf(receiverId);
+    }
+
+    /**
+     * Gets the sender's interned id, for comparing participants without their names.
+     * 
+     * @return The sender's id in {@link #getParticipantIds()}
+     */
+    public int getSenderId() {
+        return senderId;
     }
 
     /**
-     * Gets the encrypted content of the message.
+     * Gets the receiver's interned id, for comparing participants without their names.
      * 
-     * @return The encrypted message content
+     * @return The receiver's id in {@link #getParticipantIds()}; the group's id for group messages
+     */
+    public int getReceiverId() {
+        return receiverId;
+    }
+
+    /**
+     * Gets the table the message's ids belong to: the message model's once it is stored.
+     * Ids of messages with different tables must not be compared.
+     * 
+     * @return The message's participant ids
+     */
+    public ParticipantIds getParticipantIds() {
+        return participantIds;
+    }
+
+    /**
+     * Moves the message's ids to another table, e.g. the message model's when it is stored.
+     * 
+     * @param ids The table to intern the participants in
+     */
+    void intern(ParticipantIds ids) {
+        if (ids == participantIds) {
+            return;
+        }
+        String receiver = getReceiver();
+        senderId = ids.internUser(getSender());
+        receiverId = ParticipantIds.isGroup(receiverId) ? ids.internGroup(receiver) : ids.internUser(receiver);
+        participantIds = ids;
+    }
+
+    /**
+     * Gets the encrypted content of the message as Base64 text, for display or export.
+     * 
+     * @return The Base64-encoded encrypted message content
      */
     public String getContent() {
+        return Base64.getEncoder().encodeToString(encryptedContent);
+    }
+
+    /**
+     * Gets the raw encrypted content of the message.
+     * The returned array is shared with the message and must not be modified.
+     * 
+     * @return The encrypted message bytes
+     */
+    public byte[] getCiphertext() {
         return encryptedContent;
     }
 
+    /**
+     * Gets the sender's signature over the message.
+     * The returned array is shared with the message and must not be modified.
+     * 
+     * @return The signature bytes, or null if the message is unsigned
+     */
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    /**
+     * Gets the message's position in the message log.
+     * 
+     * @return The sequence number, or -1 if the message has not been stored yet
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sets the message's position when it is stored in the message log.
+     * 
+     * @param sequence The sequence number
+     */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the time the message was stored in the message log.
+     * 
+     * @return The time in milliseconds since the epoch, or 0 if the message has not been stored yet
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Sets the time the message was stored in the message log.
+     * 
+     * @param timestamp The time in milliseconds since the epoch
+     */
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
     /**
      * Gets the original plain text content of the message.
      * 
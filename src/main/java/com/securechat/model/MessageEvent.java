@@ -0,0 +1,80 @@
+package com.securechat.model;
+
+/**
+ * Change to a {@link MessageListModel}, passed to observers as the notification argument.
+ * Events describe a range of sequence numbers, so observers can read just the messages
+ * that changed. Appended ranges are delivered in order and without gaps, and one event
+ * may cover the appends of several senders.
+ */
+public final class MessageEvent {
+
+    /**
+     * Kinds of message changes.
+     */
+    public enum Type {
+        /** Messages were added to the end of the log. */
+        APPENDED,
+        /** Stored messages were replaced in place, e.g. after their keys were re-wrapped. */
+        REPLACED
+    }
+
+    private final Type type;
+    private final long fromSequence;
+    private final long toSequence;
+
+    /**
+     * Creates a message event.
+     * 
+     * @param type The kind of change
+     * @param fromSequence The sequence number of the first changed message
+     * @param toSequence The sequence number following the last changed message
+     */
+    public MessageEvent(Type type, long fromSequence, long toSequence) {
+        this.type = type;
+        this.fromSequence = fromSequence;
+        this.toSequence = toSequence;
+    }
+
+    /**
+     * Gets the kind of change.
+     * 
+     * @return The event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the sequence number of the first changed message.
+     * 
+     * @return The first sequence number
+     */
+    public long getFromSequence() {
+        return fromSequence;
+    }
+
+    /**
+     * Gets the sequence number following the last changed message.
+     * For replacements, messages inside the range may be unchanged.
+     * 
+     * @return The end sequence number, exclusive
+     */
+    public long getToSequence() {
+        return toSequence;
+    }
+
+    /**
+     * Checks whether a message falls inside the changed range.
+     * 
+     * @param sequence The message's sequence number
+     * @return true if the sequence number is in the range, false otherwise
+     */
+    public boolean covers(long sequence) {
+        return sequence >= fromSequence && sequence < toSequence;
+    }
+
+    @Override
+    public String toString() {
+        return type + " [" + fromSequence + ", " + toSequence + ")";
+    }
+}
@@ -0,0 +1,199 @@
+package com.securechat.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over a {@link MessageLog}, kept up to date as messages are appended.
+ * <ul>
+ *   <li>The conversation index holds the direct messages and attachments exchanged by each
+ *       pair of participants, whichever of them sent them.</li>
+ *   <li>The inbox index holds every message each participant sent or received, including
+ *       group messages.</li>
+ * </ul>
+ * Both are keyed by the participants' interned {@link ParticipantIds}, and hold sequence
+ * numbers in sorted sets, so concurrent appends need no lock, entries
+ * stay in log order, and messages replaced in the log are resolved in their current form.
+ * Messages are indexed before the log publishes them, so every published message can be found.
+ */
+class MessageIndex {
+    private final MessageLog log;
+    private final ParticipantIds ids;
+    private final ConcurrentHashMap<Long, NavigableSet<Long>> conversations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, NavigableSet<Long>> inboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty index over a message log.
+     *
+     * @param log The log the indexed sequence numbers refer to
+     * @param ids The participant ids the log's messages are interned with
+     */
+    MessageIndex(MessageLog log, ParticipantIds ids) {
+        this.log = log;
+        this.ids = ids;
+    }
+
+    /**
+     * Indexes a message that was appended to the log.
+     *
+     * @param message The appended message
+     */
+    void add(Message message) {
+        long sequence = message.getSequence();
+        entries(inboxes, message.getSenderId()).add(sequence);
+        if (message instanceof GroupMessage) {
+            for (int recipient : ((GroupMessage) message).getRecipientIds()) {
+                entries(inboxes, recipient).add(sequence);
+            }
+        } else {
+            entries(inboxes, message.getReceiverId()).add(sequence);
+            entries(conversations, pairKey(message.getSenderId(), message.getReceiverId())).add(sequence);
+        }
+    }
+
+    /**
+     * Checks whether a message belongs to a participant's inbox, i.e. they sent or received it.
+     *
+     * @param message The message
+     * @param participantId The participant's interned id
+     * @return true if the message is in the participant's inbox
+     */
+    static boolean isInInbox(Message message, int participantId) {
+        return message.getSenderId() == participantId || (message instanceof GroupMessage
+                ? ((GroupMessage) message).isRecipient(participantId) : message.getReceiverId() == participantId);
+    }
+
+    /**
+     * Gets the direct messages exchanged by two participants.
+     *
+     * @param first The pseudonym of one participant
+     * @param second The pseudonym of the other participant
+     * @return The published messages between them, in sequence order
+     */
+    List<Message> conversation(String first, String second) {
+        return resolve(conversationEntries(first, second), 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the messages a participant sent or received.
+     *
+     * @param pseudo The participant's pseudonym
+     * @return The participant's published messages, in sequence order
+     */
+    List<Message> inbox(String pseudo) {
+        return resolve(inboxEntries(pseudo), 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the messages a participant sent or received within a range of sequence numbers.
+     *
+     * @param pseudo The participant's pseudonym
+     * @param fromSequence The first sequence number to include
+     * @param toSequence The sequence number to stop before
+     * @return The participant's published messages in the range, in sequence order
+     */
+    List<Message> inbox(String pseudo, long fromSequence, long toSequence) {
+        return resolve(inboxEntries(pseudo), fromSequence, toSequence);
+    }
+
+    /**
+     * Gets a page of the direct messages exchanged by two participants.
+     *
+     * @param first The pseudonym of one participant
+     * @param second The pseudonym of the other participant
+     * @param beforeSequence The sequence number to read backwards from, exclusive
+     * @param limit The maximum number of messages on the page
+     * @return The newest messages before the cursor
+     */
+    HistoryPage conversationPage(String first, String second, long beforeSequence, int limit) {
+        return page(conversationEntries(first, second), beforeSequence, limit);
+    }
+
+    /**
+     * Gets a page of the messages a participant sent or received.
+     *
+     * @param pseudo The participant's pseudonym
+     * @param beforeSequence The sequence number to read backwards from, exclusive
+     * @param limit The maximum number of messages on the page
+     * @return The newest messages before the cursor
+     */
+    HistoryPage inboxPage(String pseudo, long beforeSequence, int limit) {
+        return page(inboxEntries(pseudo), beforeSequence, limit);
+    }
+
+    /**
+     * Gets the messages a participant sent or received within a time range.
+     * Since the log is sorted by time, the range is found by binary search in the log and
+     * then in the participant's entries, so the cost is logarithmic plus the messages returned.
+     *
+     * @param pseudo The participant's pseudonym
+     * @param fromMillis The start of the range, inclusive, in milliseconds since the epoch
+     * @param toMillis The end of the range, exclusive, in milliseconds since the epoch
+     * @return The participant's published messages stored in the range, in sequence order
+     */
+    List<Message> inboxBetween(String pseudo, long fromMillis, long toMillis) {
+        return resolve(inboxEntries(pseudo), log.sequenceAt(fromMillis), log.sequenceAt(toMillis));
+    }
+
+    /**
+     * Reads up to limit published entries backwards from a cursor, in constant time per entry.
+     */
+    private HistoryPage page(NavigableSet<Long> sequences, long beforeSequence, int limit) {
+        if (sequences == null) {
+            return new HistoryPage(Collections.<Message>emptyList(), false);
+        }
+        Iterator<Long> older = sequences.headSet(Math.min(beforeSequence, log.size()), false)
+                .descendingIterator();
+        List<Message> messages = new ArrayList<>(limit);
+        while (messages.size() < limit && older.hasNext()) {
+            messages.add(log.get(older.next()));
+        }
+        Collections.reverse(messages);
+        return new HistoryPage(messages, older.hasNext());
+    }
+
+    /**
+     * Looks up the indexed sequence numbers of a range in the log, skipping those not yet published.
+     */
+    private List<Message> resolve(NavigableSet<Long> sequences, long fromSequence, long toSequence) {
+        long end = Math.min(toSequence, log.size());
+        if (sequences == null || fromSequence >= end) {
+            return Collections.emptyList();
+        }
+        List<Message> messages = new ArrayList<>();
+        for (Long sequence : sequences.subSet(fromSequence, true, end, false)) {
+            messages.add(log.get(sequence));
+        }
+        return messages;
+    }
+
+    private NavigableSet<Long> conversationEntries(String first, String second) {
+        int firstId = ids.userId(first);
+        int secondId = ids.userId(second);
+        if (firstId == ParticipantIds.UNKNOWN || secondId == ParticipantIds.UNKNOWN) {
+            return null;
+        }
+        return conversations.get(pairKey(firstId, secondId));
+    }
+
+    private NavigableSet<Long> inboxEntries(String pseudo) {
+        return inboxes.get(ids.userId(pseudo));
+    }
+
+    private static <K> NavigableSet<Long> entries(ConcurrentHashMap<K, NavigableSet<Long>> index, K key) {
+        return index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>());
+    }
+
+    /**
+     * Builds a key that is the same whichever participant of the pair comes first,
+     * packing the smaller id in the high half.
+     */
+    private static long pairKey(int first, int second) {
+        return ((long) Math.min(first, second) << 32) | (Math.max(first, second) & 0xffffffffL);
+    }
+}
@@ -1,14 +1,82 @@
 package com.securechat.model;
 
+import com.securechat.persistence.JournalEntry;
+import com.securechat.persistence.MessageJournal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
-import java.util.Vector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Model class for managing messages in the chat application.
  * Handles message storage and notification of observers when new messages are added.
+ * Messages are stored in an append-only {@link MessageLog}, so several threads can add
+ * messages without locking and readers work on snapshots instead of the live list.
+ * Observers receive a {@link MessageEvent} describing which sequence numbers changed.
+ * Notifications are delivered by one thread at a time: a sender that finds another one
+ * notifying leaves its appends to it, so one appended event may cover several appends.
+ * Messages are also indexed by conversation and by participant, so a participant's
+ * messages can be read without scanning everyone else's. When a {@link MessageJournal}
+ * is given, messages are persisted to it and restored from it on startup; messages the
+ * journal moved to cold storage are read from it a page at a time. Stored messages are
+ * interned to the {@link ParticipantIds} of the model, shared with the participant model
+ * when one is given.
  */
 public class MessageListModel extends Observable {
-    private Vector<Message> messageList = new Vector<>();
+    private final MessageLog messageLog = new MessageLog(this::index);
+    private final ParticipantIds participantIds;
+    private final MessageIndex messageIndex;
+
+    private final AtomicInteger pendingNotifications = new AtomicInteger();
+    private final Queue<MessageEvent> pendingReplacements = new ConcurrentLinkedQueue<>();
+    // Only read and written by the thread currently delivering notifications
+    private long notifiedSequence;
+    private final MessageJournal journal;
+
+    /**
+     * Creates a message model that keeps messages in memory only.
+     */
+    public MessageListModel() {
+        this(null);
+    }
+
+    /**
+     * Creates a message model that persists messages to a journal, starting with the
+     * messages recovered from it.
+     * 
+     * @param journal The journal to restore messages from and append them to, or null to
+     *                keep messages in memory only
+     */
+    public MessageListModel(MessageJournal journal) {
+        this(journal, new ParticipantIds());
+    }
+
+    /**
+     * Creates a message model that persists messages to a journal, starting with the
+     * messages recovered from it, and interns their participants with the given ids.
+     * 
+     * @param journal The journal to restore messages from and append them to, or null to
+     *                keep messages in memory only
+     * @param participantIds The ids of the participant model, see {@link ParticipantListModel#getParticipantIds()}
+     */
+    public MessageListModel(MessageJournal journal, ParticipantIds participantIds) {
+        this.journal = journal;
+        this.participantIds = participantIds;
+        this.messageIndex = new MessageIndex(messageLog, participantIds);
+        if (journal != null) {
+            for (JournalEntry entry : journal.getRecoveredEntries()) {
+                entry.getMessage().intern(participantIds);
+                messageLog.restore(entry.getMessage(), entry.getTimestamp());
+            }
+            notifiedSequence = messageLog.size();
+        }
+    }
 
     /**
      * Sends a message by adding it to the message list.
@@ -19,18 +87,337 @@ public class MessageListModel extends Observable {
      * @param original The original plain text message
      * @param encrypted The encrypted version of the message
      */
-    public void sendMessage(String sender, String receiver, String original, String encrypted) {
-        messageList.add(new Message(sender, receiver, original, encrypted));
-        setChanged();
-        notifyObservers();
+    public void sendMessage(String sender, String receiver, String original, byte[] encrypted) {
+        sendMessage(sender, receiver, original, encrypted, null);
+    }
+
+    /**
+     * Sends a signed message by adding it to the message list.
+     * Notifies all observers when a new message is added.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param original The original plain text message
+     * @param encrypted The encrypted version of the message
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public void sendMessage(String sender, String receiver, String original, byte[] encrypted,
+                            byte[] signature) {
+        append(new Message(participantIds, sender, receiver, original, encrypted, signature));
+    }
+
+    /**
+     * Sends a group message by adding it to the message list as a single entry.
+     * Notifies all observers when the message is added.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param groupName The name of the group the message is sent to
+     * @param original The original plain text message
+     * @param encryptedBody The body encrypted under the message's content key
+     * @param wrappedKeys The content key wrapped for each recipient, keyed by recipient pseudonym
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public void sendGroupMessage(String sender, String groupName, String original, byte[] encryptedBody,
+                                 Map<String, byte[]> wrappedKeys, byte[] signature) {
+        append(new GroupMessage(participantIds, sender, groupName, original, encryptedBody, wrappedKeys, signature));
+    }
+
+    /**
+     * Sends a file attachment by adding it to the message list.
+     * Notifies all observers when the attachment is added.
+     * 
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the message receiver
+     * @param fileName The original name of the attached file
+     * @param fileSize The size of the attached file in bytes
+     * @param encryptedFile The location of the encrypted file
+     * @param wrappedKey The file's content key wrapped for the receiver
+     * @param keyCommitment The commitment to the file's content key
+     * @param signature The sender's signature over the message, or null if unsigned
+     */
+    public void sendAttachment(String sender, String receiver, String fileName, long fileSize,
+                               Path encryptedFile, byte[] wrappedKey, byte[] keyCommitment, byte[] signature) {
+        append(new AttachmentMessage(participantIds, sender, receiver, fileName, fileSize, encryptedFile,
+                wrappedKey, keyCommitment, signature));
+    }
+
+    /**
+     * Replaces stored messages in place, keeping their sequence numbers, e.g. after their
+     * content keys were re-wrapped for a receiver's new key pair.
+     * Notifies all observers once, with the range of replaced messages, if any message was replaced.
+     * 
+     * @param replacements The replacement for each message, keyed by the stored message
+     * @return The number of messages replaced
+     */
+    public int replaceMessages(Map<Message, Message> replacements) {
+        int replaced = 0;
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (Map.Entry<Message, Message> replacement : replacements.entrySet()) {
+            replacement.getValue().intern(participantIds);
+            if (messageLog.replace(replacement.getKey(), replacement.getValue())) {
+                if (journal != null) {
+                    journal.replace(replacement.getValue());
+                }
+                long sequence = replacement.getValue().getSequence();
+                from = Math.min(from, sequence);
+                to = Math.max(to, sequence + 1);
+                replaced++;
+            }
+        }
+        if (replaced > 0) {
+            pendingReplacements.add(new MessageEvent(MessageEvent.Type.REPLACED, from, to));
+            notifyChanges();
+        }
+        return replaced;
+    }
+
+    /**
+     * Gets a snapshot of all messages in the chat.
+     * The snapshot is taken in constant time and does not change when messages are added.
+     * 
+     * @return The messages stored so far, in sequence order
+     */
+    public MessageLog.Snapshot getMessages() {
+        return messageLog.snapshot();
+    }
+
+    /**
+     * Gets a snapshot of the messages stored from a sequence number on.
+     * 
+     * @param sequence The sequence number of the first message to include
+     * @return The messages from that sequence number on, in sequence order
+     */
+    public MessageLog.Snapshot getMessagesSince(long sequence) {
+        return messageLog.since(sequence);
+    }
+
+    /**
+     * Gets a snapshot of the messages stored within a time range.
+     * Timestamps never decrease along the log, so the range is found by binary search.
+     * 
+     * @param fromMillis The start of the range, inclusive, in milliseconds since the epoch
+     * @param toMillis The end of the range, exclusive, in milliseconds since the epoch
+     * @return The messages stored in the range, in sequence order
+     */
+    public MessageLog.Snapshot getMessagesBetween(long fromMillis, long toMillis) {
+        return messageLog.between(fromMillis, toMillis);
+    }
+
+    /**
+     * Gets the direct messages and attachments exchanged by two participants.
+     * 
+     * @param first The pseudonym of one participant
+     * @param second The pseudonym of the other participant
+     * @return The messages between them, in sequence order
+     */
+    public List<Message> getConversation(String first, String second) {
+        return messageIndex.conversation(first, second);
     }
 
     /**
-     * Gets all messages in the chat.
+     * Gets every message a participant sent or received, including group messages.
+     * The cost depends on the participant's own history, not on the number of messages stored.
      * 
-     * @return Vector containing all messages
+     * @param pseudo The participant's pseudonym
+     * @return The participant's messages, in sequence order
      */
-    public Vector<Message> getMessages() {
-        return messageList;
+    public List<Message> getInbox(String pseudo) {
+        return messageIndex.inbox(pseudo);
+    }
+
+    /**
+     * Gets the messages a participant sent or received within a range of sequence numbers,
+     * e.g. the ones covered by an appended event.
+     * 
+     * @param pseudo The participant's pseudonym
+     * @param fromSequence The first sequence number to include
+     * @param toSequence The sequence number to stop before
+     * @return The participant's messages in the range, in sequence order
+     */
+    public List<Message> getInbox(String pseudo, long fromSequence, long toSequence) {
+        return messageIndex.inbox(pseudo, fromSequence, toSequence);
+    }
+
+    /**
+     * Gets a page of the direct messages and attachments exchanged by two participants.
+     * Reading a page costs the same however long the conversation is.
+     * 
+     * @param first The pseudonym of one participant
+     * @param second The pseudonym of the other participant
+     * @param beforeSequence The cursor: {@link HistoryPage#LATEST} for the newest page, or the
+     *                       older cursor of the previously read page
+     * @param limit The maximum number of messages on the page
+     * @return The newest messages before the cursor, oldest first
+     */
+    public HistoryPage getConversationPage(String first, String second, long beforeSequence, int limit) {
+        return messageIndex.conversationPage(first, second, beforeSequence, limit);
+    }
+
+    /**
+     * Gets a page of the messages a participant sent or received, including group messages.
+     * Reading a page costs the same however long the participant's history is.
+     * 
+     * @param pseudo The participant's pseudonym
+     * @param beforeSequence The cursor: {@link HistoryPage#LATEST} for the newest page, or the
+     *                       older cursor of the previously read page
+     * @param limit The maximum number of messages on the page
+     * @return The newest messages before the cursor, oldest first
+     */
+    public HistoryPage getInboxPage(String pseudo, long beforeSequence, int limit) {
+        return messageIndex.inboxPage(pseudo, beforeSequence, limit);
+    }
+
+    /**
+     * Gets a page of a participant's archived messages, which the journal moved to cold
+     * storage and which are therefore not in the message log. Archived messages have no
+     * sequence number in the log; pages are read with their own cursor.
+     * 
+     * @param pseudo The participant's pseudonym
+     * @param beforeCursor The cursor: {@link HistoryPage#LATEST} for the newest archived page,
+     *                     or the older cursor of the previously read archived page
+     * @param limit The maximum number of messages on the page
+     * @return The newest archived messages before the cursor, oldest first; an empty page
+     *         without a journal
+     */
+    public HistoryPage getArchivedInboxPage(String pseudo, long beforeCursor, int limit) {
+        if (journal == null) {
+            return new HistoryPage(Collections.<Message>emptyList(), false);
+        }
+        // Archived messages are decoded with the journal's ids, so the participant is looked up there
+        List<JournalEntry> entries = journal.readArchive(beforeCursor, limit + 1,
+                message -> MessageIndex.isInInbox(message, message.getParticipantIds().userId(pseudo)));
+        boolean hasOlder = entries.size() > limit;
+        if (hasOlder) {
+            entries = entries.subList(1, entries.size());
+        }
+        List<Message> messages = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            // Like the ones in the log, so their ids compare with the model's
+            entry.getMessage().intern(participantIds);
+            entry.getMessage().setTimestamp(entry.getTimestamp());
+            messages.add(entry.getMessage());
+        }
+        return new HistoryPage(messages, hasOlder,
+                entries.isEmpty() ? HistoryPage.LATEST : entries.get(0).getSequence());
+    }
+
+    /**
+     * Gets the messages a participant sent or received since a point in time, e.g. what is
+     * new since their last login. Found in logarithmic time, however long the history is.
+     * 
+     * @param pseudo The participant's pseudonym
+     * @param sinceMillis The point in time, inclusive, in milliseconds since the epoch
+     * @return The participant's messages stored since then, in sequence order
+     */
+    public List<Message> getInboxSince(String pseudo, long sinceMillis) {
+        return messageIndex.inboxBetween(pseudo, sinceMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the messages a participant sent or received within a time range.
+     * Found in logarithmic time, however long the history is.
+     * 
+     * @param pseudo The participant's pseudonym
+     * @param fromMillis The start of the range, inclusive, in milliseconds since the epoch
+     * @param toMillis The end of the range, exclusive, in milliseconds since the epoch
+     * @return The participant's messages stored in the range, in sequence order
+     */
+    public List<Message> getInboxBetween(String pseudo, long fromMillis, long toMillis) {
+        return messageIndex.inboxBetween(pseudo, fromMillis, toMillis);
+    }
+
+    /**
+     * Gets the number of messages stored so far.
+     * 
+     * @return The message count
+     */
+    public long getMessageCount() {
+        return messageLog.size();
+    }
+
+    /**
+     * Gets the log the messages are stored in, e.g. to read it with a cursor.
+     * 
+     * @return The message log
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * Gets the table the participants of stored messages are interned with, to compare a
+     * participant with the messages' ids.
+     * 
+     * @return The participant ids
+     */
+    public ParticipantIds getParticipantIds() {
+        return participantIds;
+    }
+
+    /**
+     * Gets the journal messages are persisted to.
+     * 
+     * @return The journal, or null if messages are kept in memory only
+     */
+    public MessageJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Appends a message to the log, journals it and notifies all observers.
+     */
+    private void append(Message message) {
+        // Interned before a sequence number is claimed, since interning can fail
+        message.intern(participantIds);
+        messageLog.append(message);
+        if (journal != null) {
+            // Made durable by the journal's next group commit, without waiting for it
+            journal.append(message);
+        }
+        notifyChanges();
+    }
+
+    /**
+     * Indexes a message the log is about to publish.
+     */
+    private void index(Message message) {
+        messageIndex.add(message);
+    }
+
+    /**
+     * Delivers the pending events, unless another thread is already delivering them, in
+     * which case that thread picks them up before it stops. Appended ranges are delivered
+     * in order and without gaps.
+     */
+    private void notifyChanges() {
+        if (pendingNotifications.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        try {
+            do {
+                long published = messageLog.size();
+                if (published > notifiedSequence) {
+                    MessageEvent appended = new MessageEvent(MessageEvent.Type.APPENDED, notifiedSequence, published);
+                    notifiedSequence = published;
+                    fire(appended);
+                }
+                MessageEvent replaced;
+                while ((replaced = pendingReplacements.poll()) != null) {
+                    fire(replaced);
+                }
+                missed = pendingNotifications.addAndGet(-missed);
+            } while (missed != 0);
+        } catch (RuntimeException e) {
+            // Let the next change deliver again rather than blocking notifications for good
+            pendingNotifications.set(0);
+            throw e;
+        }
+    }
+
+    private void fire(MessageEvent event) {
+        setChanged();
+        notifyObservers(event);
     }
 }
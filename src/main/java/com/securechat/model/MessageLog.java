@@ -0,0 +1,403 @@
+package com.securechat.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of messages, stored in fixed-size segments.
+ * Appends are lock-free: each one claims the next sequence number and its timestamp with a
+ * single atomic compare-and-set and writes its own slot, so concurrent senders never wait
+ * for each other. A message's sequence number is its position in the log and never changes.
+ * Since sequence numbers and timestamps are claimed together, timestamps never decrease
+ * along the log, even if the clock steps back: the log is sorted by time as well, and a
+ * point in time is found by binary search, first over the segments, then within one.
+ *
+ * <p>Readers only see the published prefix of the log: the slots up to the first one
+ * whose append has not completed yet. Snapshots capture that prefix in constant time
+ * and keep their size as the log grows; cursors follow the log as it grows.</p>
+ */
+public class MessageLog {
+
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    // Last claimed sequence number and its timestamp
+    private final AtomicReference<Stamp> lastStamp = new AtomicReference<>(new Stamp(-1, Long.MIN_VALUE));
+    private final AtomicLong published = new AtomicLong();
+    // Segments are only ever added; a new directory is published for each, which is rare
+    private final AtomicReference<Segment[]> segments = new AtomicReference<>(new Segment[0]);
+    private final Consumer<Message> onStore;
+
+    /**
+     * Fixed-size block of slots.
+     */
+    private static final class Segment extends AtomicReferenceArray<Message> {
+        private static final long serialVersionUID = 1L;
+
+        Segment() {
+            super(SEGMENT_SIZE);
+        }
+    }
+
+    /**
+     * Sequence number claimed together with its timestamp.
+     */
+    private static final class Stamp {
+        final long sequence;
+        final long timestamp;
+
+        Stamp(long sequence, long timestamp) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Creates an empty log.
+     */
+    public MessageLog() {
+        this(message -> { });
+    }
+
+    /**
+     * Creates an empty log that reports every stored message before publishing it, e.g. so
+     * secondary indexes are complete for every published message.
+     *
+     * @param onStore Called with each appended message, on the appending thread, once the
+     *                message has its sequence number and before readers can see it; if it
+     *                throws, the message is published all the same and the append rethrows
+     */
+    public MessageLog(Consumer<Message> onStore) {
+        this.onStore = onStore;
+    }
+
+    /**
+     * Appends a message, assigns it the next sequence number and stamps it with the current
+     * time, or the previous message's timestamp if the clock is behind it.
+     *
+     * @param message The message to append; it must not be in any log yet
+     * @return The message's sequence number
+     */
+    public long append(Message message) {
+        return store(message, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a message that was stored before, e.g. one read back from a journal, keeping
+     * the time it was first stored unless it is earlier than the previous message's.
+     * Restored messages must be appended in sequence order.
+     *
+     * @param message The message to append; it must not be in any log yet
+     * @param timestamp The time the message was first stored, in milliseconds since the epoch
+     * @return The message's sequence number
+     */
+    public long restore(Message message, long timestamp) {
+        return store(message, timestamp);
+    }
+
+    /**
+     * Replaces a stored message with another one at the same sequence number and timestamp,
+     * e.g. after its content keys were re-wrapped. Nothing is replaced if the slot no longer
+     * holds the expected message.
+     *
+     * @param expected The stored message
+     * @param replacement The message to store in its place
+     * @return true if the message was replaced, false otherwise
+     */
+    public boolean replace(Message expected, Message replacement) {
+        long sequence = expected.getSequence();
+        if (sequence < 0 || sequence >= published.get()) {
+            return false;
+        }
+        replacement.setSequence(sequence);
+        replacement.setTimestamp(expected.getTimestamp());
+        return segments.get()[segmentIndex(sequence)].compareAndSet(slot(sequence), expected, replacement);
+    }
+
+    /**
+     * Gets a published message by sequence number.
+     *
+     * @param sequence The sequence number
+     * @return The message
+     * @throws IndexOutOfBoundsException if no message with that sequence number is published
+     */
+    public Message get(long sequence) {
+        if (sequence < 0 || sequence >= published.get()) {
+            throw new IndexOutOfBoundsException("No message with sequence number " + sequence);
+        }
+        return segments.get()[segmentIndex(sequence)].get(slot(sequence));
+    }
+
+    /**
+     * Gets the number of published messages, which is also the sequence number the next
+     * published message will have.
+     *
+     * @return The number of published messages
+     */
+    public long size() {
+        return published.get();
+    }
+
+    /**
+     * Finds the first published message stored at or after a point in time, in logarithmic time.
+     *
+     * @param timestamp The point in time, in milliseconds since the epoch
+     * @return The message's sequence number, or {@link #size()} if every message is older
+     */
+    public long sequenceAt(long timestamp) {
+        return sequenceAt(timestamp, published.get());
+    }
+
+    /**
+     * Captures the published messages stored within a time range.
+     *
+     * @param fromMillis The start of the range, inclusive, in milliseconds since the epoch
+     * @param toMillis The end of the range, exclusive, in milliseconds since the epoch
+     * @return An immutable view of the messages in the range, in sequence order
+     */
+    public Snapshot between(long fromMillis, long toMillis) {
+        long end = published.get();
+        long start = sequenceAt(fromMillis, end);
+        return new Snapshot(segments.get(), start, (int) Math.max(0, sequenceAt(toMillis, end) - start));
+    }
+
+    /**
+     * Captures the currently published messages.
+     *
+     * @return An immutable view of the published messages, in sequence order
+     */
+    public Snapshot snapshot() {
+        return since(0);
+    }
+
+    /**
+     * Captures the currently published messages from a sequence number on.
+     *
+     * @param sequence The sequence number of the first message to include
+     * @return An immutable view of the published messages from that sequence number on
+     */
+    public Snapshot since(long sequence) {
+        long end = published.get();
+        long start = Math.max(0, Math.min(sequence, end));
+        return new Snapshot(segments.get(), start, (int) (end - start));
+    }
+
+    /**
+     * Opens a cursor that reads the log from a sequence number on, including messages
+     * published after the cursor was opened.
+     *
+     * @param sequence The sequence number of the first message to read
+     * @return The cursor
+     */
+    public Cursor cursor(long sequence) {
+        return new Cursor(Math.max(0, sequence));
+    }
+
+    /**
+     * Immutable view of a range of published messages.
+     * Creating one copies nothing; its size is fixed when it is captured. A message that is
+     * replaced after the capture is seen in its replaced form.
+     */
+    public static final class Snapshot extends AbstractList<Message> implements RandomAccess {
+        private final Segment[] segments;
+        private final long start;
+        private final int size;
+
+        private Snapshot(Segment[] segments, long start, int size) {
+            this.segments = segments;
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            long sequence = start + index;
+            return segments[segmentIndex(sequence)].get(slot(sequence));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Gets the sequence number of the first message in the snapshot.
+         *
+         * @return The first sequence number
+         */
+        public long getStartSequence() {
+            return start;
+        }
+
+        /**
+         * Gets the sequence number following the last message in the snapshot.
+         *
+         * @return The end sequence number, exclusive
+         */
+        public long getEndSequence() {
+            return start + size;
+        }
+    }
+
+    /**
+     * Reader that moves forward through the log, one message at a time.
+     * A cursor is meant for a single reading thread.
+     */
+    public final class Cursor {
+        private long position;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Checks whether a published message is available at the cursor's position.
+         *
+         * @return true if {@link #next()} would return a message
+         */
+        public boolean hasNext() {
+            return position < published.get();
+        }
+
+        /**
+         * Reads the message at the cursor's position and moves past it.
+         *
+         * @return The message
+         * @throws NoSuchElementException if no message is published at that position yet
+         */
+        public Message next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return get(position++);
+        }
+
+        /**
+         * Gets the sequence number of the next message the cursor will read.
+         *
+         * @return The cursor's position
+         */
+        public long getPosition() {
+            return position;
+        }
+    }
+
+    private long store(Message message, long timestamp) {
+        Stamp stamp = claim(timestamp);
+        long sequence = stamp.sequence;
+        message.setSequence(sequence);
+        message.setTimestamp(stamp.timestamp);
+        try {
+            // Report before filling the slot, since a filled slot may be published by another append
+            onStore.accept(message);
+        } finally {
+            // The slot is filled even if the report failed, or publishing would stop at it for good
+            segment(sequence).set(slot(sequence), message);
+            publish();
+        }
+        return sequence;
+    }
+
+    /**
+     * Claims the next sequence number with a timestamp no earlier than the previous one's.
+     */
+    private Stamp claim(long timestamp) {
+        while (true) {
+            Stamp last = lastStamp.get();
+            Stamp next = new Stamp(last.sequence + 1, Math.max(timestamp, last.timestamp));
+            if (lastStamp.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Binary search for the first of the messages before end stored at or after a point in
+     * time: first over the segments by their first message, then within the segment found.
+     */
+    private long sequenceAt(long timestamp, long end) {
+        Segment[] current = segments.get();
+        // Last segment starting before the timestamp; the message sought is in it or starts the next one
+        int low = 0;
+        int high = (int) ((end + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT) - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (current[middle].get(0).getTimestamp() < timestamp) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        long from = (long) low << SEGMENT_SHIFT;
+        long to = Math.min(end, from + SEGMENT_SIZE);
+        while (from < to) {
+            long middle = (from + to) >>> 1;
+            if (current[segmentIndex(middle)].get(slot(middle)).getTimestamp() < timestamp) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Advances the published watermark over every contiguous completed slot.
+     * Whichever append fills the lowest pending slot carries the watermark past the later
+     * slots that were already filled, so no append waits for another.
+     */
+    private void publish() {
+        long position = published.get();
+        while (position <= lastStamp.get().sequence && isFilled(position)) {
+            if (published.compareAndSet(position, position + 1)) {
+                position++;
+            } else {
+                position = published.get();
+            }
+        }
+    }
+
+    private boolean isFilled(long sequence) {
+        Segment[] current = segments.get();
+        int index = segmentIndex(sequence);
+        return index < current.length && current[index].get(slot(sequence)) != null;
+    }
+
+    /**
+     * Gets the segment holding a sequence number, adding segments up to it if needed.
+     */
+    private Segment segment(long sequence) {
+        int index = segmentIndex(sequence);
+        while (true) {
+            Segment[] current = segments.get();
+            if (index < current.length) {
+                return current[index];
+            }
+            Segment[] grown = Arrays.copyOf(current, index + 1);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Segment();
+            }
+            if (segments.compareAndSet(current, grown)) {
+                return grown[index];
+            }
+        }
+    }
+
+    private static int segmentIndex(long sequence) {
+        return (int) (sequence >>> SEGMENT_SHIFT);
+    }
+
+    private static int slot(long sequence) {
+        return (int) (sequence & SEGMENT_MASK);
+    }
+}
@@ -0,0 +1,54 @@
+package com.securechat.model;
+
+/**
+ * Change to a {@link ParticipantListModel}, passed to observers as the notification argument.
+ */
+public final class ParticipantEvent {
+
+    /**
+     * Kinds of participant changes.
+     */
+    public enum Type {
+        /** A participant registered. */
+        ADDED,
+        /** A participant was removed. */
+        REMOVED
+    }
+
+    private final Type type;
+    private final User user;
+
+    /**
+     * Creates a participant event.
+     * 
+     * @param type The kind of change
+     * @param user The participant that was added or removed
+     */
+    public ParticipantEvent(Type type, User user) {
+        this.type = type;
+        this.user = user;
+    }
+
+    /**
+     * Gets the kind of change.
+     * 
+     * @return The event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the participant that was added or removed.
+     * 
+     * @return The participant
+     */
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + user.getPseudoName();
+    }
+}
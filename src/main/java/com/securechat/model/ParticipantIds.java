@@ -0,0 +1,150 @@
+package com.securechat.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the pseudonyms of participants, and the names of groups, to compact integer ids.
+ * Messages and their indexes carry only ids, so filtering compares integers, and each name is
+ * kept once, in the table, however many messages refer to it; names are resolved for display.
+ *
+ * <p>A table is owned by the {@link ParticipantListModel} that registers the participants, and
+ * shared with the {@link MessageListModel} holding their messages; it lives as long as they do.
+ * A message created outside a model gets a small table of its own, and storing it interns its
+ * names again into the model's table. Pseudonyms and group names are separate namespaces: group
+ * ids carry a tag bit, so a user named like a group never shares the group's id. Ids are dense
+ * within each namespace and never reused. They are not persisted: the journal stores names and
+ * interns them again on recovery.</p>
+ */
+public final class ParticipantIds {
+
+    /** Id of a name that was never interned, or of a message not stored yet, so it matches nothing. */
+    public static final int UNKNOWN = -1;
+
+    // Set on every group id and on no user id
+    private static final int GROUP = 1 << 30;
+
+    private final Namespace users = new Namespace(0);
+    private final Namespace groups = new Namespace(GROUP);
+
+    /**
+     * Gets the id of a participant's pseudonym, assigning the next id the first time it is seen.
+     *
+     * @param pseudo The pseudonym, or null
+     * @return The pseudonym's id, or {@link #UNKNOWN} for null
+     */
+    public int internUser(String pseudo) {
+        return users.intern(pseudo);
+    }
+
+    /**
+     * Gets the id of a group name, assigning the next id the first time it is seen.
+     *
+     * @param groupName The group name, or null
+     * @return The group's id, or {@link #UNKNOWN} for null
+     */
+    public int internGroup(String groupName) {
+        return groups.intern(groupName);
+    }
+
+    /**
+     * Gets the id of a participant's pseudonym without interning it.
+     *
+     * @param pseudo The pseudonym, or null
+     * @return The pseudonym's id, or {@link #UNKNOWN} if it was never interned
+     */
+    public int userId(String pseudo) {
+        return users.idOf(pseudo);
+    }
+
+    /**
+     * Gets the id of a group name without interning it.
+     *
+     * @param groupName The group name, or null
+     * @return The group's id, or {@link #UNKNOWN} if it was never interned
+     */
+    public int groupId(String groupName) {
+        return groups.idOf(groupName);
+    }
+
+    /**
+     * Resolves an id back to its pseudonym or group name.
+     *
+     * @param id An id returned by this table
+     * @return The interned name, or null for {@link #UNKNOWN}
+     */
+    public String nameOf(int id) {
+        if (id == UNKNOWN) {
+            return null;
+        }
+        return isGroup(id) ? groups.nameOf(id & ~GROUP) : users.nameOf(id);
+    }
+
+    /**
+     * Checks whether an id belongs to a group rather than a participant.
+     *
+     * @param id An id returned by a table
+     * @return true for a group id, false for a participant id or {@link #UNKNOWN}
+     */
+    public static boolean isGroup(int id) {
+        return id != UNKNOWN && (id & GROUP) != 0;
+    }
+
+    /**
+     * The names of one namespace and their ids.
+     */
+    private static final class Namespace {
+        private final int tag;
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        // Small at first, since most tables of messages created outside a model hold two names
+        private volatile String[] names = new String[4];
+        private int count;
+
+        Namespace(int tag) {
+            this.tag = tag;
+        }
+
+        int intern(String name) {
+            if (name == null) {
+                return UNKNOWN;
+            }
+            Integer id = ids.get(name);
+            return id != null ? id : register(name);
+        }
+
+        int idOf(String name) {
+            if (name == null) {
+                return UNKNOWN;
+            }
+            Integer id = ids.get(name);
+            return id != null ? id : UNKNOWN;
+        }
+
+        String nameOf(int index) {
+            return names[index];
+        }
+
+        /**
+         * Assigns the next id; the name is stored before its id is published in the map, so
+         * whoever reads the id can resolve it.
+         */
+        private synchronized int register(String name) {
+            Integer existing = ids.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            if (count == GROUP) {
+                throw new IllegalStateException("Too many names interned");
+            }
+            String[] current = names;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, count * 2);
+            }
+            current[count] = name;
+            names = current;
+            int id = tag | count++;
+            ids.put(name, id);
+            return id;
+        }
+    }
+}
@@ -1,34 +1,102 @@
 package com.securechat.model;
 
+import com.securechat.security.UserKeyStore;
+
 import java.security.MessageDigest;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Model class for managing participants/users in the chat application.
  * Handles user registration, authentication, and participant management.
+ * Every participant's pseudonym is interned to a compact id on registration, in the model's own
+ * {@link ParticipantIds}, which the message model shares to intern the messages' participants.
+ * Users are looked up by that id, so resolving a message's sender takes constant time.
+ * Observers receive a {@link ParticipantEvent} naming the participant that was added or removed.
  */
 public class ParticipantListModel extends Observable {
     private Vector<User> participants = new Vector<>();
+    private final UserKeyStore keyStore;
+    private final ParticipantIds participantIds = new ParticipantIds();
+    // The first registered user of each pseudonym, by the pseudonym's id
+    private final Map<Integer, User> usersByParticipantId = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a participant model whose users get freshly generated, non-persistent keys.
+     */
+    public ParticipantListModel() {
+        this(null);
+    }
+
+    /**
+     * Creates a participant model whose users' keys are loaded from, or saved to, a key store.
+     * 
+     * @param keyStore The key store holding users' key pairs, or null for non-persistent keys
+     */
+    public ParticipantListModel(UserKeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
 
     /**
      * Registers a new participant with the specified credentials.
      * The password is automatically hashed using SHA-256.
+     * When a key store is configured, the user's key pair is loaded from it on first use,
+     * and is bound to the password, so an ID whose stored keys belong to another account,
+     * e.g. one registered before a restart, cannot be taken over.
      * 
      * @param id The unique identifier for the user
      * @param pseudo The user's pseudonym/display name
      * @param rawPassword The user's plain text password (will be hashed)
+     * @throws IllegalArgumentException if the ID is already registered, or has stored keys
+     *         of another account
      */
     public void registerParticipant(String id, String pseudo, String rawPassword) {
         String hashedPassword = sha256(rawPassword);
-        User newUser = new User(id, pseudo, hashedPassword);
+        if (getUserById(id) != null || keyStore != null && keyStore.belongsToOtherAccount(id, hashedPassword)) {
+            throw new IllegalArgumentException("User ID " + id + " is already taken");
+        }
+        int participantId = participantIds.internUser(pseudo);
+        pseudo = participantIds.nameOf(participantId);
+        User newUser = keyStore != null
+                ? new User(id, pseudo, hashedPassword, keyStore.keySource(id, hashedPassword))
+                : new User(id, pseudo, hashedPassword);
+        if (keyStore != null) {
+            newUser.restoreRetiredPublicKeys(keyStore.loadRetiredPublicKeys(id));
+        }
         participants.add(newUser);
-        setChanged();
-        notifyObservers();
+        usersByParticipantId.putIfAbsent(participantId, newUser);
+        fire(new ParticipantEvent(ParticipantEvent.Type.ADDED, newUser));
     }
 
     /**
-     * Attempts to log in a user with the provided credentials.
+     * Removes a participant.
+     * 
+     * @param id The unique identifier of the user to remove
+     * @return true if the participant was removed, false if no user has that ID
+     */
+    public boolean removeParticipant(String id) {
+        User user = getUserById(id);
+        if (user == null || !participants.remove(user)) {
+            return false;
+        }
+        int participantId = participantIds.userId(user.getPseudoName());
+        if (usersByParticipantId.remove(participantId, user)) {
+            for (User other : participants) {
+                if (other.getPseudoName().equals(user.getPseudoName())) {
+                    usersByParticipantId.putIfAbsent(participantId, other);
+                    break;
+                }
+            }
+        }
+        fire(new ParticipantEvent(ParticipantEvent.Type.REMOVED, user));
+        return true;
+    }
+
+    /**
+     * Attempts to log in a user with the provided credentials, recording the time of a
+     * successful login on the user.
      * 
      * @param pseudo The user's pseudonym
      * @param passwordHash The SHA-256 hash of the user's password
@@ -37,6 +105,7 @@ public class ParticipantListModel extends Observable {
     public boolean login(String pseudo, String passwordHash) {
         for (User user : participants) {
             if (user.getPseudoName().equals(pseudo) && user.getPassword().equals(passwordHash)) {
+                user.recordLogin(System.currentTimeMillis());
                 return true;
             }
         }
@@ -50,12 +119,27 @@ public class ParticipantListModel extends Observable {
      * @return The User object if found, null otherwise
      */
     public User getUserByPseudo(String pseudo) {
-        for (User user : participants) {
-            if (user.getPseudoName().equals(pseudo)) {
-                return user;
-            }
-        }
-        return null;
+        return getUserByParticipantId(participantIds.userId(pseudo));
+    }
+
+    /**
+     * Retrieves a user by the interned id of their pseudonym, e.g. the sender id of a message
+     * stored in a message model sharing this model's ids.
+     * 
+     * @param participantId The participant id to search for
+     * @return The User object if found, null otherwise, e.g. for a group id
+     */
+    public User getUserByParticipantId(int participantId) {
+        return usersByParticipantId.get(participantId);
+    }
+
+    /**
+     * Gets the table interning the participants' pseudonyms, to share with the message model.
+     * 
+     * @return The participant ids
+     */
+    public ParticipantIds getParticipantIds() {
+        return participantIds;
     }
     
     /**
@@ -89,6 +173,15 @@ public class ParticipantListModel extends Observable {
         return null;
     }
 
+    /**
+     * Gets the key store holding users' key pairs.
+     * 
+     * @return The key store, or null if keys are not persisted
+     */
+    public UserKeyStore getKeyStore() {
+        return keyStore;
+    }
+
     /**
      * Gets all registered participants.
      * 
@@ -98,6 +191,14 @@ public class ParticipantListModel extends Observable {
         return participants;
     }
 
+    /**
+     * Notifies all observers of a change; synchronized so concurrent changes are not coalesced.
+     */
+    private synchronized void fire(ParticipantEvent event) {
+        setChanged();
+        notifyObservers(event);
+    }
+
     /**
      * Computes the SHA-256 hash of the input string.
      * 
@@ -105,7 +206,7 @@ public class ParticipantListModel extends Observable {
      * @return The hexadecimal representation of the SHA-256 hash
      * @throws RuntimeException if hashing fails
      */
-    private String sha256(String input) {
+    static String sha256(String input) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] encodedHash = digest.digest(input.getBytes("UTF-8"));
@@ -3,32 +3,75 @@ package com.securechat.model;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
-import com.securechat.security.RSAUtil;
+import com.securechat.security.CryptoProviders;
+import com.securechat.security.KeyPairPool;
 
 /**
  * Represents a user in the secure chat application.
  * Each user has a unique ID, pseudonym, password, and RSA key pair for encryption.
+ * The key pair is materialized lazily on first use, so users that never send or
+ * receive a message cost no key generation or key decoding.
+ * While the key pair is being rotated, the previous key pair is kept so messages
+ * that are still wrapped for it remain readable. Once a rotation finishes, the previous
+ * public key is kept, so messages the user signed before it still verify.
  */
 public class User {
     private String id;
     private String pseudo;
     private String password;
-    private KeyPair keyPair;
+    private volatile KeyPair keyPair;
+    private volatile KeyPair previousKeyPair;
+    // Public keys of finished rotations, newest first
+    private final List<PublicKey> retiredPublicKeys = new CopyOnWriteArrayList<>();
+    private Supplier<KeyPair> keySource;
+    private volatile long lastLoginTime;
+    private volatile long previousLoginTime;
 
     /**
      * Creates a new user with the specified credentials.
-     * Automatically generates an RSA key pair for the user.
+     * An RSA key pair is taken from the shared key pair pool on first use.
      * 
      * @param id The unique identifier for the user
      * @param pseudo The user's display name/pseudonym
      * @param password The user's password (should be hashed before storage)
      */
     public User(String id, String pseudo, String password) {
+        this(id, pseudo, password, () -> KeyPairPool.getDefault().take());
+    }
+
+    /**
+     * Creates a user whose key pair is restored from its persisted encoded form.
+     * The keys are only decoded on first use.
+     * 
+     * @param id The unique identifier for the user
+     * @param pseudo The user's display name/pseudonym
+     * @param password The user's password (should be hashed before storage)
+     * @param encodedPublicKey The X.509 encoded public key
+     * @param encodedPrivateKey The PKCS#8 encoded private key
+     */
+    public User(String id, String pseudo, String password, byte[] encodedPublicKey, byte[] encodedPrivateKey) {
+        this(id, pseudo, password, () -> CryptoProviders.decodeKeyPair(encodedPublicKey, encodedPrivateKey));
+    }
+
+    /**
+     * Creates a user whose key pair is obtained from the given source on first use.
+     * 
+     * @param id The unique identifier for the user
+     * @param pseudo The user's display name/pseudonym
+     * @param password The user's password (should be hashed before storage)
+     * @param keySource Supplies the user's key pair; called at most once
+     */
+    public User(String id, String pseudo, String password, Supplier<KeyPair> keySource) {
         this.id = id;
         this.pseudo = pseudo;
         this.password = password;
-        this.keyPair = RSAUtil.generateKeyPair();
+        this.keySource = keySource;
     }
 
     /**
@@ -64,7 +107,7 @@ public class User {
      * @return The user's public key
      */
     public PublicKey getPublicKey() {
-        return keyPair.getPublic();
+        return getKeyPair().getPublic();
     }
 
     /**
@@ -73,7 +116,125 @@ public class User {
      * @return The user's private key
      */
     public PrivateKey getPrivateKey() {
-        return keyPair.getPrivate();
+        return getKeyPair().getPrivate();
+    }
+
+    /**
+     * Gets the private key the user had before the key pair rotation in progress.
+     * 
+     * @return The previous private key, or null if no rotation is in progress
+     */
+    public PrivateKey getPreviousPrivateKey() {
+        KeyPair previous = previousKeyPair;
+        return previous != null ? previous.getPrivate() : null;
+    }
+
+    /**
+     * Starts a key pair rotation: the new key pair becomes current and the current
+     * one is kept as the previous key pair until {@link #finishKeyRotation()}.
+     * 
+     * @param newKeyPair The new key pair
+     */
+    public synchronized void rotateKeyPair(KeyPair newKeyPair) {
+        previousKeyPair = getKeyPair();
+        keyPair = newKeyPair;
+    }
+
+    /**
+     * Restores the previous key pair of a rotation that was interrupted, e.g. by a restart,
+     * after the current key pair was already replaced.
+     * 
+     * @param previous The key pair the user had before the rotation
+     */
+    public void resumeKeyRotation(KeyPair previous) {
+        previousKeyPair = previous;
+    }
+
+    /**
+     * Ends a key pair rotation and forgets the previous private key; the previous public
+     * key is kept to verify the messages signed with it.
+     */
+    public synchronized void finishKeyRotation() {
+        KeyPair previous = previousKeyPair;
+        if (previous != null) {
+            retiredPublicKeys.add(0, previous.getPublic());
+            previousKeyPair = null;
+        }
+    }
+
+    /**
+     * Restores the public keys the user had before earlier, finished rotations.
+     * 
+     * @param publicKeys The retired public keys, newest first
+     */
+    public void restoreRetiredPublicKeys(List<PublicKey> publicKeys) {
+        retiredPublicKeys.addAll(publicKeys);
+    }
+
+    /**
+     * Gets the public keys the user had before the current one, to verify the messages
+     * they signed before rotating their key pair.
+     * 
+     * @return The previous public keys, newest first, including the one of a rotation in progress
+     */
+    public List<PublicKey> getPreviousPublicKeys() {
+        KeyPair previous = previousKeyPair;
+        if (previous == null) {
+            return Collections.unmodifiableList(retiredPublicKeys);
+        }
+        List<PublicKey> keys = new ArrayList<>(retiredPublicKeys.size() + 1);
+        keys.add(previous.getPublic());
+        keys.addAll(retiredPublicKeys);
+        return keys;
+    }
+
+    /**
+     * Checks whether the user's key pair has been created or loaded yet.
+     * 
+     * @return true if the key pair is materialized, false otherwise
+     */
+    public boolean hasKeyPair() {
+        return keyPair != null;
+    }
+
+    /**
+     * Gets the user's key pair, materializing it from the key source on first call.
+     * Safe to call from several threads; the key source is invoked only once.
+     * 
+     * @return The user's key pair
+     */
+    private KeyPair getKeyPair() {
+        KeyPair keys = keyPair;
+        if (keys == null) {
+            synchronized (this) {
+                keys = keyPair;
+                if (keys == null) {
+                    keys = keySource.get();
+                    keyPair = keys;
+                    keySource = null;
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Records that the user logged in.
+     * 
+     * @param time The time of the login, in milliseconds since the epoch
+     */
+    public synchronized void recordLogin(long time) {
+        previousLoginTime = lastLoginTime;
+        lastLoginTime = time;
+    }
+
+    /**
+     * Gets the time of the user's login before the current one, e.g. to show what is new since then.
+     * 
+     * @return The time in milliseconds since the epoch, or 0 if the user has not logged in before
+     */
+    public long getPreviousLoginTime() {
+        return previousLoginTime;
     }
 
     /**
@@ -0,0 +1,198 @@
+package com.securechat.persistence;
+
+import com.securechat.model.ParticipantIds;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed, read-only journal file holding messages moved out of the hot segments.
+ * The header summarizes the file so it can be kept track of without decompressing it: the
+ * range of journal sequence numbers in it and, for each conversation, how many of its
+ * messages it holds and when the oldest one was stored. The records follow in the segment
+ * layout, {@code [length:4][crc32:4][payload]}, GZIP-compressed.
+ * Files are replaced as a whole, by writing a temporary file and renaming it.
+ */
+final class ColdSegment {
+
+    /** File name suffix of cold segments. */
+    static final String SUFFIX = ".cold";
+
+    private static final int MAGIC = 0x53434331;
+
+    private final long index;
+    private final Path file;
+    private final int count;
+    private final long firstSequence;
+    private final long lastSequence;
+    private final Map<String, Integer> counts;
+    private final Map<String, Long> oldest;
+
+    private ColdSegment(long index, Path file, int count, long firstSequence, long lastSequence,
+                        Map<String, Integer> counts, Map<String, Long> oldest) {
+        this.index = index;
+        this.file = file;
+        this.count = count;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.counts = Collections.unmodifiableMap(counts);
+        this.oldest = Collections.unmodifiableMap(oldest);
+    }
+
+    /**
+     * Writes a cold segment, replacing the file if it exists.
+     *
+     * @param index The position of the segment the records come from
+     * @param file The cold segment file
+     * @param payloads The encoded messages, in journal order
+     * @param names The table to intern the participants of the decoded messages in
+     * @return The written segment
+     * @throws IOException if the file cannot be written
+     */
+    static ColdSegment write(long index, Path file, List<byte[]> payloads, ParticipantIds names) throws IOException {
+        long firstSequence = Long.MAX_VALUE;
+        long lastSequence = Long.MIN_VALUE;
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Long> oldest = new HashMap<>();
+        for (byte[] payload : payloads) {
+            JournalEntry entry = MessageCodec.decode(payload, names);
+            firstSequence = Math.min(firstSequence, entry.getSequence());
+            lastSequence = Math.max(lastSequence, entry.getSequence());
+            String conversation = RetentionPolicy.conversationOf(entry.getMessage());
+            counts.merge(conversation, 1, Integer::sum);
+            oldest.merge(conversation, entry.getTimestamp(), Math::min);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            DataOutputStream header = new DataOutputStream(buffered);
+            header.writeInt(MAGIC);
+            header.writeInt(payloads.size());
+            header.writeLong(firstSequence);
+            header.writeLong(lastSequence);
+            header.writeInt(counts.size());
+            for (Map.Entry<String, Integer> conversation : counts.entrySet()) {
+                header.writeUTF(conversation.getKey());
+                header.writeInt(conversation.getValue());
+                header.writeLong(oldest.get(conversation.getKey()));
+            }
+            header.flush();
+
+            GZIPOutputStream compressed = new GZIPOutputStream(buffered, 1 << 16);
+            DataOutputStream records = new DataOutputStream(compressed);
+            for (byte[] payload : payloads) {
+                records.writeInt(payload.length);
+                records.writeInt(JournalSegment.checksum(payload));
+                records.write(payload);
+            }
+            records.flush();
+            compressed.finish();
+            buffered.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new ColdSegment(index, file, payloads.size(), firstSequence, lastSequence, counts, oldest);
+    }
+
+    /**
+     * Opens a cold segment, reading only its header.
+     *
+     * @param index The position of the segment the records come from
+     * @param file The cold segment file
+     * @return The segment
+     * @throws IOException if the file cannot be read or is not a cold segment
+     */
+    static ColdSegment open(long index, Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return readHeader(index, file, in);
+        }
+    }
+
+    /**
+     * Decompresses the records of the segment.
+     *
+     * @param records Receives the payload of each record, in journal order
+     * @throws IOException if the file cannot be read or is damaged
+     */
+    void read(Consumer<byte[]> records) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int stored = readHeader(index, file, in).count;
+            DataInputStream decompressed = new DataInputStream(new GZIPInputStream(in, 1 << 16));
+            for (int i = 0; i < stored; i++) {
+                byte[] payload = new byte[decompressed.readInt()];
+                int crc = decompressed.readInt();
+                decompressed.readFully(payload);
+                if (JournalSegment.checksum(payload) != crc) {
+                    throw new IOException("Damaged record in cold segment " + file);
+                }
+                records.accept(payload);
+            }
+        }
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the number of messages of each conversation in the segment.
+     */
+    Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Gets the time the oldest message of each conversation in the segment was stored at.
+     */
+    Map<String, Long> getOldest() {
+        return oldest;
+    }
+
+    private static ColdSegment readHeader(long index, Path file, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cold segment: " + file);
+        }
+        int count = in.readInt();
+        long firstSequence = in.readLong();
+        long lastSequence = in.readLong();
+        int conversations = in.readInt();
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Long> oldest = new HashMap<>();
+        for (int i = 0; i < conversations; i++) {
+            String conversation = in.readUTF();
+            counts.put(conversation, in.readInt());
+            oldest.put(conversation, in.readLong());
+        }
+        return new ColdSegment(index, file, count, firstSequence, lastSequence, counts, oldest);
+    }
+}
@@ -0,0 +1,297 @@
+package com.securechat.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background compaction of a {@link MessageJournal}, so its size and the time to recover it
+ * stay bounded while old messages stay readable.
+ * Each pass:
+ * <ul>
+ *   <li>deletes the messages a {@link RetentionPolicy} no longer keeps, with tombstones;</li>
+ *   <li>moves the oldest hot segments, once all their messages are older than a threshold,
+ *       into compressed cold segments, which are read on demand instead of on recovery;</li>
+ *   <li>rewrites sealed segments whose records are mostly superseded or deleted;</li>
+ *   <li>applies the retention policy to cold segments, rewriting one only when its header
+ *       shows it holds messages to delete.</li>
+ * </ul>
+ * The current segment is never touched, so compaction runs alongside appends.
+ *
+ * <p>Messages moved to cold segments are no longer restored on startup, so a key rotation
+ * re-wraps them in place with {@link MessageJournal#rewriteArchive(java.util.function.Function)}.
+ * Cold segments are rewritten under the journal's archive lock, so a rotation and a
+ * compaction pass do not lose each other's changes.</p>
+ *
+ * <p>The default compactor is configured through system properties: segments move to cold
+ * storage after {@code securechat.journal.coldDays} days (default 7), and the retention
+ * policy is {@link RetentionPolicy#fromSystemProperties()}.</p>
+ */
+public class JournalCompactor implements Closeable {
+
+    /** Default age after which a segment's messages move to cold storage. */
+    public static final long DEFAULT_COLD_AFTER_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /** Default time between compaction passes. */
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Share of a sealed segment below which its live records are copied into a smaller file. */
+    static final double SPARSE_RATIO = 0.5;
+
+    private final MessageJournal journal;
+    private final RetentionPolicy retention;
+    private final long coldAfterMillis;
+    private Thread thread;
+    private volatile boolean closed;
+
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong rewritten = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+
+    /**
+     * Creates a compactor. Passes run when {@link #compact()} is called, or in the background
+     * once the compactor is {@link #start(long) started}.
+     *
+     * @param journal The journal to compact
+     * @param retention The retention policy of the journal's messages
+     * @param coldAfterMillis The age after which a segment's messages move to cold storage,
+     *                        or {@link Long#MAX_VALUE} to keep every segment hot
+     */
+    public JournalCompactor(MessageJournal journal, RetentionPolicy retention, long coldAfterMillis) {
+        this.journal = journal;
+        this.retention = retention;
+        this.coldAfterMillis = coldAfterMillis;
+    }
+
+    /**
+     * Starts a compactor configured through system properties, running a pass every minute.
+     *
+     * @param journal The journal to compact
+     * @return The started compactor
+     */
+    public static JournalCompactor startDefault(MessageJournal journal) {
+        long coldDays = Long.getLong("securechat.journal.coldDays", TimeUnit.MILLISECONDS.toDays(DEFAULT_COLD_AFTER_MILLIS));
+        JournalCompactor compactor = new JournalCompactor(journal, RetentionPolicy.fromSystemProperties(),
+                TimeUnit.DAYS.toMillis(coldDays));
+        compactor.start(DEFAULT_INTERVAL_MILLIS);
+        return compactor;
+    }
+
+    /**
+     * Runs compaction passes in the background until the compactor is closed.
+     *
+     * @param intervalMillis The time between passes
+     * @throws IllegalStateException if the compactor was already started
+     */
+    public synchronized void start(long intervalMillis) {
+        if (thread != null) {
+            throw new IllegalStateException("Journal compactor already started");
+        }
+        thread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    // Retried on the next pass; the journal stays consistent
+                    System.err.println("Warning: Journal compaction failed: " + e.getMessage());
+                }
+            }
+        }, "journal-compactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs one compaction pass.
+     *
+     * @throws RuntimeException if a segment cannot be rewritten
+     */
+    public void compact() {
+        compact(System.currentTimeMillis());
+    }
+
+    /**
+     * Runs one compaction pass as of the given time.
+     */
+    synchronized void compact(long now) {
+        try {
+            Map<String, Long> kept = applyRetention(now);
+            compactSegments(now);
+            applyColdRetention(kept, now);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact message journal", e);
+        }
+    }
+
+    /**
+     * Gets the number of messages deleted by the retention policy.
+     *
+     * @return The deleted message count
+     */
+    public long getDeletedCount() {
+        return deleted.get();
+    }
+
+    /**
+     * Gets the number of sealed segments rewritten without their dead records.
+     *
+     * @return The rewritten segment count
+     */
+    public long getRewrittenCount() {
+        return rewritten.get();
+    }
+
+    /**
+     * Gets the number of segments moved to cold storage.
+     *
+     * @return The archived segment count
+     */
+    public long getArchivedCount() {
+        return archived.get();
+    }
+
+    /**
+     * Stops the background passes, waiting for a running pass to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread running;
+        synchronized (this) {
+            running = thread;
+        }
+        if (running != null) {
+            running.interrupt();
+        }
+        // Wait for a running pass, which holds the lock
+        synchronized (this) {
+            thread = null;
+        }
+    }
+
+    /**
+     * Deletes the hot messages the retention policy no longer keeps, reading each
+     * conversation from its newest message backwards.
+     *
+     * @return The number of hot messages kept per conversation
+     */
+    private Map<String, Long> applyRetention(long now) {
+        TreeMap<Long, MessageJournal.LiveRecord> records = new TreeMap<>(journal.liveRecords());
+        Map<String, Long> kept = new HashMap<>();
+        Map<Long, MessageJournal.LiveRecord> expired = new HashMap<>();
+        for (Map.Entry<Long, MessageJournal.LiveRecord> record : records.descendingMap().entrySet()) {
+            MessageJournal.LiveRecord live = record.getValue();
+            long newer = kept.getOrDefault(live.conversation, 0L);
+            if (retention.keeps(live.conversation, newer, live.timestamp, now)) {
+                kept.put(live.conversation, newer + 1);
+            } else {
+                expired.put(record.getKey(), live);
+            }
+        }
+        if (!expired.isEmpty()) {
+            deleted.addAndGet(journal.delete(expired));
+        }
+        return kept;
+    }
+
+    /**
+     * Moves old segments to cold storage, oldest first, and rewrites sparse ones.
+     * Only the oldest hot segment can move, since the tombstones of a segment may hide
+     * versions of a message in older segments.
+     */
+    private void compactSegments(long now) throws IOException {
+        SortedMap<Long, MessageJournal.SegmentInfo> sealed = journal.sealedSegments();
+        Map<Long, Long> liveBytes = new HashMap<>();
+        Map<Long, Long> newest = new HashMap<>();
+        for (MessageJournal.LiveRecord record : journal.liveRecords().values()) {
+            liveBytes.merge(record.segment, record.size, Long::sum);
+            newest.merge(record.segment, record.timestamp, Math::max);
+        }
+
+        boolean oldest = true;
+        for (Map.Entry<Long, MessageJournal.SegmentInfo> segment : sealed.entrySet()) {
+            long index = segment.getKey();
+            Long newestTimestamp = newest.get(index);
+            if (oldest && (newestTimestamp == null || now - newestTimestamp >= coldAfterMillis)) {
+                journal.archiveSegment(index);
+                archived.incrementAndGet();
+                continue;
+            }
+            long keptBytes = liveBytes.getOrDefault(index, 0L) + (oldest ? 0 : segment.getValue().tombstoneBytes);
+            if (keptBytes < segment.getValue().used * SPARSE_RATIO) {
+                journal.rewriteSegment(index, oldest);
+                rewritten.incrementAndGet();
+            }
+            oldest = false;
+        }
+    }
+
+    /**
+     * Deletes the cold messages the retention policy no longer keeps, continuing each
+     * conversation's count from its hot messages. A cold segment is only decompressed when
+     * its header shows a conversation past its age or count limit.
+     */
+    private void applyColdRetention(Map<String, Long> kept, long now) throws IOException {
+        for (ColdSegment listed : journal.coldSegments()) {
+            synchronized (journal.archiveLock()) {
+                ColdSegment segment = journal.coldSegment(listed.getIndex());
+                if (segment != null) {
+                    applyColdRetention(segment, kept, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the retention policy to one cold segment, holding the journal's archive lock.
+     */
+    private void applyColdRetention(ColdSegment segment, Map<String, Long> kept, long now) throws IOException {
+        boolean expires = false;
+        for (Map.Entry<String, Integer> conversation : segment.getCounts().entrySet()) {
+            String key = conversation.getKey();
+            if (retention.expiresBy(key, segment.getOldest().get(key), now)
+                    || kept.getOrDefault(key, 0L) + conversation.getValue() > retention.maxCount(key)) {
+                expires = true;
+            }
+        }
+        if (!expires) {
+            for (Map.Entry<String, Integer> conversation : segment.getCounts().entrySet()) {
+                kept.merge(conversation.getKey(), (long) conversation.getValue(), Long::sum);
+            }
+            return;
+        }
+
+        List<byte[]> payloads = new ArrayList<>();
+        segment.read(payloads::add);
+        List<byte[]> retained = new ArrayList<>();
+        for (int i = payloads.size() - 1; i >= 0; i--) {
+            JournalEntry entry = MessageCodec.decode(payloads.get(i), journal.names());
+            String conversation = RetentionPolicy.conversationOf(entry.getMessage());
+            long newer = kept.getOrDefault(conversation, 0L);
+            // A message written again since it was archived is superseded by its hot record
+            if (!journal.isLive(entry.getSequence())
+                    && retention.keeps(conversation, newer, entry.getTimestamp(), now)) {
+                kept.put(conversation, newer + 1);
+                retained.add(payloads.get(i));
+            }
+        }
+        if (retained.size() < payloads.size()) {
+            Collections.reverse(retained);
+            journal.rewriteColdSegment(segment, retained);
+            deleted.addAndGet(payloads.size() - retained.size());
+        }
+    }
+}
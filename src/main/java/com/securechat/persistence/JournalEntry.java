@@ -0,0 +1,53 @@
+package com.securechat.persistence;
+
+import com.securechat.model.Message;
+
+/**
+ * Message read back from the journal, with the position and time it was stored at.
+ */
+public final class JournalEntry {
+    private final long sequence;
+    private final long timestamp;
+    private final Message message;
+
+    /**
+     * Creates a journal entry.
+     *
+     * @param sequence The message's sequence number in the journal
+     * @param timestamp The time the message was stored, in milliseconds since the epoch
+     * @param message The restored message
+     */
+    JournalEntry(long sequence, long timestamp, Message message) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.message = message;
+    }
+
+    /**
+     * Gets the message's sequence number in the journal. It only differs from the message's
+     * sequence number in the message log once messages were deleted from the journal.
+     *
+     * @return The journal sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the time the message was stored.
+     *
+     * @return The time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the restored message.
+     *
+     * @return The message
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,212 @@
+package com.securechat.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One fixed-size, memory-mapped journal file.
+ * Records are laid out back to back as {@code [length:4][crc32:4][payload]}; the file is
+ * zero-filled when created, so a zero length marks the end of the written records.
+ * Writes go to the mapping and reach the disk when the segment is {@link #force() forced}.
+ * Once the journal moves on to the next segment, a segment is sealed: it is only read and
+ * rewritten as a whole, through {@link #read(Path, Consumer)} and {@link #write(Path, List)}.
+ */
+final class JournalSegment {
+
+    /** Size of a record header: the payload length and its checksum. */
+    static final int HEADER_SIZE = 8;
+
+    private final long index;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Opens a segment file, creating and zero-filling it if it does not exist.
+     *
+     * @param index The segment's position in the journal
+     * @param file The segment file
+     * @param size The size of the segment in bytes, or 0 to map an existing file as it is
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    JournalSegment(long index, Path file, int size) throws IOException {
+        this.index = index;
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the offset the next record will be written at.
+     */
+    int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * Appends a record after the last one, if it fits.
+     * Callers serialize appends to the same segment.
+     *
+     * @param payload The record payload
+     * @param crc The CRC-32 of the payload
+     * @return true if the record was written, false if the segment has no room left for it
+     */
+    boolean append(byte[] payload, int crc) {
+        if (buffer.remaining() < HEADER_SIZE + payload.length) {
+            return false;
+        }
+        int start = buffer.position();
+        // Write the payload before the length, so a record never looks complete before it is
+        buffer.position(start + HEADER_SIZE);
+        buffer.put(payload);
+        buffer.putInt(start + 4, crc);
+        buffer.putInt(start, payload.length);
+        return true;
+    }
+
+    /**
+     * Reads the records from the start of the segment and positions it after the last valid
+     * one. A record with a bad length or checksum is treated as a torn write: it and anything
+     * after it are zeroed, so the segment ends cleanly at the last valid record.
+     *
+     * @param records Receives the payload of each valid record, in order
+     * @return true if the segment ended cleanly, false if a torn tail was truncated
+     */
+    boolean recover(Consumer<byte[]> records) {
+        int position = 0;
+        boolean clean = true;
+        CRC32 crc = new CRC32();
+        while (buffer.capacity() - position >= HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.capacity() - position - HEADER_SIZE) {
+                clean = false;
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                clean = false;
+                break;
+            }
+            records.accept(payload);
+            position += HEADER_SIZE + length;
+        }
+        if (!clean) {
+            truncate(position);
+        }
+        buffer.position(position);
+        return clean;
+    }
+
+    /**
+     * Zeroes the segment from an offset on and forces it to disk.
+     */
+    void truncate(int from) {
+        for (int i = from; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+    }
+
+    /**
+     * Writes the segment's changes to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the segment file. The mapping stays valid until it is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the valid records of a sealed segment file, without mapping it.
+     *
+     * @param file The segment file
+     * @param records Receives the payload of each record, in order
+     * @throws IOException if the file cannot be read
+     */
+    static void read(Path file, Consumer<byte[]> records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > buffer.remaining() - HEADER_SIZE) {
+                return;
+            }
+            int crc = buffer.getInt(buffer.position() + 4);
+            byte[] payload = new byte[length];
+            buffer.position(buffer.position() + HEADER_SIZE);
+            buffer.get(payload);
+            if (checksum(payload) != crc) {
+                return;
+            }
+            records.accept(payload);
+        }
+    }
+
+    /**
+     * Writes a sealed segment file holding the given records and nothing after them, and
+     * forces it to disk.
+     *
+     * @param file The file to create or overwrite
+     * @param payloads The record payloads, in order
+     * @return The size of the file in bytes
+     * @throws IOException if the file cannot be written
+     */
+    static long write(Path file, List<byte[]> payloads) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            for (byte[] payload : payloads) {
+                header.clear();
+                header.putInt(payload.length).putInt(checksum(payload)).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                ByteBuffer body = ByteBuffer.wrap(payload);
+                while (body.hasRemaining()) {
+                    out.write(body);
+                }
+            }
+            out.force(true);
+            return out.size();
+        }
+    }
+
+    /**
+     * Computes the checksum stored with a record.
+     */
+    static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
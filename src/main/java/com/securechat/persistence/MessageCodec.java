@@ -0,0 +1,172 @@
+package com.securechat.persistence;
+
+import com.securechat.model.AttachmentMessage;
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+import com.securechat.model.ParticipantIds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary encoding of messages for the journal.
+ * Only what was sent over the wire is stored: the encrypted body, the wrapped keys and the
+ * signature. The sender's clear text is never written to disk, so restored text messages
+ * have no original content. A tombstone records that a message was deleted.
+ * Every record starts with its type and its journal sequence number.
+ */
+final class MessageCodec {
+    private static final byte TOMBSTONE = 0;
+    private static final byte DIRECT = 1;
+    private static final byte GROUP = 2;
+    private static final byte ATTACHMENT = 3;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes a stored message.
+     *
+     * @param message The message, with its timestamp assigned
+     * @param sequence The message's sequence number in the journal
+     * @return The encoded message
+     */
+    static byte[] encode(Message message, long sequence) {
+        return encode(message, sequence, message.getTimestamp());
+    }
+
+    /**
+     * Encodes a message with a given timestamp, e.g. a new version of an archived message
+     * that is not stored in a message log.
+     *
+     * @param message The message
+     * @param sequence The message's sequence number in the journal
+     * @param timestamp The time the message was stored, in milliseconds since the epoch
+     * @return The encoded message
+     */
+    static byte[] encode(Message message, long sequence, long timestamp) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getCiphertext().length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(message instanceof AttachmentMessage ? ATTACHMENT
+                    : message instanceof GroupMessage ? GROUP : DIRECT);
+            out.writeLong(sequence);
+            out.writeLong(timestamp);
+            out.writeUTF(message.getSender());
+            out.writeUTF(message.getReceiver());
+            writeBytes(out, message.getCiphertext());
+            writeBytes(out, message.getSignature());
+            if (message instanceof GroupMessage) {
+                GroupMessage group = (GroupMessage) message;
+                out.writeInt(group.getRecipients().size());
+                for (String recipient : group.getRecipients()) {
+                    out.writeUTF(recipient);
+                    writeBytes(out, group.getWrappedKey(recipient));
+                }
+            } else if (message instanceof AttachmentMessage) {
+                AttachmentMessage attachment = (AttachmentMessage) message;
+                out.writeUTF(attachment.getFileName());
+                out.writeLong(attachment.getFileSize());
+                out.writeUTF(attachment.getEncryptedFile().toString());
+                writeBytes(out, attachment.getKeyCommitment());
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode message", e);
+        }
+    }
+
+    /**
+     * Encodes the deletion of a message.
+     *
+     * @param sequence The deleted message's sequence number in the journal
+     * @return The encoded tombstone
+     */
+    static byte[] encodeTombstone(long sequence) {
+        return ByteBuffer.allocate(1 + 8).put(TOMBSTONE).putLong(sequence).array();
+    }
+
+    /**
+     * Checks whether a record is a tombstone rather than a message.
+     */
+    static boolean isTombstone(byte[] data) {
+        return data[0] == TOMBSTONE;
+    }
+
+    /**
+     * Reads the journal sequence number of a record without decoding it.
+     */
+    static long sequenceOf(byte[] data) {
+        return ByteBuffer.wrap(data).getLong(1);
+    }
+
+    /**
+     * Decodes a message encoded by {@link #encode(Message, long)}.
+     *
+     * @param data The encoded message
+     * @param names The table to intern the message's participants in
+     * @return The restored message with its sequence number and timestamp
+     * @throws RuntimeException if the data is not a valid encoded message
+     */
+    static JournalEntry decode(byte[] data, ParticipantIds names) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            long timestamp = in.readLong();
+            String sender = in.readUTF();
+            String receiver = in.readUTF();
+            byte[] ciphertext = readBytes(in);
+            byte[] signature = readBytes(in);
+            Message message;
+            switch (type) {
+                case DIRECT:
+                    message = new Message(names, sender, receiver, null, ciphertext, signature);
+                    break;
+                case GROUP:
+                    int count = in.readInt();
+                    Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        wrappedKeys.put(in.readUTF(), readBytes(in));
+                    }
+                    message = new GroupMessage(names, sender, receiver, null, ciphertext, wrappedKeys, signature);
+                    break;
+                case ATTACHMENT:
+                    message = new AttachmentMessage(names, sender, receiver, in.readUTF(), in.readLong(),
+                            Paths.get(in.readUTF()), ciphertext, readBytes(in), signature);
+                    break;
+                default:
+                    throw new IOException("Unknown message type " + type);
+            }
+            return new JournalEntry(sequence, timestamp, message);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode message", e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,784 @@
+package com.securechat.persistence;
+
+import com.securechat.model.Message;
+import com.securechat.model.ParticipantIds;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Durable, append-only journal of encrypted messages, kept in memory-mapped segment files.
+ *
+ * <p>Appends copy the encoded message into the current segment and return at once; a
+ * flusher thread forces the written segments to disk every few milliseconds and completes
+ * the futures of every append in that batch (group commit), so durability costs one disk
+ * flush per batch rather than per message. Since the segments are memory-mapped, appended
+ * messages survive a crash of the application even before they are forced; forcing protects
+ * them against a crash of the machine.</p>
+ *
+ * <p>On opening, the segments are scanned and a record torn by a crash is truncated, along
+ * with any segment after it. A message that was replaced in the message log, e.g. after
+ * its keys were re-wrapped, is appended again; the latest record of a sequence number wins.
+ * Decoded messages intern their participants in a table of the journal's, which the message
+ * model they are restored into replaces with its own.</p>
+ *
+ * <p>Only the current segment is written to; the segments before it are sealed. A
+ * {@link JournalCompactor} deletes messages past their retention with tombstone records,
+ * rewrites sealed segments that are mostly superseded or deleted records, and moves old
+ * segments into compressed cold segments. Cold segments are not scanned on opening; their
+ * messages are read on demand with {@link #readArchive(long, int, Predicate)}, and rewritten in
+ * place with {@link #rewriteArchive(Function)}, e.g. when a key rotation re-wraps them. Since deleted
+ * messages leave gaps in the journal's sequence numbers, the journal maps the dense sequence
+ * numbers of the message log it was restored into to its own.</p>
+ */
+public class MessageJournal implements Closeable {
+
+    /** Default size of a segment file. */
+    public static final int DEFAULT_SEGMENT_SIZE = 8 << 20;
+
+    /** Default maximum time between an append and the flush that makes it durable. */
+    public static final long DEFAULT_FLUSH_MILLIS = 10;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushMillis;
+    private final List<JournalEntry> recovered;
+    // Journal sequence number of each restored message, by its sequence number in the message log
+    private final long[] recoveredSequences;
+    // Journal sequence number of the first message appended after opening
+    private final long firstNewSequence;
+    private final Thread flusher;
+    // Held while a cold segment is read to be rewritten, so concurrent rewrites do not lose each other's changes
+    private final Object archiveLock = new Object();
+    // Participants of the messages decoded from the segments
+    private final ParticipantIds names = new ParticipantIds();
+
+    private JournalSegment current;
+    // Appends since the last flush, and the segments they were written to; guarded by this
+    private List<CompletableFuture<Void>> pendingCommits = new ArrayList<>();
+    private Set<JournalSegment> dirtySegments = new LinkedHashSet<>();
+    // Latest record of every message in the hot segments, and the segments; guarded by this
+    private final Map<Long, LiveRecord> live = new HashMap<>();
+    private final TreeMap<Long, SegmentInfo> hotSegments = new TreeMap<>();
+    private final TreeMap<Long, ColdSegment> coldSegments = new TreeMap<>();
+    private final Object flushLock = new Object();
+    private volatile boolean closed;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private boolean tornTail;
+    private long highestSequence = -1;
+
+    /**
+     * Opens the journal configured through system properties: the directory is
+     * {@code securechat.journal.dir} (default {@code journal}).
+     *
+     * @return The journal
+     * @throws RuntimeException if the journal cannot be opened
+     */
+    public static MessageJournal openDefault() {
+        return new MessageJournal(Paths.get(System.getProperty("securechat.journal.dir", "journal")),
+                DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Opens a journal, recovering the messages already in it.
+     *
+     * @param directory The directory holding the segment files, created if missing
+     * @param segmentSize The size of each segment file in bytes
+     * @param flushMillis The maximum time between an append and the flush that makes it durable
+     * @throws RuntimeException if the journal cannot be opened
+     */
+    public MessageJournal(Path directory, int segmentSize, long flushMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flushMillis = flushMillis;
+        try {
+            Files.createDirectories(directory);
+            this.recovered = recover();
+            if (current == null) {
+                long last = Math.max(hotSegments.isEmpty() ? -1 : hotSegments.lastKey(),
+                        coldSegments.isEmpty() ? -1 : coldSegments.lastKey());
+                current = openSegment(last + 1);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open message journal " + directory, e);
+        }
+        this.recoveredSequences = new long[recovered.size()];
+        for (int i = 0; i < recoveredSequences.length; i++) {
+            recoveredSequences[i] = recovered.get(i).getSequence();
+        }
+        this.firstNewSequence = highestSequence + 1;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Gets the messages of the hot segments recovered when the journal was opened, in
+     * journal order, each in its latest version. They are expected to be restored into an
+     * empty message log in this order, which numbers them consecutively from 0.
+     *
+     * @return The recovered entries
+     */
+    public List<JournalEntry> getRecoveredEntries() {
+        return recovered;
+    }
+
+    /**
+     * Checks whether a torn record was truncated when the journal was opened.
+     *
+     * @return true if recovery truncated the journal, false if it ended cleanly
+     */
+    public boolean wasTruncated() {
+        return tornTail;
+    }
+
+    /**
+     * Appends a stored message, or a new version of one, to the journal.
+     *
+     * @param message The message, with its sequence number in the message log and its timestamp assigned
+     * @return A future completed once the message is forced to disk
+     * @throws IllegalArgumentException if the message is not stored or does not fit in a segment
+     * @throws IllegalStateException if the journal is closed
+     * @throws RuntimeException if a new segment cannot be created
+     */
+    public CompletableFuture<Void> append(Message message) {
+        long sequence = journalSequence(message.getSequence());
+        return write(MessageCodec.encode(message, sequence), sequence, message);
+    }
+
+    /**
+     * Appends a new version of a stored message, e.g. after its keys were re-wrapped, if the
+     * message still has a record in the hot segments. A message deleted past its retention is
+     * not brought back, and a message moved to a cold segment is left to be rewritten there.
+     *
+     * @param message The new version, with the sequence number and timestamp of the stored message
+     * @return A future completed once the message is forced to disk, or null if nothing was appended
+     * @throws IllegalArgumentException if the message is not stored or does not fit in a segment
+     * @throws IllegalStateException if the journal is closed
+     * @throws RuntimeException if a new segment cannot be created
+     */
+    public CompletableFuture<Void> replace(Message message) {
+        long sequence = journalSequence(message.getSequence());
+        byte[] payload = MessageCodec.encode(message, sequence);
+        synchronized (this) {
+            // Checked under the same lock as the compactor's tombstones and archiving
+            return live.containsKey(sequence) ? write(payload, sequence, message) : null;
+        }
+    }
+
+    /**
+     * Reads a page of archived messages from the cold segments, backwards from a sequence
+     * number. Only the cold segments that can hold messages of the page are decompressed.
+     * Messages restored or appended since the journal was opened are left out, since they
+     * are in the message log.
+     *
+     * @param beforeSequence The journal sequence number to read backwards from, exclusive
+     * @param limit The maximum number of messages to read
+     * @param filter Selects the messages to read
+     * @return The newest matching messages before the sequence number, oldest first
+     * @throws RuntimeException if a cold segment cannot be read
+     */
+    public List<JournalEntry> readArchive(long beforeSequence, int limit, Predicate<Message> filter) {
+        List<ColdSegment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(coldSegments.descendingMap().values());
+        }
+        TreeMap<Long, JournalEntry> newest = new TreeMap<>();
+        for (ColdSegment segment : segments) {
+            // Only decompress segments that can hold messages of the page
+            if (segment.getFirstSequence() >= beforeSequence
+                    || newest.size() >= limit && segment.getLastSequence() < newest.firstKey()) {
+                continue;
+            }
+            try {
+                segment.read(payload -> {
+                    long sequence = MessageCodec.sequenceOf(payload);
+                    if (sequence >= beforeSequence || isRestored(sequence)
+                            || newest.size() >= limit && sequence < newest.firstKey()) {
+                        return;
+                    }
+                    JournalEntry entry = MessageCodec.decode(payload, names);
+                    if (filter.test(entry.getMessage())) {
+                        // A message archived again after it was replaced is read from the newer segment first
+                        newest.putIfAbsent(sequence, entry);
+                        if (newest.size() > limit) {
+                            newest.pollFirstEntry();
+                        }
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // Deleted by the compactor since the segments were listed
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read archived messages", e);
+            }
+        }
+        return new ArrayList<>(newest.values());
+    }
+
+    /**
+     * Rewrites archived messages in the cold segments, e.g. to re-wrap their content keys for
+     * a receiver's new key pair. Messages that were written again since they were archived are
+     * left alone, and only the cold segments holding a changed message are rewritten.
+     *
+     * @param rewriter Returns the new version of an archived message, or null to keep it as it is
+     * @return The number of messages rewritten
+     * @throws RuntimeException if a cold segment cannot be read or rewritten
+     */
+    public long rewriteArchive(Function<Message, Message> rewriter) {
+        long rewritten = 0;
+        for (ColdSegment listed : coldSegments()) {
+            synchronized (archiveLock) {
+                ColdSegment segment = coldSegment(listed.getIndex());
+                if (segment == null) {
+                    continue;
+                }
+                List<byte[]> payloads = new ArrayList<>();
+                int changed = 0;
+                try {
+                    segment.read(payloads::add);
+                    for (int i = 0; i < payloads.size(); i++) {
+                        JournalEntry entry = MessageCodec.decode(payloads.get(i), names);
+                        Message replacement = isLive(entry.getSequence()) ? null : rewriter.apply(entry.getMessage());
+                        if (replacement != null) {
+                            payloads.set(i, MessageCodec.encode(replacement, entry.getSequence(), entry.getTimestamp()));
+                            changed++;
+                        }
+                    }
+                    if (changed > 0) {
+                        rewriteColdSegment(segment, payloads);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Deleted by the compactor since the segments were listed
+                    changed = 0;
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to rewrite archived messages", e);
+                }
+                rewritten += changed;
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * Writes a message or tombstone record and updates the record's segment bookkeeping.
+     *
+     * @param message The message, or null for a tombstone
+     */
+    private CompletableFuture<Void> write(byte[] payload, long sequence, Message message) {
+        if (payload.length > segmentSize - JournalSegment.HEADER_SIZE) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit in a segment");
+        }
+        int crc = JournalSegment.checksum(payload);
+        String conversation = message != null ? RetentionPolicy.conversationOf(message) : null;
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Message journal is closed");
+            }
+            if (!current.append(payload, crc)) {
+                hotSegments.get(current.getIndex()).used = current.getPosition();
+                JournalSegment sealed = current;
+                try {
+                    current = openSegment(current.getIndex() + 1);
+                    // The mapping stays valid, so a pending flush still forces the sealed segment
+                    sealed.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to create journal segment", e);
+                }
+                current.append(payload, crc);
+            }
+            dirtySegments.add(current);
+            pendingCommits.add(committed);
+            long size = JournalSegment.HEADER_SIZE + payload.length;
+            if (message != null) {
+                live.put(sequence, new LiveRecord(current.getIndex(), message.getTimestamp(), conversation, size));
+            } else {
+                live.remove(sequence);
+                hotSegments.get(current.getIndex()).tombstoneBytes += size;
+            }
+        }
+        records.incrementAndGet();
+        bytes.addAndGet(JournalSegment.HEADER_SIZE + payload.length);
+        return committed;
+    }
+
+    /**
+     * Forces every append made so far to disk and completes their futures.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<CompletableFuture<Void>> batch;
+            List<JournalSegment> dirty;
+            synchronized (this) {
+                if (pendingCommits.isEmpty()) {
+                    return;
+                }
+                batch = pendingCommits;
+                dirty = new ArrayList<>(dirtySegments);
+                pendingCommits = new ArrayList<>();
+                dirtySegments = new LinkedHashSet<>();
+            }
+            try {
+                for (JournalSegment segment : dirty) {
+                    segment.force();
+                }
+                commits.incrementAndGet();
+                for (CompletableFuture<Void> committed : batch) {
+                    committed.complete(null);
+                }
+            } catch (RuntimeException e) {
+                for (CompletableFuture<Void> committed : batch) {
+                    committed.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of records appended since the journal was opened.
+     *
+     * @return The record count
+     */
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    /**
+     * Gets the number of bytes appended since the journal was opened, headers included.
+     *
+     * @return The byte count
+     */
+    public long getByteCount() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets the number of group commits, i.e. flushes that made at least one append durable.
+     *
+     * @return The commit count
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return The journal directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes pending appends, stops the flusher and closes the segment files.
+     *
+     * @throws IOException if a segment file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.interrupt();
+        flush();
+        synchronized (this) {
+            current.close();
+        }
+    }
+
+    /**
+     * Gets the latest record of every message in the hot segments.
+     *
+     * @return A copy of the records, keyed by journal sequence number
+     */
+    synchronized Map<Long, LiveRecord> liveRecords() {
+        return new HashMap<>(live);
+    }
+
+    /**
+     * Gets the sealed hot segments, i.e. every hot segment but the current one.
+     *
+     * @return A copy of the segments' bookkeeping, keyed by segment index in journal order
+     */
+    synchronized SortedMap<Long, SegmentInfo> sealedSegments() {
+        SortedMap<Long, SegmentInfo> sealed = new TreeMap<>();
+        for (Map.Entry<Long, SegmentInfo> segment : hotSegments.headMap(current.getIndex()).entrySet()) {
+            sealed.put(segment.getKey(), new SegmentInfo(segment.getValue()));
+        }
+        return sealed;
+    }
+
+    /**
+     * Gets the cold segments.
+     *
+     * @return The cold segments, newest first
+     */
+    synchronized List<ColdSegment> coldSegments() {
+        return new ArrayList<>(coldSegments.descendingMap().values());
+    }
+
+    /**
+     * Gets the current version of a cold segment.
+     *
+     * @return The cold segment, or null if it was deleted
+     */
+    synchronized ColdSegment coldSegment(long index) {
+        return coldSegments.get(index);
+    }
+
+    /**
+     * Gets the table the participants of decoded messages are interned in.
+     */
+    ParticipantIds names() {
+        return names;
+    }
+
+    /**
+     * Gets the lock to hold while reading a cold segment to rewrite it.
+     */
+    Object archiveLock() {
+        return archiveLock;
+    }
+
+    /**
+     * Checks whether a message has a record in the hot segments.
+     */
+    synchronized boolean isLive(long sequence) {
+        return live.containsKey(sequence);
+    }
+
+    /**
+     * Deletes messages by appending a tombstone for each, unless the message was written
+     * again since its record was read.
+     *
+     * @param records The records of the messages to delete, keyed by journal sequence number
+     * @return The number of messages deleted
+     */
+    int delete(Map<Long, LiveRecord> records) {
+        int deleted = 0;
+        for (Map.Entry<Long, LiveRecord> record : records.entrySet()) {
+            synchronized (this) {
+                if (closed || live.get(record.getKey()) != record.getValue()) {
+                    continue;
+                }
+                write(MessageCodec.encodeTombstone(record.getKey()), record.getKey(), null);
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Rewrites a sealed segment with only its live records, deleting it if none are left.
+     * Tombstones are kept while an older hot segment may still hold a version of the message.
+     *
+     * @param index The index of the sealed segment
+     * @param dropTombstones Whether the segment is the oldest hot segment, so its tombstones can go
+     * @throws IOException if the segment cannot be rewritten
+     */
+    void rewriteSegment(long index, boolean dropTombstones) throws IOException {
+        Path file = segmentFile(index);
+        Map<Long, byte[]> records = new LinkedHashMap<>();
+        Map<Long, byte[]> tombstones = new LinkedHashMap<>();
+        JournalSegment.read(file, payload ->
+                (MessageCodec.isTombstone(payload) ? tombstones : records).put(MessageCodec.sequenceOf(payload), payload));
+
+        List<byte[]> kept = new ArrayList<>();
+        long tombstoneBytes = 0;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Map.Entry<Long, byte[]> tombstone : tombstones.entrySet()) {
+                if (!dropTombstones && !isLiveIn(tombstone.getKey(), index)) {
+                    kept.add(tombstone.getValue());
+                    tombstoneBytes += JournalSegment.HEADER_SIZE + tombstone.getValue().length;
+                }
+            }
+            for (Map.Entry<Long, byte[]> record : records.entrySet()) {
+                if (isLiveIn(record.getKey(), index)) {
+                    kept.add(record.getValue());
+                }
+            }
+        }
+
+        if (kept.isEmpty()) {
+            Files.delete(file);
+            synchronized (this) {
+                hotSegments.remove(index);
+            }
+            return;
+        }
+        Path temporary = temporaryFile(file);
+        long size = JournalSegment.write(temporary, kept);
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            SegmentInfo info = hotSegments.get(index);
+            info.used = size;
+            info.tombstoneBytes = tombstoneBytes;
+        }
+    }
+
+    /**
+     * Moves the live messages of the oldest hot segment into a cold segment and deletes it.
+     * Its tombstones are dropped, since no older hot segment is left for them to apply to.
+     *
+     * @param index The index of the oldest hot segment
+     * @throws IOException if the cold segment cannot be written
+     */
+    void archiveSegment(long index) throws IOException {
+        Path file = segmentFile(index);
+        Map<Long, byte[]> records = new TreeMap<>();
+        JournalSegment.read(file, payload -> {
+            if (!MessageCodec.isTombstone(payload)) {
+                records.put(MessageCodec.sequenceOf(payload), payload);
+            }
+        });
+
+        List<byte[]> kept = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Map.Entry<Long, byte[]> record : records.entrySet()) {
+                if (isLiveIn(record.getKey(), index)) {
+                    kept.add(record.getValue());
+                }
+            }
+        }
+        if (!kept.isEmpty()) {
+            // Written before the hot segment is deleted, so a crash in between loses nothing
+            Path coldFile = directory.resolve(segmentName(index, ColdSegment.SUFFIX));
+            ColdSegment cold = ColdSegment.write(index, coldFile, kept, names);
+            synchronized (this) {
+                coldSegments.put(index, cold);
+                for (Map.Entry<Long, byte[]> record : records.entrySet()) {
+                    if (isLiveIn(record.getKey(), index)) {
+                        live.remove(record.getKey());
+                    }
+                }
+            }
+        }
+        Files.delete(file);
+        synchronized (this) {
+            hotSegments.remove(index);
+        }
+    }
+
+    /**
+     * Rewrites a cold segment with some of its records, deleting it if none are left.
+     *
+     * @param segment The cold segment
+     * @param payloads The records to keep, in journal order
+     * @throws IOException if the segment cannot be rewritten
+     */
+    void rewriteColdSegment(ColdSegment segment, List<byte[]> payloads) throws IOException {
+        if (payloads.isEmpty()) {
+            Files.delete(segment.getFile());
+            synchronized (this) {
+                coldSegments.remove(segment.getIndex());
+            }
+            return;
+        }
+        ColdSegment rewritten = ColdSegment.write(segment.getIndex(), segment.getFile(), payloads, names);
+        synchronized (this) {
+            coldSegments.put(segment.getIndex(), rewritten);
+        }
+    }
+
+    private boolean isLiveIn(long sequence, long index) {
+        LiveRecord record = live.get(sequence);
+        return record != null && record.segment == index;
+    }
+
+    /**
+     * Maps a sequence number of the message log to the journal's.
+     */
+    private long journalSequence(long logSequence) {
+        if (logSequence < 0) {
+            throw new IllegalArgumentException("Message is not stored in a message log");
+        }
+        return logSequence < recoveredSequences.length ? recoveredSequences[(int) logSequence]
+                : firstNewSequence + logSequence - recoveredSequences.length;
+    }
+
+    /**
+     * Checks whether a message was restored or appended since the journal was opened.
+     */
+    private boolean isRestored(long sequence) {
+        return sequence >= firstNewSequence || Arrays.binarySearch(recoveredSequences, sequence) >= 0;
+    }
+
+    /**
+     * Forces pending appends to disk at the configured interval until the journal is closed.
+     */
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(flushMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Reads the cold segments' headers, then scans the hot segments in order and keeps the
+     * latest version of each message that was not deleted. Everything after the first torn
+     * record is discarded, since later segments may depend on the records lost with it.
+     */
+    private List<JournalEntry> recover() throws IOException {
+        for (Path file : segmentFiles(TEMPORARY_SUFFIX)) {
+            // Left by a rewrite that did not complete
+            Files.delete(file);
+        }
+        for (Path file : segmentFiles(ColdSegment.SUFFIX)) {
+            ColdSegment cold = ColdSegment.open(segmentIndex(file, ColdSegment.SUFFIX), file);
+            coldSegments.put(cold.getIndex(), cold);
+            highestSequence = Math.max(highestSequence, cold.getLastSequence());
+        }
+
+        Map<Long, JournalEntry> latest = new TreeMap<>();
+        List<Path> files = segmentFiles(SEGMENT_SUFFIX);
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long index = segmentIndex(file, SEGMENT_SUFFIX);
+            if (tornTail || coldSegments.containsKey(index)) {
+                // A segment already archived was not deleted before a crash
+                Files.delete(file);
+                continue;
+            }
+            boolean last = i == files.size() - 1;
+            // Sealed segments are mapped at their own size, which rewrites may have shrunk
+            JournalSegment segment = new JournalSegment(index, file, last ? segmentSize : 0);
+            SegmentInfo info = new SegmentInfo();
+            hotSegments.put(index, info);
+            tornTail = !segment.recover(payload -> {
+                long sequence = MessageCodec.sequenceOf(payload);
+                long size = JournalSegment.HEADER_SIZE + payload.length;
+                highestSequence = Math.max(highestSequence, sequence);
+                if (MessageCodec.isTombstone(payload)) {
+                    latest.remove(sequence);
+                    live.remove(sequence);
+                    info.tombstoneBytes += size;
+                } else {
+                    JournalEntry entry = MessageCodec.decode(payload, names);
+                    latest.put(sequence, entry);
+                    live.put(sequence, new LiveRecord(index, entry.getTimestamp(),
+                            RetentionPolicy.conversationOf(entry.getMessage()), size));
+                }
+            });
+            info.used = segment.getPosition();
+            if (last || tornTail) {
+                current = segment;
+            } else {
+                segment.close();
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(latest.values()));
+    }
+
+    /**
+     * Lists the files with a suffix in order.
+     */
+    private List<Path> segmentFiles(String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private JournalSegment openSegment(long index) throws IOException {
+        JournalSegment segment = new JournalSegment(index, segmentFile(index), segmentSize);
+        hotSegments.put(index, new SegmentInfo());
+        return segment;
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(segmentName(index, SEGMENT_SUFFIX));
+    }
+
+    private static Path temporaryFile(Path file) {
+        return file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+    }
+
+    private static String segmentName(long index, String suffix) {
+        return String.format("%010d%s", index, suffix);
+    }
+
+    private static long segmentIndex(Path file, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    }
+
+    /**
+     * Where the latest version of a message in the hot segments is, and what retention needs to know about it.
+     */
+    static final class LiveRecord {
+        final long segment;
+        final long timestamp;
+        final String conversation;
+        final long size;
+
+        LiveRecord(long segment, long timestamp, String conversation, long size) {
+            this.segment = segment;
+            this.timestamp = timestamp;
+            this.conversation = conversation;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Bookkeeping of a hot segment: the bytes its records take, and how many of them are tombstones.
+     * The size of the current segment is only recorded once it is sealed.
+     */
+    static final class SegmentInfo {
+        long used;
+        long tombstoneBytes;
+
+        SegmentInfo() {
+        }
+
+        SegmentInfo(SegmentInfo other) {
+            this.used = other.used;
+            this.tombstoneBytes = other.tombstoneBytes;
+        }
+    }
+}
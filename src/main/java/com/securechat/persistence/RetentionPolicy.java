@@ -0,0 +1,162 @@
+package com.securechat.persistence;
+
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the journal keeps the messages of each conversation.
+ * A conversation keeps at most a number of its newest messages, none older than a maximum
+ * age; the limits apply to every conversation unless a conversation has its own.
+ * Conversations are the direct messages and attachments between two participants, or the
+ * messages sent to a group.
+ */
+public final class RetentionPolicy {
+
+    /** Policy that keeps every message. */
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy(Long.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final long maxAgeMillis;
+    private final int maxCount;
+    private final Map<String, RetentionPolicy> conversations;
+
+    /**
+     * Creates a policy applying the same limits to every conversation.
+     *
+     * @param maxAgeMillis The maximum age of a message, or {@link Long#MAX_VALUE} for no limit
+     * @param maxCount The maximum number of messages per conversation, or {@link Integer#MAX_VALUE} for no limit
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public RetentionPolicy(long maxAgeMillis, int maxCount) {
+        this(maxAgeMillis, maxCount, Collections.<String, RetentionPolicy>emptyMap());
+    }
+
+    private RetentionPolicy(long maxAgeMillis, int maxCount, Map<String, RetentionPolicy> conversations) {
+        if (maxAgeMillis <= 0 || maxCount <= 0) {
+            throw new IllegalArgumentException("Retention limits must be positive");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxCount = maxCount;
+        this.conversations = conversations;
+    }
+
+    /**
+     * Creates the policy configured through system properties: messages older than
+     * {@code securechat.retention.days} days are deleted, and each conversation keeps its
+     * {@code securechat.retention.messages} newest messages. Both are unlimited by default.
+     *
+     * @return The configured policy
+     */
+    public static RetentionPolicy fromSystemProperties() {
+        Long days = Long.getLong("securechat.retention.days");
+        Integer messages = Integer.getInteger("securechat.retention.messages");
+        return new RetentionPolicy(days != null ? TimeUnit.DAYS.toMillis(days) : Long.MAX_VALUE,
+                messages != null ? messages : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a copy of this policy with other limits for the direct messages of two participants.
+     *
+     * @param first The pseudonym of one participant
+     * @param second The pseudonym of the other participant
+     * @param maxAgeMillis The maximum age of a message, or {@link Long#MAX_VALUE} for no limit
+     * @param maxCount The maximum number of messages kept, or {@link Integer#MAX_VALUE} for no limit
+     * @return The new policy
+     */
+    public RetentionPolicy withConversation(String first, String second, long maxAgeMillis, int maxCount) {
+        return with(pairKey(first, second), new RetentionPolicy(maxAgeMillis, maxCount));
+    }
+
+    /**
+     * Creates a copy of this policy with other limits for the messages sent to a group.
+     *
+     * @param groupName The name of the group
+     * @param maxAgeMillis The maximum age of a message, or {@link Long#MAX_VALUE} for no limit
+     * @param maxCount The maximum number of messages kept, or {@link Integer#MAX_VALUE} for no limit
+     * @return The new policy
+     */
+    public RetentionPolicy withGroup(String groupName, long maxAgeMillis, int maxCount) {
+        return with(groupKey(groupName), new RetentionPolicy(maxAgeMillis, maxCount));
+    }
+
+    /**
+     * Gets the maximum age of a message in conversations without limits of their own.
+     *
+     * @return The maximum age in milliseconds, or {@link Long#MAX_VALUE} for no limit
+     */
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Gets the maximum number of messages of conversations without limits of their own.
+     *
+     * @return The maximum count, or {@link Integer#MAX_VALUE} for no limit
+     */
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Checks whether a message is kept.
+     *
+     * @param conversation The message's conversation key, see {@link #conversationOf(Message)}
+     * @param newerKept The number of newer messages of the conversation that are kept
+     * @param timestamp The time the message was stored
+     * @param now The current time
+     * @return true if the message is within the conversation's limits
+     */
+    boolean keeps(String conversation, long newerKept, long timestamp, long now) {
+        RetentionPolicy limits = limitsOf(conversation);
+        return newerKept < limits.maxCount
+                && (limits.maxAgeMillis == Long.MAX_VALUE || now - timestamp < limits.maxAgeMillis);
+    }
+
+    /**
+     * Checks whether a conversation's oldest message is past the conversation's maximum age.
+     */
+    boolean expiresBy(String conversation, long oldestTimestamp, long now) {
+        return !keeps(conversation, 0, oldestTimestamp, now);
+    }
+
+    /**
+     * Gets the maximum number of messages a conversation keeps.
+     */
+    int maxCount(String conversation) {
+        return limitsOf(conversation).maxCount;
+    }
+
+    /**
+     * Gets the key of the conversation a message belongs to.
+     */
+    static String conversationOf(Message message) {
+        return message instanceof GroupMessage ? groupKey(message.getReceiver())
+                : pairKey(message.getSender(), message.getReceiver());
+    }
+
+    private RetentionPolicy limitsOf(String conversation) {
+        RetentionPolicy limits = conversations.get(conversation);
+        return limits != null ? limits : this;
+    }
+
+    private RetentionPolicy with(String conversation, RetentionPolicy limits) {
+        Map<String, RetentionPolicy> copy = new HashMap<>(conversations);
+        copy.put(conversation, limits);
+        return new RetentionPolicy(maxAgeMillis, maxCount, Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * Builds a key that is the same whichever participant of the pair comes first.
+     */
+    private static String pairKey(String first, String second) {
+        return first.compareTo(second) <= 0 ? first + '\u0000' + second : second + '\u0000' + first;
+    }
+
+    private static String groupKey(String groupName) {
+        return '\u0000' + groupName;
+    }
+}
@@ -0,0 +1,219 @@
+package com.securechat.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Streaming AES-GCM encryption of files.
+ * Files are processed in fixed-size chunks through NIO channels, so memory use does not
+ * depend on the file size. Each chunk is sealed separately; its nonce combines a random
+ * per-file prefix with the chunk index, and the file header, the chunk index and a last-chunk
+ * flag are authenticated, so the header cannot be altered and chunks cannot be reordered,
+ * dropped or truncated unnoticed. Chunk sizes are limited, so a forged header cannot make a
+ * reader allocate unbounded buffers before the first chunk fails authentication.
+ *
+ * <pre>
+ * [magic "SCA1"][chunk size:4][nonce prefix:8] then per chunk: [ciphertext + 16-byte tag]
+ * </pre>
+ */
+public class AttachmentCipher {
+
+    /** Default plain text chunk size: 64 KiB. */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /** Largest plain text chunk size: 16 MiB. */
+    public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAGIC = 0x53434131; // "SCA1"
+    private static final int HEADER_LENGTH = 4 + 4 + 8;
+    private static final int TAG_LENGTH = 16;
+    private static final String AES_GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] COMMITMENT_CONTEXT = "securechat-attachment-key".getBytes(StandardCharsets.UTF_8);
+
+    private AttachmentCipher() {
+    }
+
+    /**
+     * Encrypts a file chunk by chunk into the target file.
+     *
+     * @param source The plain text file
+     * @param target The encrypted file to create or overwrite
+     * @param key The AES content key
+     * @return The number of plain text bytes encrypted
+     * @throws RuntimeException if the files cannot be accessed or encryption fails
+     */
+    public static long encryptFile(Path source, Path target, SecretKey key) {
+        return encryptFile(source, target, key, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Encrypts a file chunk by chunk into the target file using the given chunk size.
+     *
+     * @param source The plain text file
+     * @param target The encrypted file to create or overwrite
+     * @param key The AES content key
+     * @param chunkSize The plain text chunk size in bytes, at most {@link #MAX_CHUNK_SIZE}
+     * @return The number of plain text bytes encrypted
+     * @throws IllegalArgumentException if the chunk size is out of range
+     * @throws RuntimeException if the files cannot be accessed or encryption fails
+     */
+    public static long encryptFile(Path source, Path target, SecretKey key, int chunkSize) {
+        checkChunkSize(chunkSize);
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long noncePrefix = RandomSource.current().nextLong();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(chunkSize).putLong(noncePrefix).flip();
+            writeFully(out, header);
+            byte[] headerBytes = header.array();
+
+            ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+            ByteBuffer sealed = ByteBuffer.allocate(chunkSize + TAG_LENGTH);
+            Cipher cipher = CipherPool.cipher(AES_GCM_TRANSFORMATION);
+            long position = 0;
+            int chunkIndex = 0;
+            boolean last;
+            do {
+                int length = (int) Math.min(chunkSize, size - position);
+                plain.clear();
+                plain.limit(length);
+                readFully(in, plain);
+                plain.flip();
+                position += length;
+                last = position >= size;
+
+                initChunk(cipher, Cipher.ENCRYPT_MODE, key, headerBytes, noncePrefix, chunkIndex++, last);
+                sealed.clear();
+                cipher.doFinal(plain, sealed);
+                sealed.flip();
+                writeFully(out, sealed);
+            } while (!last);
+            return position;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to encrypt file " + source, e);
+        }
+    }
+
+    /**
+     * Computes a commitment to an attachment's content key. Signing the commitment binds
+     * the signature to the encrypted file without covering the key wrapped for the receiver,
+     * since the file's chunks only authenticate under that one key.
+     *
+     * @param key The AES content key
+     * @return The SHA-256 commitment to the key
+     * @throws RuntimeException if SHA-256 is not available
+     */
+    public static byte[] keyCommitment(SecretKey key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(COMMITMENT_CONTEXT);
+            return digest.digest(key.getEncoded());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to compute key commitment", e);
+        }
+    }
+
+    /**
+     * Decrypts a file produced by {@link #encryptFile(Path, Path, SecretKey)} straight to disk.
+     * Each chunk is authenticated before it is written; if any chunk fails, the partially
+     * written target is deleted.
+     *
+     * @param source The encrypted file
+     * @param target The plain text file to create or overwrite
+     * @param key The AES content key
+     * @return The number of plain text bytes written
+     * @throws RuntimeException if the file is malformed, tampered with or cannot be accessed
+     */
+    public static long decryptFile(Path source, Path target, SecretKey key) {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(in, header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not an encrypted attachment");
+            }
+            int chunkSize = header.getInt();
+            long noncePrefix = header.getLong();
+            checkChunkSize(chunkSize);
+            byte[] headerBytes = header.array();
+
+            ByteBuffer sealed = ByteBuffer.allocate(chunkSize + TAG_LENGTH);
+            ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+            Cipher cipher = CipherPool.cipher(AES_GCM_TRANSFORMATION);
+            long written = 0;
+            int chunkIndex = 0;
+            boolean last;
+            do {
+                long remaining = in.size() - in.position();
+                if (remaining < TAG_LENGTH) {
+                    throw new IllegalArgumentException("Truncated attachment");
+                }
+                last = remaining <= sealed.capacity();
+                sealed.clear();
+                sealed.limit((int) Math.min(remaining, sealed.capacity()));
+                readFully(in, sealed);
+                sealed.flip();
+
+                initChunk(cipher, Cipher.DECRYPT_MODE, key, headerBytes, noncePrefix, chunkIndex++, last);
+                plain.clear();
+                cipher.doFinal(sealed, plain);
+                plain.flip();
+                written += plain.remaining();
+                writeFully(out, plain);
+            } while (!last);
+            return written;
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // the original failure is more relevant
+            }
+            throw new RuntimeException("Failed to decrypt file " + source, e);
+        }
+    }
+
+    private static void checkChunkSize(int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+    }
+
+    /**
+     * Initializes the cipher for one chunk with its derived nonce and associated data: the
+     * file header, the chunk index and the last-chunk flag.
+     */
+    private static void initChunk(Cipher cipher, int mode, SecretKey key, byte[] header, long noncePrefix,
+                                  int chunkIndex, boolean last) throws Exception {
+        ByteBuffer nonce = ByteBuffer.allocate(12).putLong(noncePrefix).putInt(chunkIndex);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce.array()));
+        cipher.updateAAD(header);
+        cipher.updateAAD(ByteBuffer.allocate(5).putInt(chunkIndex).put((byte) (last ? 1 : 0)).array());
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.securechat.security;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+
+/**
+ * Thread-confined cache of JCA engine objects.
+ * {@link Cipher}, {@link KeyFactory}, {@link Signature}, {@link KeyAgreement} and {@link Mac}
+ * instances are not thread-safe, but creating them requires a provider lookup on every call.
+ * Each thread therefore keeps its own instance per transformation or algorithm, which callers
+ * must re-initialize before every use.
+ */
+public final class CipherPool {
+
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyFactory>> KEY_FACTORIES =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyAgreement>> KEY_AGREEMENTS =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Mac>> MACS =
+            ThreadLocal.withInitial(HashMap::new);
+
+    private CipherPool() {
+    }
+
+    /**
+     * Gets the calling thread's cipher for the given transformation, creating it on first use.
+     * The returned cipher must not be shared with other threads and must be initialized
+     * before each operation.
+     *
+     * @param transformation The cipher transformation, e.g. "AES/GCM/NoPadding"
+     * @return A cipher confined to the calling thread
+     * @throws GeneralSecurityException if the transformation is not available
+     */
+    public static Cipher cipher(String transformation) throws GeneralSecurityException {
+        Map<String, Cipher> ciphers = CIPHERS.get();
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Gets the calling thread's key factory for the given algorithm, creating it on first use.
+     *
+     * @param algorithm The key algorithm, e.g. "RSA"
+     * @return A key factory confined to the calling thread
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static KeyFactory keyFactory(String algorithm) throws GeneralSecurityException {
+        Map<String, KeyFactory> factories = KEY_FACTORIES.get();
+        KeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = KeyFactory.getInstance(algorithm);
+            factories.put(algorithm, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Gets the calling thread's signature engine for the given algorithm, creating it on first use.
+     * The returned engine must be initialized for signing or verification before each use.
+     *
+     * @param algorithm The signature algorithm, e.g. "SHA256withRSA"
+     * @return A signature engine confined to the calling thread
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static Signature signature(String algorithm) throws GeneralSecurityException {
+        Map<String, Signature> signatures = SIGNATURES.get();
+        Signature signature = signatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            signatures.put(algorithm, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Gets the calling thread's key agreement for the given algorithm, creating it on first use.
+     * The returned key agreement must be initialized before each use.
+     *
+     * @param algorithm The key agreement algorithm, e.g. "ECDH"
+     * @return A key agreement confined to the calling thread
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static KeyAgreement keyAgreement(String algorithm) throws GeneralSecurityException {
+        Map<String, KeyAgreement> agreements = KEY_AGREEMENTS.get();
+        KeyAgreement agreement = agreements.get(algorithm);
+        if (agreement == null) {
+            agreement = KeyAgreement.getInstance(algorithm);
+            agreements.put(algorithm, agreement);
+        }
+        return agreement;
+    }
+
+    /**
+     * Gets the calling thread's MAC for the given algorithm, creating it on first use.
+     * The returned MAC must be initialized with a key before each use.
+     *
+     * @param algorithm The MAC algorithm, e.g. "HmacSHA256"
+     * @return A MAC confined to the calling thread
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static Mac mac(String algorithm) throws GeneralSecurityException {
+        Map<String, Mac> macs = MACS.get();
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
+}
@@ -0,0 +1,105 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import javax.crypto.SecretKey;
+
+/**
+ * Asymmetric algorithm suite used to protect messages.
+ * A provider generates user key pairs, wraps symmetric content keys for a receiver,
+ * and signs messages. Message bodies are always encrypted with AES-GCM; only the
+ * operations that involve user keys differ between providers.
+ *
+ * <p>Implementations must be thread-safe. See {@link CryptoProviders} for the
+ * available providers and how the deployment's provider is selected.</p>
+ */
+public interface CryptoProvider {
+
+    /**
+     * Gets the short name used to select this provider, e.g. "rsa".
+     *
+     * @return The provider name
+     */
+    String getName();
+
+    /**
+     * Gets the tag identifying this provider in wrapped keys.
+     *
+     * @return The algorithm tag
+     */
+    byte getTag();
+
+    /**
+     * Gets the JCA algorithm name of this provider's keys, e.g. "RSA".
+     *
+     * @return The key algorithm
+     */
+    String getKeyAlgorithm();
+
+    /**
+     * Generates a new user key pair.
+     *
+     * @return A new key pair
+     * @throws RuntimeException if key generation fails
+     */
+    KeyPair generateKeyPair();
+
+    /**
+     * Wraps a symmetric key so that only the holder of the matching private key can recover it.
+     *
+     * @param key The key to wrap
+     * @param publicKey The receiver's public key
+     * @return The wrapped key bytes
+     * @throws RuntimeException if wrapping fails
+     */
+    byte[] wrapKey(SecretKey key, PublicKey publicKey);
+
+    /**
+     * Recovers a symmetric key wrapped by {@link #wrapKey(SecretKey, PublicKey)}.
+     *
+     * @param wrappedKey The wrapped key bytes
+     * @param privateKey The receiver's private key
+     * @return The unwrapped key
+     * @throws RuntimeException if unwrapping fails
+     */
+    SecretKey unwrapKey(byte[] wrappedKey, PrivateKey privateKey);
+
+    /**
+     * Signs data with the given private key.
+     *
+     * @param data The data to sign
+     * @param privateKey The signer's private key
+     * @return The signature bytes
+     * @throws RuntimeException if signing fails
+     */
+    byte[] sign(byte[] data, PrivateKey privateKey);
+
+    /**
+     * Verifies a signature produced by {@link #sign(byte[], PrivateKey)}.
+     *
+     * @param data The signed data
+     * @param signature The signature bytes
+     * @param publicKey The signer's public key
+     * @return true if the signature is valid for the data and key, false otherwise
+     */
+    boolean verify(byte[] data, byte[] signature, PublicKey publicKey);
+
+    /**
+     * Restores a public key from its X.509 encoding.
+     *
+     * @param encoded The encoded public key
+     * @return The decoded public key
+     * @throws RuntimeException if the encoding is not a key of this provider
+     */
+    PublicKey decodePublicKey(byte[] encoded);
+
+    /**
+     * Restores a private key from its PKCS#8 encoding.
+     *
+     * @param encoded The encoded private key
+     * @return The decoded private key
+     * @throws RuntimeException if the encoding is not a key of this provider
+     */
+    PrivateKey decodePrivateKey(byte[] encoded);
+}
@@ -0,0 +1,177 @@
+package com.securechat.security;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.crypto.SecretKey;
+
+/**
+ * Registry of the available {@link CryptoProvider}s.
+ * The provider used for new key pairs is chosen per deployment with the system property
+ * {@code securechat.crypto} ({@code rsa}, the default, or {@code ec}). Existing keys keep
+ * working whatever the deployment's choice: operations on a key use the provider of
+ * that key's algorithm, and every wrapped key starts with the tag of the provider that
+ * wrapped it, so RSA and EC users can message each other.
+ */
+public final class CryptoProviders {
+
+    private static final CryptoProvider RSA = new RsaCryptoProvider();
+    private static final CryptoProvider EC = new EcCryptoProvider();
+    private static final List<CryptoProvider> ALL = Collections.unmodifiableList(Arrays.asList(RSA, EC));
+
+    /**
+     * Lazily resolved deployment provider, so the system property may be set before first use.
+     */
+    private static class DefaultHolder {
+        static final CryptoProvider INSTANCE = forName(System.getProperty("securechat.crypto", "rsa"));
+    }
+
+    private CryptoProviders() {
+    }
+
+    /**
+     * Gets the provider configured for this deployment.
+     *
+     * @return The default provider
+     * @throws IllegalArgumentException if the configured provider name is unknown
+     */
+    public static CryptoProvider getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Gets all available providers.
+     *
+     * @return The providers, RSA first
+     */
+    public static List<CryptoProvider> all() {
+        return ALL;
+    }
+
+    /**
+     * Gets a provider by name.
+     *
+     * @param name The provider name, e.g. "ec"
+     * @return The provider
+     * @throws IllegalArgumentException if no provider has that name
+     */
+    public static CryptoProvider forName(String name) {
+        for (CryptoProvider provider : ALL) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unknown crypto provider: " + name);
+    }
+
+    /**
+     * Gets the provider for a key's algorithm.
+     *
+     * @param key A public or private key
+     * @return The provider
+     * @throws IllegalArgumentException if no provider supports the key's algorithm
+     */
+    public static CryptoProvider forKey(Key key) {
+        for (CryptoProvider provider : ALL) {
+            if (provider.getKeyAlgorithm().equals(key.getAlgorithm())) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported key algorithm: " + key.getAlgorithm());
+    }
+
+    /**
+     * Gets the provider identified by a wrapped key tag.
+     *
+     * @param tag The algorithm tag
+     * @return The provider
+     * @throws IllegalArgumentException if the tag is unknown
+     */
+    public static CryptoProvider forTag(byte tag) {
+        for (CryptoProvider provider : ALL) {
+            if (provider.getTag() == tag) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unknown algorithm tag: " + tag);
+    }
+
+    /**
+     * Wraps a symmetric key for the owner of a public key, using the provider of that key
+     * and prefixing the result with the provider's tag.
+     *
+     * @param key The key to wrap
+     * @param publicKey The receiver's public key
+     * @return The tagged wrapped key
+     * @throws RuntimeException if wrapping fails
+     */
+    public static byte[] wrapKey(SecretKey key, PublicKey publicKey) {
+        CryptoProvider provider = forKey(publicKey);
+        byte[] wrapped = provider.wrapKey(key, publicKey);
+        byte[] tagged = new byte[1 + wrapped.length];
+        tagged[0] = provider.getTag();
+        System.arraycopy(wrapped, 0, tagged, 1, wrapped.length);
+        return tagged;
+    }
+
+    /**
+     * Recovers a symmetric key wrapped by {@link #wrapKey(SecretKey, PublicKey)}.
+     *
+     * @param taggedKey The tagged wrapped key
+     * @param privateKey The receiver's private key
+     * @return The unwrapped key
+     * @throws RuntimeException if the tag does not match the private key or unwrapping fails
+     */
+    public static SecretKey unwrapKey(byte[] taggedKey, PrivateKey privateKey) {
+        CryptoProvider provider = forTag(taggedKey[0]);
+        if (provider != forKey(privateKey)) {
+            throw new IllegalArgumentException("Key was wrapped for " + provider.getName()
+                    + " but the private key is " + privateKey.getAlgorithm());
+        }
+        return provider.unwrapKey(Arrays.copyOfRange(taggedKey, 1, taggedKey.length), privateKey);
+    }
+
+    /**
+     * Restores a key pair from its encodings with whichever provider accepts them.
+     *
+     * @param encodedPublicKey The X.509 encoded public key
+     * @param encodedPrivateKey The PKCS#8 encoded private key
+     * @return The decoded key pair
+     * @throws RuntimeException if no provider can decode the keys
+     */
+    public static KeyPair decodeKeyPair(byte[] encodedPublicKey, byte[] encodedPrivateKey) {
+        RuntimeException failure = null;
+        for (CryptoProvider provider : ALL) {
+            try {
+                return new KeyPair(provider.decodePublicKey(encodedPublicKey),
+                        provider.decodePrivateKey(encodedPrivateKey));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Restores a public key from its encoding with whichever provider accepts it.
+     *
+     * @param encodedPublicKey The X.509 encoded public key
+     * @return The decoded public key
+     * @throws RuntimeException if no provider can decode the key
+     */
+    public static PublicKey decodePublicKey(byte[] encodedPublicKey) {
+        RuntimeException failure = null;
+        for (CryptoProvider provider : ALL) {
+            try {
+                return provider.decodePublicKey(encodedPublicKey);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+}
@@ -0,0 +1,33 @@
+package com.securechat.security;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for background crypto work,
+ * so worker pools never keep the application alive.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final int priority;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Creates a thread factory.
+     *
+     * @param namePrefix The prefix of thread names, followed by a sequence number
+     * @param priority The priority of created threads
+     */
+    DaemonThreadFactory(String namePrefix, int priority) {
+        this.namePrefix = namePrefix;
+        this.priority = priority;
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, namePrefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
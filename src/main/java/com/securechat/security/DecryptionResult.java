@@ -0,0 +1,62 @@
+package com.securechat.security;
+
+import com.securechat.model.Message;
+
+/**
+ * Outcome of decrypting one message in a batch.
+ * Holds either the decrypted plain text or the error that prevented decryption.
+ */
+public class DecryptionResult {
+    private final Message message;
+    private final String plainText;
+    private final Exception error;
+
+    /**
+     * Creates a new decryption result.
+     * 
+     * @param message The message that was decrypted
+     * @param plainText The decrypted plain text, or null if decryption failed
+     * @param error The decryption error, or null if decryption succeeded
+     */
+    public DecryptionResult(Message message, String plainText, Exception error) {
+        this.message = message;
+        this.plainText = plainText;
+        this.error = error;
+    }
+
+    /**
+     * Gets the message this result belongs to.
+     * 
+     * @return The message
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Checks whether the message was decrypted successfully.
+     * 
+     * @return true if decryption succeeded, false otherwise
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Gets the decrypted plain text.
+     * 
+     * @return The plain text, or null if decryption failed
+     */
+    public String getPlainText() {
+        return plainText;
+    }
+
+    /**
+     * Gets the error that prevented decryption.
+     * 
+     * @return The error, or null if decryption succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+}
@@ -0,0 +1,171 @@
+package com.securechat.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Elliptic-curve provider on the JDK's built-in P-256 curve (secp256r1).
+ * Keys are wrapped ECIES-style: an ephemeral key pair is agreed with the receiver's
+ * public key using ECDH, a key-encryption key is derived from the shared secret with
+ * HKDF-SHA256, and the content key is encrypted under it with AES-GCM. Messages are
+ * signed with SHA256withECDSA. Key generation and private-key operations are much
+ * cheaper than with RSA-2048.
+ *
+ * <p>Wrapped key layout: {@code [ephemeral key length:1][ephemeral public key][iv + wrapped key]}.</p>
+ */
+public class EcCryptoProvider implements CryptoProvider {
+
+    /** Tag of EC-wrapped keys. */
+    public static final byte TAG = 2;
+
+    private static final String CURVE = "secp256r1";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final String HKDF_MAC = "HmacSHA256";
+    private static final byte[] HKDF_SALT = "securechat-ecies-v1".getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<KeyPairGenerator> GENERATORS = ThreadLocal.withInitial(() -> {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(CURVE), RandomSource.current());
+            return generator;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to initialize EC key generator", e);
+        }
+    });
+
+    @Override
+    public String getName() {
+        return "ec";
+    }
+
+    @Override
+    public byte getTag() {
+        return TAG;
+    }
+
+    @Override
+    public String getKeyAlgorithm() {
+        return "EC";
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        try {
+            return GENERATORS.get().generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to generate key pair", e);
+        }
+    }
+
+    @Override
+    public byte[] wrapKey(SecretKey key, PublicKey publicKey) {
+        try {
+            KeyPair ephemeral = GENERATORS.get().generateKeyPair();
+            byte[] ephemeralPublic = ephemeral.getPublic().getEncoded();
+            SecretKey keyEncryptionKey = deriveKey(ephemeral.getPrivate(), publicKey, ephemeralPublic);
+            byte[] encryptedKey = RSAUtil.encryptWithKey(key.getEncoded(), keyEncryptionKey);
+
+            return ByteBuffer.allocate(1 + ephemeralPublic.length + encryptedKey.length)
+                    .put((byte) ephemeralPublic.length)
+                    .put(ephemeralPublic)
+                    .put(encryptedKey)
+                    .array();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to wrap key", e);
+        }
+    }
+
+    @Override
+    public SecretKey unwrapKey(byte[] wrappedKey, PrivateKey privateKey) {
+        try {
+            int ephemeralLength = wrappedKey[0] & 0xFF;
+            byte[] ephemeralPublic = Arrays.copyOfRange(wrappedKey, 1, 1 + ephemeralLength);
+            byte[] encryptedKey = Arrays.copyOfRange(wrappedKey, 1 + ephemeralLength, wrappedKey.length);
+            SecretKey keyEncryptionKey = deriveKey(privateKey, decodePublicKey(ephemeralPublic), ephemeralPublic);
+            return new SecretKeySpec(RSAUtil.decryptWithKey(encryptedKey, keyEncryptionKey), "AES");
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to unwrap key", e);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] data, PrivateKey privateKey) {
+        try {
+            Signature signer = CipherPool.signature(SIGNATURE_ALGORITHM);
+            signer.initSign(privateKey, RandomSource.current());
+            signer.update(data);
+            return signer.sign();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to sign data", e);
+        }
+    }
+
+    @Override
+    public boolean verify(byte[] data, byte[] signature, PublicKey publicKey) {
+        try {
+            Signature verifier = CipherPool.signature(SIGNATURE_ALGORITHM);
+            verifier.initVerify(publicKey);
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public PublicKey decodePublicKey(byte[] encoded) {
+        try {
+            return CipherPool.keyFactory("EC").generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decode public key", e);
+        }
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(byte[] encoded) {
+        try {
+            return CipherPool.keyFactory("EC").generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decode private key", e);
+        }
+    }
+
+    /**
+     * Agrees on a shared secret with ECDH and derives a 256-bit AES key from it with HKDF-SHA256,
+     * bound to the ephemeral public key.
+     */
+    private static SecretKey deriveKey(PrivateKey privateKey, PublicKey publicKey, byte[] ephemeralPublic)
+            throws Exception {
+        KeyAgreement agreement = CipherPool.keyAgreement("ECDH");
+        agreement.init(privateKey);
+        agreement.doPhase(publicKey, true);
+        byte[] sharedSecret = agreement.generateSecret();
+
+        Mac mac = CipherPool.mac(HKDF_MAC);
+        try {
+            // HKDF extract
+            mac.init(new SecretKeySpec(HKDF_SALT, HKDF_MAC));
+            byte[] pseudoRandomKey = mac.doFinal(sharedSecret);
+            // HKDF expand, a single block is enough for an AES-256 key
+            mac.init(new SecretKeySpec(pseudoRandomKey, HKDF_MAC));
+            mac.update(ephemeralPublic);
+            mac.update((byte) 1);
+            return new SecretKeySpec(mac.doFinal(), "AES");
+        } finally {
+            Arrays.fill(sharedSecret, (byte) 0);
+        }
+    }
+}
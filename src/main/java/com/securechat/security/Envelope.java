@@ -0,0 +1,123 @@
+package com.securechat.security;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary layout of hybrid-encrypted payloads.
+ * A direct envelope carries a content key wrapped for the receiver, followed by the
+ * AES-GCM encrypted body. A session envelope additionally carries the ID of the
+ * pairwise session whose key encrypted the body, so receivers can unwrap the key
+ * once per session instead of once per message.
+ *
+ * <pre>
+ * direct:  [version=1][wrapped key length:2][wrapped key][IV + ciphertext]
+ * session: [version=2][session ID:16][wrapped key length:2][wrapped key][IV + ciphertext]
+ * </pre>
+ */
+final class Envelope {
+
+    static final byte VERSION_DIRECT = 1;
+    static final byte VERSION_SESSION = 2;
+    static final int SESSION_ID_LENGTH = 16;
+
+    final byte version;
+    final byte[] sessionId;
+    final byte[] wrappedKey;
+    final byte[] body;
+
+    private Envelope(byte version, byte[] sessionId, byte[] wrappedKey, byte[] body) {
+        this.version = version;
+        this.sessionId = sessionId;
+        this.wrappedKey = wrappedKey;
+        this.body = body;
+    }
+
+    /**
+     * Creates a direct envelope.
+     */
+    static Envelope direct(byte[] wrappedKey, byte[] body) {
+        return new Envelope(VERSION_DIRECT, null, wrappedKey, body);
+    }
+
+    /**
+     * Creates a session envelope.
+     */
+    static Envelope session(byte[] sessionId, byte[] wrappedKey, byte[] body) {
+        return new Envelope(VERSION_SESSION, sessionId, wrappedKey, body);
+    }
+
+    /**
+     * Checks whether the body was encrypted with a pairwise session key.
+     */
+    boolean isSession() {
+        return version == VERSION_SESSION;
+    }
+
+    /**
+     * Creates a copy of this envelope with the content key wrapped differently,
+     * e.g. for the receiver's new key pair.
+     */
+    Envelope withWrappedKey(byte[] newWrappedKey) {
+        return new Envelope(version, sessionId, newWrappedKey, body);
+    }
+
+    /**
+     * Serializes the parts of the envelope a sender signs: everything but the wrapped key,
+     * which may be re-wrapped for the receiver later. Replacing the wrapped key cannot
+     * forge a message, as the signed body only decrypts under the original content key.
+     */
+    byte[] signedContent() {
+        int idLength = isSession() ? SESSION_ID_LENGTH : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + idLength + body.length);
+        buffer.put(version);
+        if (isSession()) {
+            buffer.put(sessionId);
+        }
+        buffer.put(body);
+        return buffer.array();
+    }
+
+    /**
+     * Serializes the envelope.
+     */
+    byte[] toBytes() {
+        int idLength = isSession() ? SESSION_ID_LENGTH : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + idLength + 2 + wrappedKey.length + body.length);
+        buffer.put(version);
+        if (isSession()) {
+            buffer.put(sessionId);
+        }
+        buffer.putShort((short) wrappedKey.length);
+        buffer.put(wrappedKey);
+        buffer.put(body);
+        return buffer.array();
+    }
+
+    /**
+     * Parses a serialized envelope.
+     *
+     * @throws IllegalArgumentException if the version is unknown or the data is truncated
+     */
+    static Envelope parse(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte version = buffer.get();
+            if (version != VERSION_DIRECT && version != VERSION_SESSION) {
+                throw new IllegalArgumentException("Unsupported envelope version: " + version);
+            }
+            byte[] sessionId = null;
+            if (version == VERSION_SESSION) {
+                sessionId = new byte[SESSION_ID_LENGTH];
+                buffer.get(sessionId);
+            }
+            byte[] wrappedKey = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(wrappedKey);
+            byte[] body = new byte[buffer.remaining()];
+            buffer.get(body);
+            return new Envelope(version, sessionId, wrappedKey, body);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated envelope", e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of pre-generated key pairs.
+ * Key pairs are generated on background worker threads so that callers such as
+ * user registration can take a ready key pair instead of blocking on key generation.
+ * When the pool is empty, a key pair is generated on the calling thread (a miss).
+ * The default pool generates keys with the deployment's {@link CryptoProvider}.
+ *
+ * <p>The default pool is configured with the system properties
+ * {@code securechat.keypool.size} (default 8) and {@code securechat.keypool.threads}
+ * (default 2).</p>
+ */
+public class KeyPairPool {
+
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int DEFAULT_REFILL_THREADS = 2;
+
+    private final CryptoProvider provider;
+    private final BlockingQueue<KeyPair> readyKeys;
+    private final ExecutorService refillExecutor;
+    private final AtomicInteger pendingRefills = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int capacity;
+
+    /**
+     * Lazily created default pool, so no worker threads start unless keys are requested.
+     */
+    private static class DefaultHolder {
+        static final KeyPairPool INSTANCE = new KeyPairPool(
+                Integer.getInteger("securechat.keypool.size", DEFAULT_CAPACITY),
+                Integer.getInteger("securechat.keypool.threads", DEFAULT_REFILL_THREADS));
+    }
+
+    /**
+     * Creates a key pair pool for the deployment's provider and starts filling it in the background.
+     *
+     * @param capacity The maximum number of ready key pairs to keep
+     * @param refillThreads The number of worker threads generating key pairs
+     * @throws IllegalArgumentException if capacity or refillThreads is less than 1
+     */
+    public KeyPairPool(int capacity, int refillThreads) {
+        this(CryptoProviders.getDefault(), capacity, refillThreads);
+    }
+
+    /**
+     * Creates a key pair pool for the given provider and starts filling it in the background.
+     *
+     * @param provider The provider generating the key pairs
+     * @param capacity The maximum number of ready key pairs to keep
+     * @param refillThreads The number of worker threads generating key pairs
+     * @throws IllegalArgumentException if capacity or refillThreads is less than 1
+     */
+    public KeyPairPool(CryptoProvider provider, int capacity, int refillThreads) {
+        if (capacity < 1 || refillThreads < 1) {
+            throw new IllegalArgumentException("Pool size and refill threads must be positive");
+        }
+        this.provider = provider;
+        this.capacity = capacity;
+        this.readyKeys = new ArrayBlockingQueue<>(capacity);
+        this.refillExecutor = Executors.newFixedThreadPool(refillThreads, new DaemonThreadFactory("keypair-refill", Thread.MIN_PRIORITY));
+        refill();
+    }
+
+    /**
+     * Gets the shared application-wide key pair pool.
+     *
+     * @return The default key pair pool
+     */
+    public static KeyPairPool getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Takes a key pair from the pool, or generates one on the calling thread if none is ready.
+     * Every call schedules background generation to top the pool back up.
+     *
+     * @return A key pair that has not been handed out before
+     */
+    public KeyPair take() {
+        KeyPair keyPair = readyKeys.poll();
+        if (keyPair != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            keyPair = provider.generateKeyPair();
+        }
+        refill();
+        return keyPair;
+    }
+
+    /**
+     * Schedules enough background generations to bring the pool back to capacity.
+     */
+    private void refill() {
+        while (true) {
+            int pending = pendingRefills.get();
+            if (readyKeys.size() + pending >= capacity || refillExecutor.isShutdown()) {
+                return;
+            }
+            if (pendingRefills.compareAndSet(pending, pending + 1)) {
+                refillExecutor.execute(() -> {
+                    try {
+                        readyKeys.offer(provider.generateKeyPair());
+                    } catch (RuntimeException e) {
+                        System.err.println("Warning: Background key generation failed: " + e.getMessage());
+                    } finally {
+                        pendingRefills.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Gets the number of key pairs currently ready to be taken.
+     *
+     * @return The number of ready key pairs
+     */
+    public int getAvailable() {
+        return readyKeys.size();
+    }
+
+    /**
+     * Gets the number of takes served from a ready key pair.
+     *
+     * @return The number of pool hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of takes that had to generate a key pair on the calling thread.
+     *
+     * @return The number of pool misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the fraction of takes served from the pool.
+     *
+     * @return The hit rate between 0 and 1, or 0 if nothing was taken yet
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Stops background generation. Further takes generate key pairs on the calling thread
+     * once the remaining ready key pairs are used up.
+     */
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,415 @@
+package com.securechat.security;
+
+import com.securechat.model.AttachmentMessage;
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+import com.securechat.model.MessageLog;
+import com.securechat.model.User;
+import com.securechat.persistence.MessageJournal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.crypto.SecretKey;
+
+/**
+ * Background rotation of a user's key pair.
+ * The job gives the user a new key pair right away, so new messages are wrapped for it,
+ * and then re-wraps the content keys of the user's stored messages for the new key in
+ * batches. Each batch is re-wrapped in parallel on an executor and swapped into the
+ * message model in one step, and the job can be throttled to a maximum number of
+ * messages per second. Message bodies and signatures are left untouched. Messages the
+ * journal moved to cold storage are not in the message model; they are re-wrapped in
+ * their cold segments once the model is done, before the previous key pair is retired.
+ *
+ * <p>Until the job finishes, the user keeps the previous key pair, so messages that are
+ * not re-wrapped yet stay readable. With a key store, both key pairs are persisted before
+ * the first batch and progress is checkpointed to a file after every batch, so a job
+ * interrupted by a crash resumes where it stopped when it is started again. The checkpoint
+ * records the timestamp of the last message processed rather than its position, since
+ * positions change when the message log is restored without deleted messages; a message
+ * already re-wrapped is recognized by its key no longer unwrapping with the old key pair.</p>
+ *
+ * <p>The default checkpoint directory is set with the system property
+ * {@code securechat.rotation.dir} (default {@code key-rotation}).</p>
+ */
+public class KeyRotationJob {
+
+    /** Default number of messages per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final String CHECKPOINT_USER = "user";
+    private static final String CHECKPOINT_KEY = "publicKey";
+    private static final String CHECKPOINT_TIMESTAMP = "processedUntil";
+
+    private final MessageListModel messageModel;
+    private final User user;
+    private final UserKeyStore keyStore;
+    private final Path checkpointFile;
+    private final Supplier<KeyPair> keySource;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxMessagesPerSecond;
+    private final ConcurrentMap<String, byte[]> rewrappedSessions = new ConcurrentHashMap<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rewrapped = new AtomicLong();
+
+    /**
+     * Creates an unthrottled rotation job that checkpoints to the default directory and
+     * takes the new key pair from the default {@link KeyPairPool}.
+     *
+     * @param messageModel The message model holding the user's messages
+     * @param user The user whose key pair is rotated
+     * @param keyStore The key store persisting the user's keys, or null for non-persistent keys
+     */
+    public KeyRotationJob(MessageListModel messageModel, User user, UserKeyStore keyStore) {
+        this(messageModel, user, keyStore,
+                keyStore != null ? defaultCheckpointFile(user.getId()) : null,
+                () -> KeyPairPool.getDefault().take(),
+                ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Creates a rotation job with custom checkpointing, key source, parallelism and throttling.
+     *
+     * @param messageModel The message model holding the user's messages
+     * @param user The user whose key pair is rotated
+     * @param keyStore The key store persisting the user's keys, or null for non-persistent keys
+     * @param checkpointFile The file recording progress, or null to disable checkpoints
+     * @param keySource Supplies the new key pair
+     * @param executor The executor re-wrapping the messages of a batch
+     * @param batchSize The number of messages per batch
+     * @param maxMessagesPerSecond The maximum re-wrap rate, or 0 for no limit
+     * @throws IllegalArgumentException if batchSize is less than 1 or maxMessagesPerSecond is negative
+     */
+    public KeyRotationJob(MessageListModel messageModel, User user, UserKeyStore keyStore, Path checkpointFile,
+                          Supplier<KeyPair> keySource, Executor executor, int batchSize, int maxMessagesPerSecond) {
+        if (batchSize < 1 || maxMessagesPerSecond < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and the rate limit not negative");
+        }
+        this.messageModel = messageModel;
+        this.user = user;
+        this.keyStore = keyStore;
+        this.checkpointFile = checkpointFile;
+        this.keySource = keySource;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxMessagesPerSecond = maxMessagesPerSecond;
+    }
+
+    /**
+     * Gets the default checkpoint file of a user's rotation.
+     *
+     * @param userId The user's ID
+     * @return The checkpoint file
+     */
+    public static Path defaultCheckpointFile(String userId) {
+        return Paths.get(System.getProperty("securechat.rotation.dir", "key-rotation"), userId + ".checkpoint");
+    }
+
+    /**
+     * Starts the rotation on a background thread, or resumes it if the key store holds
+     * an unfinished rotation of the user.
+     *
+     * @return A future completed with the number of re-wrapped messages once the previous
+     *         key pair is retired, or completed exceptionally if the rotation fails
+     */
+    public CompletableFuture<Long> start() {
+        DaemonThreadFactory threads = new DaemonThreadFactory("key-rotation", Thread.MIN_PRIORITY);
+        return CompletableFuture.supplyAsync(this::run, runnable -> threads.newThread(runnable).start());
+    }
+
+    /**
+     * Gets the number of messages examined so far.
+     *
+     * @return The number of processed messages
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Gets the number of messages re-wrapped for the new key so far.
+     *
+     * @return The number of re-wrapped messages
+     */
+    public long getRewrapped() {
+        return rewrapped.get();
+    }
+
+    /**
+     * Runs the rotation on the calling thread.
+     */
+    private long run() {
+        KeyPair previous = keyStore != null ? keyStore.loadPrevious(user.getId()) : null;
+        long offset = 0;
+        if (previous != null) {
+            // Resuming: the store already made the new key pair current
+            user.resumeKeyRotation(previous);
+            offset = messageModel.getMessageLog().sequenceAt(readCheckpoint());
+        } else {
+            if (user.getPreviousPrivateKey() != null) {
+                throw new IllegalStateException("Key rotation already in progress for user " + user.getId());
+            }
+            previous = new KeyPair(user.getPublicKey(), user.getPrivateKey());
+            KeyPair next = keySource.get();
+            if (keyStore != null) {
+                keyStore.storeRotation(user.getId(), next, previous);
+            }
+            user.rotateKeyPair(next);
+            writeCheckpoint(0);
+        }
+
+        PrivateKey oldKey = previous.getPrivate();
+        PublicKey newKey = user.getPublicKey();
+        long swept = sweep(offset, oldKey, newKey);
+        // Catch messages that were wrapped for the old key by sends already in flight
+        sweep(swept, oldKey, newKey);
+        MessageJournal journal = messageModel.getJournal();
+        if (journal != null) {
+            rewrapped.addAndGet(journal.rewriteArchive(message -> rewrap(message, oldKey, newKey)));
+        }
+
+        user.finishKeyRotation();
+        if (keyStore != null) {
+            keyStore.retirePrevious(user.getId());
+        }
+        deleteCheckpoint();
+        return rewrapped.get();
+    }
+
+    /**
+     * Re-wraps the messages stored from the given sequence number on, batch by batch.
+     *
+     * @return The sequence number following the last message in the model when the sweep started
+     */
+    private long sweep(long from, PrivateKey oldKey, PublicKey newKey) {
+        MessageLog.Snapshot messages = messageModel.getMessagesSince(from);
+        for (int start = 0; start < messages.size(); start += batchSize) {
+            long batchStart = System.nanoTime();
+            int end = Math.min(start + batchSize, messages.size());
+            List<Message> batch = messages.subList(start, end);
+            messageModel.replaceMessages(rewrapBatch(batch, oldKey, newKey));
+            processed.addAndGet(end - start);
+            writeCheckpoint(batch.get(batch.size() - 1).getTimestamp());
+            throttle(end - start, batchStart);
+        }
+        return messages.getEndSequence();
+    }
+
+    /**
+     * Re-wraps one batch in parallel chunks.
+     *
+     * @return The replacement of each re-wrapped message
+     */
+    private Map<Message, Message> rewrapBatch(List<Message> batch, PrivateKey oldKey, PublicKey newKey) {
+        Message[] results = new Message[batch.size()];
+        int chunkSize = Math.max(1, batch.size() / (Runtime.getRuntime().availableProcessors() * 2));
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < batch.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(start + chunkSize, batch.size());
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    results[i] = rewrap(batch.get(i), oldKey, newKey);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+
+        Map<Message, Message> replacements = new HashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                replacements.put(batch.get(i), results[i]);
+            }
+        }
+        rewrapped.addAndGet(replacements.size());
+        return replacements;
+    }
+
+    /**
+     * Creates a copy of a message with the user's content key re-wrapped for the new key.
+     *
+     * @return The re-wrapped message, or null if the message has no key wrapped for the
+     *         user's previous key pair
+     */
+    private Message rewrap(Message message, PrivateKey oldKey, PublicKey newKey) {
+        String pseudo = user.getPseudoName();
+        if (message instanceof GroupMessage) {
+            GroupMessage group = (GroupMessage) message;
+            byte[] wrappedKey = group.getWrappedKey(pseudo);
+            byte[] newWrappedKey = wrappedKey != null ? rewrapKey(wrappedKey, oldKey, newKey) : null;
+            if (newWrappedKey == null) {
+                return null;
+            }
+            Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+            for (String recipient : group.getRecipients()) {
+                wrappedKeys.put(recipient, group.getWrappedKey(recipient));
+            }
+            wrappedKeys.put(pseudo, newWrappedKey);
+            return new GroupMessage(group.getParticipantIds(), group.getSender(), group.getGroupName(),
+                    group.getOriginalContent(), group.getCiphertext(), wrappedKeys, group.getSignature());
+        }
+        // Archived messages have the journal's ids rather than the message model's
+        if (message.getReceiverId() != message.getParticipantIds().userId(pseudo)) {
+            return null;
+        }
+        if (message instanceof AttachmentMessage) {
+            AttachmentMessage attachment = (AttachmentMessage) message;
+            byte[] newWrappedKey = rewrapKey(attachment.getCiphertext(), oldKey, newKey);
+            return newWrappedKey == null ? null : new AttachmentMessage(attachment.getParticipantIds(),
+                    attachment.getSender(), attachment.getReceiver(), attachment.getFileName(),
+                    attachment.getFileSize(), attachment.getEncryptedFile(), newWrappedKey,
+                    attachment.getKeyCommitment(), attachment.getSignature());
+        }
+
+        Envelope envelope;
+        try {
+            envelope = Envelope.parse(message.getCiphertext());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!envelope.isSession()) {
+            // Direct envelopes only come from RSAUtil and are not sent through the message model
+            return null;
+        }
+        // Messages of one session share a wrapped key, so each session is unwrapped once
+        byte[] newWrappedKey = rewrappedSessions.computeIfAbsent(
+                Base64.getEncoder().encodeToString(envelope.sessionId),
+                id -> rewrapKey(envelope.wrappedKey, oldKey, newKey));
+        return newWrappedKey == null ? null : new Message(message.getParticipantIds(), message.getSender(),
+                message.getReceiver(), message.getOriginalContent(), envelope.withWrappedKey(newWrappedKey).toBytes(),
+                message.getSignature());
+    }
+
+    /**
+     * Unwraps a content key with the old private key and wraps it for the new public key.
+     *
+     * @return The re-wrapped key, or null if the key is not wrapped for the old key pair
+     */
+    private static byte[] rewrapKey(byte[] wrappedKey, PrivateKey oldKey, PublicKey newKey) {
+        SecretKey key;
+        try {
+            key = CryptoProviders.unwrapKey(wrappedKey, oldKey);
+        } catch (RuntimeException e) {
+            // Already re-wrapped before an interruption, or wrapped for another key
+            return null;
+        }
+        return CryptoProviders.wrapKey(key, newKey);
+    }
+
+    /**
+     * Sleeps long enough after a batch to stay within the configured rate.
+     */
+    private void throttle(int batchMessages, long batchStartNanos) {
+        if (maxMessagesPerSecond == 0) {
+            return;
+        }
+        long minimumMillis = batchMessages * 1000L / maxMessagesPerSecond;
+        long elapsedMillis = (System.nanoTime() - batchStartNanos) / 1_000_000;
+        if (elapsedMillis < minimumMillis) {
+            try {
+                Thread.sleep(minimumMillis - elapsedMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Key rotation interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Reads how far an interrupted run of this rotation got.
+     *
+     * @return The timestamp of the last message processed, or 0 if there is no checkpoint
+     *         for the user's new key
+     */
+    private long readCheckpoint() {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return 0;
+        }
+        Properties checkpoint = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read rotation checkpoint " + checkpointFile, e);
+        }
+        if (!user.getId().equals(checkpoint.getProperty(CHECKPOINT_USER))
+                || !fingerprint(user.getPublicKey()).equals(checkpoint.getProperty(CHECKPOINT_KEY))) {
+            return 0;
+        }
+        return Long.parseLong(checkpoint.getProperty(CHECKPOINT_TIMESTAMP, "0"));
+    }
+
+    /**
+     * Atomically records the timestamp of the last message processed so far. Messages stored
+     * at that same millisecond are examined again on resuming.
+     */
+    private void writeCheckpoint(long processedUntil) {
+        if (checkpointFile == null) {
+            return;
+        }
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_USER, user.getId());
+        checkpoint.setProperty(CHECKPOINT_KEY, fingerprint(user.getPublicKey()));
+        checkpoint.setProperty(CHECKPOINT_TIMESTAMP, Long.toString(processedUntil));
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "rotation", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                checkpoint.store(out, "Secure Chat key rotation progress");
+            }
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write rotation checkpoint " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * Removes the checkpoint of a finished rotation.
+     */
+    private void deleteCheckpoint() {
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete rotation checkpoint " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * Identifies a public key by the SHA-256 digest of its encoding.
+     */
+    private static String fingerprint(PublicKey key) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(key.getEncoded()));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to fingerprint public key", e);
+        }
+    }
+}
@@ -1,15 +1,65 @@
 package com.securechat.security;
 
 import com.securechat.model.User;
+import com.securechat.model.AttachmentMessage;
+import com.securechat.model.GroupMessage;
 import com.securechat.model.Message;
 import com.securechat.model.MessageListModel;
+import com.securechat.model.ParticipantIds;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import javax.crypto.SecretKey;
 
 /**
  * Proxy class for handling encrypted message operations.
  * Provides secure message sending and decryption capabilities.
+ * Direct messages are encrypted under a cached per-conversation session key, so
+ * steady-state messages only cost an AES-GCM operation on both sides.
+ * Every message is signed with the sender's private key so receivers can verify who sent it.
+ * Keys are wrapped and messages signed with the {@link CryptoProvider} of each user's keys,
+ * so RSA and EC users can talk to each other.
  */
 public class MessageProxy {
+    private static final int PARALLEL_BATCH_THRESHOLD = 32;
+
     private MessageListModel messageModel;
+    private final SessionKeyCache sessions;
+    private final PlaintextCache plaintextCache;
+    private final SignatureVerifier signatures = new SignatureVerifier();
+    private final Executor cryptoExecutor;
+    private final ConcurrentMap<String, CompletableFuture<Void>> conversationTails = new ConcurrentHashMap<>();
+
+    /**
+     * Lazily created shared executor for asynchronous encryption, sized to the available cores.
+     */
+    private static class DefaultExecutorHolder {
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new DaemonThreadFactory("crypto-worker", Thread.NORM_PRIORITY));
+    }
 
     /**
      * Creates a new MessageProxy with the specified message model.
@@ -17,12 +67,51 @@ public class MessageProxy {
      * @param messageModel The message model to use for storing messages
      */
     public MessageProxy(MessageListModel messageModel) {
+        this(messageModel, new SessionKeyCache());
+    }
+
+    /**
+     * Creates a new MessageProxy that keeps pairwise session keys in the given cache.
+     * 
+     * @param messageModel The message model to use for storing messages
+     * @param sessions The cache of pairwise session keys
+     */
+    public MessageProxy(MessageListModel messageModel, SessionKeyCache sessions) {
+        this(messageModel, sessions, new PlaintextCache());
+    }
+
+    /**
+     * Creates a new MessageProxy with custom session key and decrypted plain text caches.
+     * 
+     * @param messageModel The message model to use for storing messages
+     * @param sessions The cache of pairwise session keys
+     * @param plaintextCache The cache of decrypted message plain text
+     */
+    public MessageProxy(MessageListModel messageModel, SessionKeyCache sessions, PlaintextCache plaintextCache) {
+        this(messageModel, sessions, plaintextCache, null);
+    }
+
+    /**
+     * Creates a new MessageProxy that runs asynchronous sends on the given executor.
+     * 
+     * @param messageModel The message model to use for storing messages
+     * @param sessions The cache of pairwise session keys
+     * @param plaintextCache The cache of decrypted message plain text
+     * @param cryptoExecutor The executor for asynchronous sends, or null for the shared crypto executor
+     */
+    public MessageProxy(MessageListModel messageModel, SessionKeyCache sessions, PlaintextCache plaintextCache,
+                        Executor cryptoExecutor) {
         this.messageModel = messageModel;
+        this.sessions = sessions;
+        this.plaintextCache = plaintextCache;
+        this.cryptoExecutor = cryptoExecutor;
     }
 
     /**
      * Sends an encrypted message from sender to receiver.
-     * The message is encrypted using the receiver's public key.
+     * The message body is encrypted with the AES-GCM session key of the
+     * (sender, receiver) pair, which is wrapped with the receiver's public key
+     * once per session, so messages of any length are supported.
      * 
      * @param sender The user sending the message
      * @param receiver The user receiving the message
@@ -31,20 +120,156 @@ public class MessageProxy {
      */
     public void sendEncryptedMessage(User sender, User receiver, String messageText) {
         try {
-            String encrypted = RSAUtil.encrypt(messageText, receiver.getPublicKey());
-            messageModel.sendMessage(sender.getPseudoName(), receiver.getPseudoName(), messageText, encrypted);
+            SessionKeyCache.Session session = sessions.outboundSession(sender.getId(), receiver.getId(), receiver.getPublicKey());
+            byte[] body = RSAUtil.encryptWithKey(messageText.getBytes(StandardCharsets.UTF_8), session.key);
+            Envelope envelope = Envelope.session(session.id, session.wrappedKey, body);
+            byte[] encrypted = envelope.toBytes();
+            byte[] signature = SignatureVerifier.sign(sender.getPseudoName(), receiver.getPseudoName(), "",
+                    envelope.signedContent(), sender.getPrivateKey());
+            messageModel.sendMessage(sender.getPseudoName(), receiver.getPseudoName(), messageText, encrypted, signature);
 
             // Log to console for debugging
             System.out.println("[INFO] Message sent from ID: " + sender.getId() + " to ID: " + receiver.getId());
-            System.out.println("Encrypted Content: " + encrypted);
+            System.out.println("Encrypted Content: " + Base64.getEncoder().encodeToString(encrypted));
+        } catch (Exception e) {
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    /**
+     * Encrypts and sends a message on the crypto executor instead of the calling thread.
+     * Messages of the same conversation are sent in the order they were submitted.
+     * 
+     * @param sender The user sending the message
+     * @param receiver The user receiving the message
+     * @param messageText The plain text message to send
+     * @return A future completed once the message is stored, or completed exceptionally if encryption fails
+     */
+    public CompletableFuture<Void> sendEncryptedMessageAsync(User sender, User receiver, String messageText) {
+        return submitInOrder(sender.getId() + '\u0000' + receiver.getId(),
+                () -> sendEncryptedMessage(sender, receiver, messageText));
+    }
+
+    /**
+     * Encrypts and sends a group message on the crypto executor instead of the calling thread.
+     * Messages to the same group are sent in the order they were submitted.
+     * 
+     * @param sender The user sending the message
+     * @param groupName The name of the group
+     * @param receivers The users receiving the message
+     * @param messageText The plain text message to send
+     * @return A future completed once the message is stored, or completed exceptionally if encryption fails
+     */
+    public CompletableFuture<Void> sendEncryptedGroupMessageAsync(User sender, String groupName,
+                                                                  Collection<User> receivers, String messageText) {
+        return submitInOrder(sender.getId() + "\u0000#" + groupName,
+                () -> sendEncryptedGroupMessage(sender, groupName, receivers, messageText));
+    }
+
+    /**
+     * Runs a send after all previously submitted sends of the same conversation have finished,
+     * whether they succeeded or not.
+     */
+    private CompletableFuture<Void> submitInOrder(String conversation, Runnable send) {
+        Executor executor = cryptoExecutor != null ? cryptoExecutor : DefaultExecutorHolder.INSTANCE;
+        CompletableFuture<Void> sent = conversationTails.compute(conversation, (key, previous) ->
+                previous == null
+                        ? CompletableFuture.runAsync(send, executor)
+                        : previous.handle((result, error) -> null).thenRunAsync(send, executor));
+        sent.whenComplete((result, error) -> conversationTails.remove(conversation, sent));
+        return sent;
+    }
+
+    /**
+     * Sends an encrypted message from sender to every member of a group.
+     * The body is encrypted once under a fresh AES-GCM key, and only that key is
+     * wrapped with each receiver's public key. The result is stored as one message.
+     * 
+     * @param sender The user sending the message
+     * @param groupName The name of the group
+     * @param receivers The users receiving the message
+     * @param messageText The plain text message to send
+     * @throws RuntimeException if encryption fails
+     */
+    public void sendEncryptedGroupMessage(User sender, String groupName, Collection<User> receivers, String messageText) {
+        try {
+            SecretKey contentKey = RSAUtil.generateContentKey();
+            byte[] body = RSAUtil.encryptWithKey(messageText.getBytes(StandardCharsets.UTF_8), contentKey);
+            Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+            for (User receiver : receivers) {
+                wrappedKeys.put(receiver.getPseudoName(), CryptoProviders.wrapKey(contentKey, receiver.getPublicKey()));
+            }
+            byte[] signature = SignatureVerifier.sign(sender.getPseudoName(), groupName, "", body,
+                    sender.getPrivateKey());
+            messageModel.sendGroupMessage(sender.getPseudoName(), groupName, messageText, body, wrappedKeys, signature);
+
+            // Log to console for debugging
+            System.out.println("[INFO] Group message sent from ID: " + sender.getId() + " to " + groupName
+                    + " (" + wrappedKeys.size() + " recipients)");
         } catch (Exception e) {
             throw new RuntimeException("Encryption failed", e);
         }
     }
 
+    /**
+     * Sends a file as an encrypted attachment from sender to receiver.
+     * The file is streamed through AES-GCM in fixed-size chunks into the outbox directory,
+     * so it is never loaded into memory; only its content key is wrapped for the receiver.
+     * 
+     * @param sender The user sending the file
+     * @param receiver The user receiving the file
+     * @param file The file to send
+     * @param outboxDir The directory where the encrypted file is stored
+     * @throws RuntimeException if the file cannot be read or encrypted
+     */
+    public void sendAttachment(User sender, User receiver, Path file, Path outboxDir) {
+        try {
+            Files.createDirectories(outboxDir);
+            Path encryptedFile = outboxDir.resolve(UUID.randomUUID() + ".enc");
+            SecretKey contentKey = RSAUtil.generateContentKey();
+            long size = AttachmentCipher.encryptFile(file, encryptedFile, contentKey);
+            byte[] wrappedKey = CryptoProviders.wrapKey(contentKey, receiver.getPublicKey());
+            byte[] keyCommitment = AttachmentCipher.keyCommitment(contentKey);
+            String fileName = file.getFileName().toString();
+            byte[] signature = SignatureVerifier.sign(sender.getPseudoName(), receiver.getPseudoName(),
+                    SignatureVerifier.attachmentInfo(fileName, size), keyCommitment, sender.getPrivateKey());
+            messageModel.sendAttachment(sender.getPseudoName(), receiver.getPseudoName(),
+                    fileName, size, encryptedFile, wrappedKey, keyCommitment, signature);
+
+            // Log to console for debugging
+            System.out.println("[INFO] Attachment sent from ID: " + sender.getId() + " to ID: " + receiver.getId()
+                    + " (" + size + " bytes)");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store attachment", e);
+        }
+    }
+
+    /**
+     * Decrypts an attachment for its receiver straight to the target file.
+     * 
+     * @param message The attachment message
+     * @param receiver The user the attachment was sent to
+     * @param target The file to write the decrypted content to
+     * @throws RuntimeException if the user is not the receiver or decryption fails
+     */
+    public void decryptAttachment(AttachmentMessage message, User receiver, Path target) {
+        if (!message.getReceiver().equals(receiver.getPseudoName())) {
+            throw new IllegalArgumentException("Attachment was not sent to " + receiver.getPseudoName());
+        }
+        SecretKey contentKey = withReceiverKey(receiver,
+                privateKey -> CryptoProviders.unwrapKey(message.getCiphertext(), privateKey));
+        if (message.getKeyCommitment() != null
+                && !MessageDigest.isEqual(AttachmentCipher.keyCommitment(contentKey), message.getKeyCommitment())) {
+            throw new RuntimeException("Attachment key does not match its commitment");
+        }
+        AttachmentCipher.decryptFile(message.getEncryptedFile(), target, contentKey);
+    }
+
     /**
      * Decrypts a message for the specified receiver.
-     * Only the intended receiver can decrypt the message using their private key.
+     * Only the intended receiver, or a recipient of a group message, can decrypt
+     * the message using their private key. Decrypted plain text is cached, so
+     * repeated renders of the same message do not repeat the decryption.
      * 
      * @param message The encrypted message to decrypt
      * @param receiver The user attempting to decrypt the message
@@ -53,13 +278,260 @@ public class MessageProxy {
      */
     public String decryptMessage(Message message, User receiver) {
         try {
-            if (message.getReceiver().equals(receiver.getPseudoName())) {
-                return RSAUtil.decrypt(message.getContent(), receiver.getPrivateKey());
-            } else {
-                return message.getContent();
-            }
+            return decrypt(message, receiver, receiverId(receiver));
         } catch (Exception e) {
             return "[Unable to decrypt message]";
         }
     }
+
+    /**
+     * Decrypts a batch of messages for the specified receiver in parallel on the
+     * common fork-join pool.
+     * 
+     * @param messages The messages to decrypt
+     * @param receiver The user attempting to decrypt the messages
+     * @return One result per message, in the same order as the input
+     */
+    public List<DecryptionResult> decryptAll(List<Message> messages, User receiver) {
+        return decryptAll(messages, receiver, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypts a batch of messages for the specified receiver in parallel on the given executor.
+     * A message that cannot be decrypted yields a failed result instead of failing the batch.
+     * Small batches are decrypted on the calling thread.
+     * 
+     * @param messages The messages to decrypt
+     * @param receiver The user attempting to decrypt the messages
+     * @param executor The executor running the decryption tasks
+     * @return One result per message, in the same order as the input
+     */
+    public List<DecryptionResult> decryptAll(List<Message> messages, User receiver, Executor executor) {
+        DecryptionResult[] results = new DecryptionResult[messages.size()];
+        forEachChunk(messages.size(), executor, (from, to) -> decryptRange(messages, receiver, results, from, to));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Runs a range task over [0, count), split into chunks on the given executor,
+     * and waits for all chunks. Small counts run on the calling thread.
+     */
+    private static void forEachChunk(int count, Executor executor, RangeTask task) {
+        if (count < PARALLEL_BATCH_THRESHOLD) {
+            task.run(0, count);
+            return;
+        }
+
+        int chunkSize = Math.max(PARALLEL_BATCH_THRESHOLD / 2,
+                count / (Runtime.getRuntime().availableProcessors() * 4));
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < count; start += chunkSize) {
+            int from = start;
+            int to = Math.min(start + chunkSize, count);
+            chunks.add(CompletableFuture.runAsync(() -> task.run(from, to), executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Work over a half-open index range of a batch.
+     */
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Decrypts messages[from, to) into the matching slots of the results array.
+     */
+    private void decryptRange(List<Message> messages, User receiver, DecryptionResult[] results, int from, int to) {
+        int receiverId = receiverId(receiver);
+        for (int i = from; i < to; i++) {
+            Message message = messages.get(i);
+            try {
+                results[i] = new DecryptionResult(message, decrypt(message, receiver, receiverId), null);
+            } catch (Exception e) {
+                results[i] = new DecryptionResult(message, null, e);
+            }
+        }
+    }
+
+    /**
+     * Verifies that a message was signed by the given sender.
+     * The outcome is memoized per message, so repeated renders do not repeat the check.
+     * 
+     * @param message The message to verify
+     * @param sender The user the message claims to be from
+     * @return true if the message carries a valid signature by the sender, false otherwise
+     */
+    public boolean verifyMessage(Message message, User sender) {
+        return sender != null
+                && sender.getPseudoName().equals(message.getSender())
+                && signatures.verify(message, sender.getPublicKey(), sender.getPreviousPublicKeys());
+    }
+
+    /**
+     * Verifies a batch of messages in parallel on the common fork-join pool.
+     * 
+     * @param messages The messages to verify
+     * @param senders Resolves a sender's id in the message model's {@link ParticipantIds} to the
+     *                user, or null if unknown, e.g. a participant model's
+     *                {@link com.securechat.model.ParticipantListModel#getUserByParticipantId(int)}
+     * @return One outcome per message, in the same order as the input
+     */
+    public List<Boolean> verifyAll(List<Message> messages, IntFunction<User> senders) {
+        return verifyAll(messages, senders, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verifies a batch of messages in parallel on the given executor.
+     * Messages from unknown senders or without a valid signature yield false.
+     * 
+     * @param messages The messages to verify
+     * @param senders Resolves a sender's id in the message model's {@link ParticipantIds} to the
+     *                user, or null if unknown
+     * @param executor The executor running the verification tasks
+     * @return One outcome per message, in the same order as the input
+     */
+    public List<Boolean> verifyAll(List<Message> messages, IntFunction<User> senders, Executor executor) {
+        Boolean[] results = new Boolean[messages.size()];
+        forEachChunk(messages.size(), executor, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Message message = messages.get(i);
+                results[i] = verifyMessage(message, senders.apply(participantId(message, message.getSenderId())));
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Decrypts a message for the receiver, consulting the plain text cache first.
+     * 
+     * @param message The message to decrypt
+     * @param receiver The user attempting to decrypt the message
+     * @param receiverId The receiver's id in the message model
+     * @return The decrypted message, or the encrypted content if the user is not a recipient
+     * @throws RuntimeException if decryption fails
+     */
+    private String decrypt(Message message, User receiver, int receiverId) {
+        if (!isRecipient(message, receiver, receiverId)) {
+            return message.getContent();
+        }
+        if (message instanceof AttachmentMessage) {
+            // The file content is only decrypted on request, see decryptAttachment
+            return message.getOriginalContent();
+        }
+        PrivateKey privateKey = receiver.getPrivateKey();
+        String plainText = plaintextCache.get(message, receiver.getId(), privateKey);
+        if (plainText == null) {
+            plainText = message instanceof GroupMessage
+                    ? decryptGroup((GroupMessage) message, receiver)
+                    : decryptDirect(message, receiver);
+            plaintextCache.put(message, receiver.getId(), privateKey, plainText);
+        }
+        return plainText;
+    }
+
+    /**
+     * Gets the id the message model interned the receiver's pseudonym with.
+     */
+    private int receiverId(User receiver) {
+        return messageModel.getParticipantIds().userId(receiver.getPseudoName());
+    }
+
+    /**
+     * Gets the message model's id of one of a message's participants, which is the message's
+     * own id unless the message is not stored in the model.
+     */
+    private int participantId(Message message, int id) {
+        ParticipantIds ids = messageModel.getParticipantIds();
+        return message.getParticipantIds() == ids ? id : ids.userId(message.getParticipantIds().nameOf(id));
+    }
+
+    /**
+     * Checks whether the receiver can decrypt a message, comparing ids in the message's table:
+     * the receiver's id in the message model, unless the message is not stored in the model.
+     */
+    private boolean isRecipient(Message message, User receiver, int receiverId) {
+        if (message.getParticipantIds() != messageModel.getParticipantIds()) {
+            receiverId = message.getParticipantIds().userId(receiver.getPseudoName());
+        }
+        return message instanceof GroupMessage
+                ? ((GroupMessage) message).isRecipient(receiverId)
+                : message.getReceiverId() == receiverId;
+    }
+
+    /**
+     * Gets the cache of decrypted plain text, e.g. to read its hit rate.
+     * 
+     * @return The plain text cache
+     */
+    public PlaintextCache getPlaintextCache() {
+        return plaintextCache;
+    }
+
+    /**
+     * Gets the signature verifier, e.g. to read how often verification was memoized.
+     * 
+     * @return The signature verifier
+     */
+    public SignatureVerifier getSignatureVerifier() {
+        return signatures;
+    }
+
+    /**
+     * Zeroizes all cached plain text and forgets all session keys.
+     * Should be called when the user logs out or closes the chat.
+     */
+    public void clearSecrets() {
+        plaintextCache.clear();
+        sessions.clear();
+    }
+
+    /**
+     * Decrypts a group message with the content key wrapped for the receiver.
+     * 
+     * @param message The group message
+     * @param receiver A recipient of the message
+     * @return The decrypted message
+     */
+    private String decryptGroup(GroupMessage message, User receiver) {
+        byte[] wrappedKey = message.getWrappedKey(receiver.getPseudoName());
+        SecretKey contentKey = withReceiverKey(receiver, privateKey -> CryptoProviders.unwrapKey(wrappedKey, privateKey));
+        byte[] plain = RSAUtil.decryptWithKey(message.getCiphertext(), contentKey);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decrypts the envelope of a direct message, using the cached session key when
+     * the message belongs to a session that was already unwrapped. Envelopes without a
+     * session come from {@link RSAUtil#encryptEnvelope(byte[], PublicKey)} and are always RSA.
+     * 
+     * @param message The direct message, whose ciphertext is the serialized envelope
+     * @param receiver The intended receiver
+     * @return The decrypted message
+     */
+    private String decryptDirect(Message message, User receiver) {
+        Envelope envelope = Envelope.parse(message.getCiphertext());
+        SecretKey key = withReceiverKey(receiver, privateKey -> envelope.isSession()
+                ? sessions.inboundKey(receiver.getId(), message.getSender(), envelope.sessionId,
+                        envelope.wrappedKey, privateKey)
+                : RSAUtil.unwrapKey(envelope.wrappedKey, privateKey));
+        return new String(RSAUtil.decryptWithKey(envelope.body, key), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a private key operation with the receiver's current key, falling back to the
+     * previous key while a key rotation is in progress and the message is not re-wrapped yet.
+     */
+    private static <T> T withReceiverKey(User receiver, Function<PrivateKey, T> operation) {
+        try {
+            return operation.apply(receiver.getPrivateKey());
+        } catch (RuntimeException e) {
+            PrivateKey previous = receiver.getPreviousPrivateKey();
+            if (previous == null) {
+                throw e;
+            }
+            return operation.apply(previous);
+        }
+    }
 }
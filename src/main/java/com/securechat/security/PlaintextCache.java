@@ -0,0 +1,216 @@
+package com.securechat.security;
+
+import com.securechat.model.Message;
+
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of decrypted message plain text.
+ * Entries are keyed by message identity and receiver, and are bounded both by count
+ * and by the total number of cached characters. Each entry remembers the private key
+ * it was decrypted with, so it stops matching once the receiver's keys rotate.
+ * Plain text is held in char arrays that are overwritten when entries are evicted
+ * or cleared, e.g. on logout.
+ */
+public class PlaintextCache {
+
+    /** Default maximum number of cached messages. */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    /** Default maximum number of cached characters across all messages. */
+    public static final long DEFAULT_MAX_CHARS = 4L * 1024 * 1024;
+
+    private final int maxEntries;
+    private final long maxChars;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedChars;
+    private long hits;
+    private long misses;
+
+    /**
+     * Identifies a message decrypted for a receiver. Messages are compared by identity.
+     */
+    private static final class Key {
+        final Message message;
+        final String receiverId;
+
+        Key(Message message, String receiverId) {
+            this.message = message;
+            this.receiverId = receiverId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return message == other.message && receiverId.equals(other.receiverId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(message) + receiverId.hashCode();
+        }
+    }
+
+    /**
+     * Cached plain text and the private key it was decrypted with.
+     */
+    private static final class Entry {
+        final char[] plainText;
+        final PrivateKey privateKey;
+
+        Entry(char[] plainText, PrivateKey privateKey) {
+            this.plainText = plainText;
+            this.privateKey = privateKey;
+        }
+    }
+
+    /**
+     * Creates a plain text cache with the default bounds.
+     */
+    public PlaintextCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * Creates a plain text cache with custom bounds.
+     *
+     * @param maxEntries The maximum number of cached messages
+     * @param maxChars The maximum number of cached characters across all messages
+     */
+    public PlaintextCache(int maxEntries, long maxChars) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Looks up the plain text of a message decrypted for a receiver.
+     *
+     * @param message The message
+     * @param receiverId The receiver's ID
+     * @param privateKey The receiver's current private key
+     * @return The cached plain text, or null if absent or decrypted with another key
+     */
+    public synchronized String get(Message message, String receiverId, PrivateKey privateKey) {
+        Key key = new Key(message, receiverId);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.privateKey != privateKey) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new String(entry.plainText);
+    }
+
+    /**
+     * Caches the plain text of a message decrypted for a receiver, evicting the least
+     * recently used entries if the cache grows beyond its bounds.
+     *
+     * @param message The message
+     * @param receiverId The receiver's ID
+     * @param privateKey The private key used to decrypt the message
+     * @param plainText The decrypted plain text
+     */
+    public synchronized void put(Message message, String receiverId, PrivateKey privateKey, String plainText) {
+        if (plainText.length() > maxChars) {
+            return;
+        }
+        Key key = new Key(message, receiverId);
+        remove(key);
+        entries.put(key, new Entry(plainText.toCharArray(), privateKey));
+        cachedChars += plainText.length();
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || cachedChars > maxChars) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            zeroize(evicted);
+        }
+    }
+
+    /**
+     * Removes and zeroizes all entries decrypted for a receiver, e.g. on logout
+     * or after the receiver's keys were rotated.
+     *
+     * @param receiverId The receiver's ID
+     */
+    public synchronized void invalidate(String receiverId) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().receiverId.equals(receiverId)) {
+                it.remove();
+                zeroize(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes and zeroizes all entries.
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            Arrays.fill(entry.plainText, '\0');
+        }
+        entries.clear();
+        cachedChars = 0;
+    }
+
+    /**
+     * Gets the number of cached messages.
+     *
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return The number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that required decryption.
+     *
+     * @return The number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of lookups answered from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if nothing was looked up yet
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private void remove(Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            zeroize(previous);
+        }
+    }
+
+    private void zeroize(Entry entry) {
+        cachedChars -= entry.plainText.length;
+        Arrays.fill(entry.plainText, '\0');
+    }
+}
@@ -1,14 +1,31 @@
 package com.securechat.security;
 
 import java.security.*;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.util.Base64;
 
 /**
  * Utility class for RSA encryption and decryption operations.
  * Provides methods to generate key pairs, encrypt, and decrypt messages.
+ * Besides plain RSA, it supports hybrid envelope encryption where the message body
+ * is encrypted with a fresh AES-GCM key and only that key is wrapped with RSA-OAEP.
+ * Cipher and key factory instances are reused per thread through {@link CipherPool}, and all
+ * randomness comes from {@link RandomSource}.
  */
 public class RSAUtil {
+
+    private static final String RSA_TRANSFORMATION = "RSA";
+    private static final String RSA_OAEP_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String AES_GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int AES_KEY_SIZE = 256;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
     
     /**
      * Generates a new RSA key pair with 2048-bit key size.
@@ -19,7 +36,7 @@ public class RSAUtil {
     public static KeyPair generateKeyPair() {
         try {
             KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
-            generator.initialize(2048);
+            generator.initialize(2048, RandomSource.current());
             return generator.generateKeyPair();
         } catch (Exception e) {
             throw new RuntimeException("Failed to generate RSA key pair", e);
@@ -36,8 +53,8 @@ public class RSAUtil {
      */
     public static String encrypt(String plainText, PublicKey publicKey) {
         try {
-            Cipher cipher = Cipher.getInstance("RSA");
-            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            Cipher cipher = CipherPool.cipher(RSA_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey, RandomSource.current());
             byte[] encrypted = cipher.doFinal(plainText.getBytes("UTF-8"));
             return Base64.getEncoder().encodeToString(encrypted);
         } catch (Exception e) {
@@ -55,7 +72,7 @@ public class RSAUtil {
      */
     public static String decrypt(String cipherText, PrivateKey privateKey) {
         try {
-            Cipher cipher = Cipher.getInstance("RSA");
+            Cipher cipher = CipherPool.cipher(RSA_TRANSFORMATION);
             cipher.init(Cipher.DECRYPT_MODE, privateKey);
             byte[] decrypted = cipher.doFinal(Base64.getDecoder().decode(cipherText));
             return new String(decrypted, "UTF-8");
@@ -63,4 +80,265 @@ public class RSAUtil {
             throw new RuntimeException("Failed to decrypt message", e);
         }
     }
+
+    /**
+     * Encrypts a message of any length using envelope encryption.
+     * The body is encrypted with a fresh AES-GCM key, and only that key is
+     * wrapped with the receiver's RSA public key, so the RSA cost does not
+     * depend on the message size.
+     *
+     * @param plainText The message to encrypt
+     * @param publicKey The receiver's public key
+     * @return Base64-encoded envelope (version, wrapped key, IV and ciphertext)
+     * @throws RuntimeException if encryption fails
+     */
+    public static String encryptHybrid(String plainText, PublicKey publicKey) {
+        try {
+            return Base64.getEncoder().encodeToString(encryptEnvelope(plainText.getBytes("UTF-8"), publicKey));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to encrypt message", e);
+        }
+    }
+
+    /**
+     * Decrypts a Base64-encoded envelope produced by {@link #encryptHybrid(String, PublicKey)}.
+     *
+     * @param cipherText The Base64-encoded envelope
+     * @param privateKey The receiver's private key
+     * @return The decrypted plain text message
+     * @throws RuntimeException if the envelope is malformed, tampered with or decryption fails
+     */
+    public static String decryptHybrid(String cipherText, PrivateKey privateKey) {
+        try {
+            return new String(decryptEnvelope(Base64.getDecoder().decode(cipherText), privateKey), "UTF-8");
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decrypt message", e);
+        }
+    }
+
+    /**
+     * Encrypts raw data of any length into a binary envelope.
+     * Same scheme as {@link #encryptHybrid(String, PublicKey)} without the Base64 text encoding.
+     *
+     * @param plain The data to encrypt
+     * @param publicKey The receiver's public key
+     * @return The serialized envelope (version, wrapped key, IV and ciphertext)
+     * @throws RuntimeException if encryption fails
+     */
+    public static byte[] encryptEnvelope(byte[] plain, PublicKey publicKey) {
+        SecretKey contentKey = generateContentKey();
+        byte[] wrappedKey = wrapKey(contentKey, publicKey);
+        return Envelope.direct(wrappedKey, encryptWithKey(plain, contentKey)).toBytes();
+    }
+
+    /**
+     * Decrypts a binary envelope produced by {@link #encryptEnvelope(byte[], PublicKey)}.
+     *
+     * @param envelopeBytes The serialized envelope
+     * @param privateKey The receiver's private key
+     * @return The decrypted data
+     * @throws RuntimeException if the envelope is malformed, tampered with or decryption fails
+     */
+    public static byte[] decryptEnvelope(byte[] envelopeBytes, PrivateKey privateKey) {
+        Envelope envelope = Envelope.parse(envelopeBytes);
+        if (envelope.isSession()) {
+            throw new IllegalArgumentException("Session envelopes require the session key");
+        }
+        return decryptWithKey(envelope.body, unwrapKey(envelope.wrappedKey, privateKey));
+    }
+
+    /**
+     * Generates a fresh 256-bit AES key for encrypting a single payload.
+     *
+     * @return A new AES secret key
+     * @throws RuntimeException if key generation fails
+     */
+    public static SecretKey generateContentKey() {
+        try {
+            byte[] keyBytes = new byte[AES_KEY_SIZE / 8];
+            RandomSource.nextBytes(keyBytes);
+            return new SecretKeySpec(keyBytes, "AES");
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to generate AES key", e);
+        }
+    }
+
+    /**
+     * Wraps a symmetric key with an RSA public key using OAEP padding.
+     *
+     * @param key The symmetric key to wrap
+     * @param publicKey The public key of the key recipient
+     * @return The wrapped key bytes
+     * @throws RuntimeException if wrapping fails
+     */
+    public static byte[] wrapKey(SecretKey key, PublicKey publicKey) {
+        try {
+            Cipher cipher = CipherPool.cipher(RSA_OAEP_TRANSFORMATION);
+            cipher.init(Cipher.WRAP_MODE, publicKey, RandomSource.current());
+            return cipher.wrap(key);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to wrap key", e);
+        }
+    }
+
+    /**
+     * Unwraps an AES key previously wrapped with {@link #wrapKey(SecretKey, PublicKey)}.
+     *
+     * @param wrappedKey The wrapped key bytes
+     * @param privateKey The private key of the key recipient
+     * @return The unwrapped AES key
+     * @throws RuntimeException if unwrapping fails
+     */
+    public static SecretKey unwrapKey(byte[] wrappedKey, PrivateKey privateKey) {
+        try {
+            Cipher cipher = CipherPool.cipher(RSA_OAEP_TRANSFORMATION);
+            cipher.init(Cipher.UNWRAP_MODE, privateKey);
+            return (SecretKey) cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to unwrap key", e);
+        }
+    }
+
+    /**
+     * Encrypts data with AES-GCM under the given key using a random IV.
+     *
+     * @param plain The data to encrypt
+     * @param key The AES key
+     * @return The IV followed by the ciphertext and authentication tag
+     * @throws RuntimeException if encryption fails
+     */
+    public static byte[] encryptWithKey(byte[] plain, SecretKey key) {
+        return encryptWithKey(plain, key, null);
+    }
+
+    /**
+     * Encrypts data with AES-GCM under the given key using a random IV, authenticating
+     * additional data that must be given again to decrypt it.
+     *
+     * @param plain The data to encrypt
+     * @param key The AES key
+     * @param aad The additional authenticated data, or null for none
+     * @return The IV followed by the ciphertext and authentication tag
+     * @throws RuntimeException if encryption fails
+     */
+    public static byte[] encryptWithKey(byte[] plain, SecretKey key, byte[] aad) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            RandomSource.nextBytes(iv);
+            Cipher cipher = CipherPool.cipher(AES_GCM_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+
+            byte[] out = new byte[GCM_IV_LENGTH + cipher.getOutputSize(plain.length)];
+            System.arraycopy(iv, 0, out, 0, GCM_IV_LENGTH);
+            cipher.doFinal(plain, 0, plain.length, out, GCM_IV_LENGTH);
+            return out;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to encrypt data", e);
+        }
+    }
+
+    /**
+     * Decrypts data produced by {@link #encryptWithKey(byte[], SecretKey)}.
+     *
+     * @param data The IV followed by the ciphertext and authentication tag
+     * @param key The AES key
+     * @return The decrypted data
+     * @throws RuntimeException if decryption or authentication fails
+     */
+    public static byte[] decryptWithKey(byte[] data, SecretKey key) {
+        return decryptWithKey(data, key, null);
+    }
+
+    /**
+     * Decrypts data produced by {@link #encryptWithKey(byte[], SecretKey, byte[])}.
+     *
+     * @param data The IV followed by the ciphertext and authentication tag
+     * @param key The AES key
+     * @param aad The additional authenticated data given on encryption, or null for none
+     * @return The decrypted data
+     * @throws RuntimeException if decryption or authentication fails
+     */
+    public static byte[] decryptWithKey(byte[] data, SecretKey key, byte[] aad) {
+        try {
+            Cipher cipher = CipherPool.cipher(AES_GCM_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, data, 0, GCM_IV_LENGTH));
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+            return cipher.doFinal(data, GCM_IV_LENGTH, data.length - GCM_IV_LENGTH);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decrypt data", e);
+        }
+    }
+
+    /**
+     * Signs data with the given private key using SHA-256 with RSA.
+     *
+     * @param data The data to sign
+     * @param privateKey The signer's private key
+     * @return The signature bytes
+     * @throws RuntimeException if signing fails
+     */
+    public static byte[] sign(byte[] data, PrivateKey privateKey) {
+        try {
+            Signature signer = CipherPool.signature(SIGNATURE_ALGORITHM);
+            signer.initSign(privateKey);
+            signer.update(data);
+            return signer.sign();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to sign data", e);
+        }
+    }
+
+    /**
+     * Verifies a signature produced by {@link #sign(byte[], PrivateKey)}.
+     *
+     * @param data The signed data
+     * @param signature The signature bytes
+     * @param publicKey The signer's public key
+     * @return true if the signature is valid for the data and key, false otherwise
+     */
+    public static boolean verify(byte[] data, byte[] signature, PublicKey publicKey) {
+        try {
+            Signature verifier = CipherPool.signature(SIGNATURE_ALGORITHM);
+            verifier.initVerify(publicKey);
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restores an RSA public key from its X.509 encoded form.
+     *
+     * @param encoded The encoded public key, as returned by {@link PublicKey#getEncoded()}
+     * @return The decoded public key
+     * @throws RuntimeException if the key cannot be decoded
+     */
+    public static PublicKey decodePublicKey(byte[] encoded) {
+        try {
+            return CipherPool.keyFactory("RSA").generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decode public key", e);
+        }
+    }
+
+    /**
+     * Restores an RSA private key from its PKCS#8 encoded form.
+     *
+     * @param encoded The encoded private key, as returned by {@link PrivateKey#getEncoded()}
+     * @return The decoded private key
+     * @throws RuntimeException if the key cannot be decoded
+     */
+    public static PrivateKey decodePrivateKey(byte[] encoded) {
+        try {
+            return CipherPool.keyFactory("RSA").generatePrivate(new PKCS8EncodedKeySpec(encoded));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to decode private key", e);
+        }
+    }
 }
@@ -0,0 +1,247 @@
+package com.securechat.security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Central source of cryptographic randomness.
+ * The native generators share one process-wide state behind a lock, so every thread instead
+ * gets its own deterministic {@code SHA1PRNG} generator, explicitly seeded from the system
+ * source when it is created. Threads only touch the shared source to seed, and never contend
+ * when they draw. The seed source is selected with the system property {@code securechat.random}:
+ * <ul>
+ *   <li>{@code nonblocking} (default): {@code NativePRNGNonBlocking}, which never waits for
+ *       the entropy pool; falls back to the JVM default where it is not available</li>
+ *   <li>{@code default}: the JVM's default {@code SecureRandom}</li>
+ *   <li>{@code strong}: {@link SecureRandom#getInstanceStrong()}, which may block</li>
+ *   <li>any other value is used as the {@code SecureRandom} algorithm of the per-thread
+ *       generators, e.g. {@code DRBG}, seeded from the non-blocking source</li>
+ * </ul>
+ * Seeding and every draw are timed, so entropy stalls show up in the statistics and
+ * slow seeding is logged.
+ */
+public final class RandomSource {
+
+    private static final long SLOW_SEED_WARNING_MILLIS = 1000;
+
+    private static final String SOURCE = System.getProperty("securechat.random", "nonblocking");
+
+    private static final String THREAD_ALGORITHM = "SHA1PRNG";
+    private static final int SEED_LENGTH = 32;
+
+    // Adders keep the per-draw bookkeeping cheap when many threads draw concurrently
+    private static final LongAdder INSTANCES = new LongAdder();
+    private static final LongAdder SEED_NANOS = new LongAdder();
+    private static final AtomicLong MAX_SEED_NANOS = new AtomicLong();
+    private static final LongAdder DRAWS = new LongAdder();
+    private static final LongAdder DRAW_NANOS = new LongAdder();
+    private static final AtomicLong MAX_DRAW_NANOS = new AtomicLong();
+
+    // Shared by all threads, and only drawn from to seed their generators
+    private static final SecureRandom SEEDS = createSeedSource();
+    private static final ThreadLocal<SecureRandom> RANDOMS = ThreadLocal.withInitial(RandomSource::newInstance);
+
+    private RandomSource() {
+    }
+
+    /**
+     * Gets the calling thread's generator, e.g. to initialize a key pair generator or cipher.
+     * Draws from the returned generator are included in the timing statistics.
+     *
+     * @return A generator confined to the calling thread
+     */
+    public static SecureRandom current() {
+        return RANDOMS.get();
+    }
+
+    /**
+     * Fills an array with random bytes from the calling thread's generator.
+     *
+     * @param bytes The array to fill
+     */
+    public static void nextBytes(byte[] bytes) {
+        RANDOMS.get().nextBytes(bytes);
+    }
+
+    /**
+     * Gets the configured source, as set with {@code securechat.random}.
+     *
+     * @return The source name
+     */
+    public static String getSource() {
+        return SOURCE;
+    }
+
+    /**
+     * Gets the number of per-thread generators created so far.
+     *
+     * @return The number of generators
+     */
+    public static long getInstanceCount() {
+        return INSTANCES.sum();
+    }
+
+    /**
+     * Gets the time spent creating and seeding generators.
+     *
+     * @return The total seeding time in nanoseconds
+     */
+    public static long getSeedNanos() {
+        return SEED_NANOS.sum();
+    }
+
+    /**
+     * Gets the longest time a single generator took to create and seed.
+     *
+     * @return The maximum seeding time in nanoseconds
+     */
+    public static long getMaxSeedNanos() {
+        return MAX_SEED_NANOS.get();
+    }
+
+    /**
+     * Gets the number of draws from all generators.
+     *
+     * @return The number of draws
+     */
+    public static long getDrawCount() {
+        return DRAWS.sum();
+    }
+
+    /**
+     * Gets the time spent drawing random bytes.
+     *
+     * @return The total draw time in nanoseconds
+     */
+    public static long getDrawNanos() {
+        return DRAW_NANOS.sum();
+    }
+
+    /**
+     * Gets the longest time a single draw took.
+     *
+     * @return The maximum draw time in nanoseconds
+     */
+    public static long getMaxDrawNanos() {
+        return MAX_DRAW_NANOS.get();
+    }
+
+    /**
+     * Creates and seeds a generator for the calling thread, recording how long it took.
+     */
+    private static SecureRandom newInstance() {
+        long start = System.nanoTime();
+        SecureRandom delegate = createGenerator();
+        // Seeded before its first draw, so it never seeds itself from the shared source mid-operation
+        delegate.setSeed(SEEDS.generateSeed(SEED_LENGTH));
+        long elapsed = System.nanoTime() - start;
+
+        INSTANCES.increment();
+        SEED_NANOS.add(elapsed);
+        updateMax(MAX_SEED_NANOS, elapsed);
+        if (TimeUnit.NANOSECONDS.toMillis(elapsed) >= SLOW_SEED_WARNING_MILLIS) {
+            System.err.println("Warning: Seeding " + delegate.getAlgorithm() + " took "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        }
+        return new TimedSecureRandom(delegate);
+    }
+
+    /**
+     * Creates the shared source the per-thread generators are seeded from.
+     */
+    private static SecureRandom createSeedSource() {
+        try {
+            switch (SOURCE) {
+                case "default":
+                    return new SecureRandom();
+                case "strong":
+                    return SecureRandom.getInstanceStrong();
+                default:
+                    try {
+                        return SecureRandom.getInstance("NativePRNGNonBlocking");
+                    } catch (NoSuchAlgorithmException e) {
+                        return new SecureRandom();
+                    }
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to create random source " + SOURCE, e);
+        }
+    }
+
+    /**
+     * Creates an unseeded per-thread generator for the configured source.
+     */
+    private static SecureRandom createGenerator() {
+        boolean seedSource = SOURCE.equals("nonblocking") || SOURCE.equals("default") || SOURCE.equals("strong");
+        String algorithm = seedSource ? THREAD_ALGORITHM : SOURCE;
+        try {
+            return SecureRandom.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to create random source " + algorithm, e);
+        }
+    }
+
+    /**
+     * Raises a recorded maximum to the given value if it is larger.
+     */
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until the maximum is at least value
+        }
+    }
+
+    /**
+     * Generator that delegates to another one and times every draw.
+     */
+    private static final class TimedSecureRandom extends SecureRandom {
+        private static final long serialVersionUID = 1L;
+
+        TimedSecureRandom(SecureRandom delegate) {
+            super(new TimedSpi(delegate), delegate.getProvider());
+        }
+    }
+
+    /**
+     * Service provider interface of {@link TimedSecureRandom}.
+     */
+    private static final class TimedSpi extends SecureRandomSpi {
+        private static final long serialVersionUID = 1L;
+
+        private final SecureRandom delegate;
+
+        TimedSpi(SecureRandom delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineSetSeed(byte[] seed) {
+            delegate.setSeed(seed);
+        }
+
+        @Override
+        protected void engineNextBytes(byte[] bytes) {
+            long start = System.nanoTime();
+            delegate.nextBytes(bytes);
+            record(System.nanoTime() - start);
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(int numBytes) {
+            long start = System.nanoTime();
+            byte[] seed = delegate.generateSeed(numBytes);
+            record(System.nanoTime() - start);
+            return seed;
+        }
+
+        private static void record(long elapsed) {
+            DRAWS.increment();
+            DRAW_NANOS.add(elapsed);
+            updateMax(MAX_DRAW_NANOS, elapsed);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.securechat.security;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import javax.crypto.SecretKey;
+
+/**
+ * RSA-2048 provider: keys are wrapped with RSA-OAEP and messages signed with SHA256withRSA.
+ * All operations delegate to {@link RSAUtil}.
+ */
+public class RsaCryptoProvider implements CryptoProvider {
+
+    /** Tag of RSA-wrapped keys. */
+    public static final byte TAG = 1;
+
+    @Override
+    public String getName() {
+        return "rsa";
+    }
+
+    @Override
+    public byte getTag() {
+        return TAG;
+    }
+
+    @Override
+    public String getKeyAlgorithm() {
+        return "RSA";
+    }
+
+    @Override
+    public KeyPair generateKeyPair() {
+        return RSAUtil.generateKeyPair();
+    }
+
+    @Override
+    public byte[] wrapKey(SecretKey key, PublicKey publicKey) {
+        return RSAUtil.wrapKey(key, publicKey);
+    }
+
+    @Override
+    public SecretKey unwrapKey(byte[] wrappedKey, PrivateKey privateKey) {
+        return RSAUtil.unwrapKey(wrappedKey, privateKey);
+    }
+
+    @Override
+    public byte[] sign(byte[] data, PrivateKey privateKey) {
+        return RSAUtil.sign(data, privateKey);
+    }
+
+    @Override
+    public boolean verify(byte[] data, byte[] signature, PublicKey publicKey) {
+        return RSAUtil.verify(data, signature, publicKey);
+    }
+
+    @Override
+    public PublicKey decodePublicKey(byte[] encoded) {
+        return RSAUtil.decodePublicKey(encoded);
+    }
+
+    @Override
+    public PrivateKey decodePrivateKey(byte[] encoded) {
+        return RSAUtil.decodePrivateKey(encoded);
+    }
+}
@@ -0,0 +1,182 @@
+package com.securechat.security;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKey;
+
+/**
+ * Cache of pairwise AES session keys.
+ * On the sending side, one session key is set up per (sender, receiver) pair and wrapped
+ * once with the receiver's public key; it is rotated after a maximum age or number of
+ * messages, or when the receiver's public key changes. On the receiving side, unwrapped
+ * session keys are remembered by sender, session ID and a hash of the wrapped key, so only
+ * the first message of a session needs a private-key operation. Session IDs travel in the
+ * clear, so a message reusing another sender's session ID never hits that sender's key.
+ */
+public class SessionKeyCache {
+
+    /** Default maximum lifetime of a session key: one hour. */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 60 * 1000L;
+    /** Default maximum number of messages encrypted under one session key. */
+    public static final int DEFAULT_MAX_MESSAGES = 1000;
+    /** Default maximum number of unwrapped session keys remembered on the receiving side. */
+    public static final int DEFAULT_MAX_INBOUND_KEYS = 1024;
+
+    private final long maxAgeMillis;
+    private final int maxMessages;
+    private final ConcurrentMap<String, Session> outbound = new ConcurrentHashMap<>();
+    private final Map<String, InboundKey> inbound;
+
+    /**
+     * An outbound session between one sender and one receiver.
+     */
+    static final class Session {
+        final byte[] id;
+        final SecretKey key;
+        final byte[] wrappedKey;
+        final PublicKey receiverKey;
+        final long createdAt;
+        final AtomicInteger uses = new AtomicInteger();
+
+        Session(byte[] id, SecretKey key, byte[] wrappedKey, PublicKey receiverKey, long createdAt) {
+            this.id = id;
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+            this.receiverKey = receiverKey;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * An unwrapped session key remembered on the receiving side.
+     */
+    private static final class InboundKey {
+        final SecretKey key;
+        final long createdAt;
+
+        InboundKey(SecretKey key, long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Creates a session key cache with the default expiry and rotation limits.
+     */
+    public SessionKeyCache() {
+        this(DEFAULT_MAX_AGE_MILLIS, DEFAULT_MAX_MESSAGES, DEFAULT_MAX_INBOUND_KEYS);
+    }
+
+    /**
+     * Creates a session key cache with custom expiry and rotation limits.
+     *
+     * @param maxAgeMillis The maximum lifetime of a session key in milliseconds
+     * @param maxMessages The maximum number of messages encrypted under one session key
+     * @param maxInboundKeys The maximum number of unwrapped keys remembered for receivers
+     */
+    public SessionKeyCache(long maxAgeMillis, int maxMessages, int maxInboundKeys) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxMessages = maxMessages;
+        this.inbound = new LinkedHashMap<String, InboundKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InboundKey> eldest) {
+                return size() > maxInboundKeys;
+            }
+        };
+    }
+
+    /**
+     * Gets the current session from sender to receiver for encrypting one message,
+     * starting a new session if none exists or the current one must be rotated.
+     *
+     * @param senderId The sender's ID
+     * @param receiverId The receiver's ID
+     * @param receiverKey The receiver's current public key
+     * @return The session to encrypt the message with
+     */
+    Session outboundSession(String senderId, String receiverId, PublicKey receiverKey) {
+        long now = System.currentTimeMillis();
+        Session session = outbound.compute(senderId + '\u0000' + receiverId, (pair, current) ->
+                current != null && isUsable(current, receiverKey, now) ? current : newSession(receiverKey, now));
+        session.uses.incrementAndGet();
+        return session;
+    }
+
+    /**
+     * Gets the key for a received session, unwrapping it with the receiver's private key
+     * the first time the session is seen.
+     *
+     * @param receiverId The receiver's ID
+     * @param sender The pseudonym of the message's sender
+     * @param sessionId The session ID carried by the message
+     * @param wrappedKey The session key wrapped for the receiver
+     * @param privateKey The receiver's private key
+     * @return The session key
+     * @throws RuntimeException if the key cannot be unwrapped
+     */
+    SecretKey inboundKey(String receiverId, String sender, byte[] sessionId, byte[] wrappedKey, PrivateKey privateKey) {
+        Base64.Encoder base64 = Base64.getEncoder();
+        String cacheKey = receiverId + '\u0000' + sender + '\u0000' + base64.encodeToString(sessionId)
+                + '\u0000' + base64.encodeToString(sha256(wrappedKey));
+        long now = System.currentTimeMillis();
+        synchronized (inbound) {
+            InboundKey cached = inbound.get(cacheKey);
+            if (cached != null && now - cached.createdAt < 2 * maxAgeMillis) {
+                return cached.key;
+            }
+        }
+        SecretKey key = CryptoProviders.unwrapKey(wrappedKey, privateKey);
+        synchronized (inbound) {
+            inbound.put(cacheKey, new InboundKey(key, now));
+        }
+        return key;
+    }
+
+    /**
+     * Forgets all outbound sessions and inbound keys, forcing new key setup.
+     */
+    public void clear() {
+        outbound.clear();
+        synchronized (inbound) {
+            inbound.clear();
+        }
+    }
+
+    /**
+     * Gets the number of active outbound sessions.
+     *
+     * @return The number of outbound sessions
+     */
+    public int getOutboundSessionCount() {
+        return outbound.size();
+    }
+
+    private boolean isUsable(Session session, PublicKey receiverKey, long now) {
+        return session.receiverKey.equals(receiverKey)
+                && now - session.createdAt < maxAgeMillis
+                && session.uses.get() < maxMessages;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to hash wrapped session key", e);
+        }
+    }
+
+    private static Session newSession(PublicKey receiverKey, long now) {
+        byte[] id = new byte[Envelope.SESSION_ID_LENGTH];
+        RandomSource.nextBytes(id);
+        SecretKey key = RSAUtil.generateContentKey();
+        return new Session(id, key, CryptoProviders.wrapKey(key, receiverKey), receiverKey, now);
+    }
+}
@@ -0,0 +1,191 @@
+package com.securechat.security;
+
+import com.securechat.model.AttachmentMessage;
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Signs messages and verifies sender signatures, memoizing the outcome per message.
+ * A signature covers the sender, the receiver or group name, the attachment metadata
+ * if any, and the encrypted body, so none of them can be altered or replayed under another
+ * name. Keys wrapped for receivers are not covered, so they can be re-wrapped when a
+ * receiver rotates their key pair; attachments are covered through a key commitment.
+ * Messages signed before the sender rotated their key pair are verified against the
+ * sender's previous public keys. Verification outcomes are remembered together with the
+ * sender's current public key, and are dropped with the message once it is no longer referenced.
+ */
+public class SignatureVerifier {
+    private static final String SIGNATURE_CONTEXT = "securechat-message-v1";
+
+    private final Map<Message, Verification> verified = new WeakHashMap<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Outcome of verifying a message against a sender's public key.
+     */
+    private static final class Verification {
+        final PublicKey senderKey;
+        final boolean valid;
+
+        Verification(PublicKey senderKey, boolean valid) {
+            this.senderKey = senderKey;
+            this.valid = valid;
+        }
+    }
+
+    /**
+     * Signs the fields of a message about to be sent.
+     *
+     * @param sender The pseudonym of the message sender
+     * @param receiver The pseudonym of the receiver, or the group name
+     * @param attachment The attachment metadata, or an empty string for text messages
+     * @param content The signed content: the envelope's signed content, the group message body,
+     *                or the attachment's key commitment
+     * @param privateKey The sender's private key
+     * @return The signature bytes
+     * @throws RuntimeException if signing fails
+     */
+    static byte[] sign(String sender, String receiver, String attachment, byte[] content, PrivateKey privateKey) {
+        return CryptoProviders.forKey(privateKey).sign(signedData(sender, receiver, attachment, content), privateKey);
+    }
+
+    /**
+     * Describes an attachment for signing, so its name and size cannot be swapped.
+     *
+     * @param fileName The original name of the attached file
+     * @param fileSize The size of the attached file in bytes
+     * @return The attachment metadata to sign
+     */
+    static String attachmentInfo(String fileName, long fileSize) {
+        return fileName + '\u0000' + fileSize;
+    }
+
+    /**
+     * Verifies a message's signature against the sender's public key.
+     * Only the first check for a given message and key does the public-key work;
+     * later checks return the memoized outcome.
+     *
+     * @param message The message to verify
+     * @param senderKey The public key of the claimed sender
+     * @return true if the message carries a valid signature by that key, false otherwise
+     */
+    public boolean verify(Message message, PublicKey senderKey) {
+        return verify(message, senderKey, Collections.<PublicKey>emptyList());
+    }
+
+    /**
+     * Verifies a message's signature against the sender's public key, or against one of the
+     * keys the sender had before rotating their key pair.
+     * Only the first check for a given message and current key does the public-key work;
+     * later checks return the memoized outcome.
+     *
+     * @param message The message to verify
+     * @param senderKey The current public key of the claimed sender
+     * @param previousKeys The sender's previous public keys, newest first
+     * @return true if the message carries a valid signature by one of the keys, false otherwise
+     */
+    public boolean verify(Message message, PublicKey senderKey, List<PublicKey> previousKeys) {
+        if (message.getSignature() == null || senderKey == null) {
+            return false;
+        }
+        synchronized (this) {
+            Verification verification = verified.get(message);
+            if (verification != null && verification.senderKey.equals(senderKey)) {
+                hits++;
+                return verification.valid;
+            }
+            misses++;
+        }
+
+        String attachment = "";
+        byte[] content;
+        if (message instanceof AttachmentMessage) {
+            AttachmentMessage attachmentMessage = (AttachmentMessage) message;
+            attachment = attachmentInfo(attachmentMessage.getFileName(), attachmentMessage.getFileSize());
+            content = attachmentMessage.getKeyCommitment();
+        } else if (message instanceof GroupMessage) {
+            content = message.getCiphertext();
+        } else {
+            content = directContent(message.getCiphertext());
+        }
+        boolean valid = false;
+        if (content != null) {
+            byte[] data = signedData(message.getSender(), message.getReceiver(), attachment, content);
+            valid = CryptoProviders.forKey(senderKey).verify(data, message.getSignature(), senderKey);
+            for (int i = 0; !valid && i < previousKeys.size(); i++) {
+                PublicKey previousKey = previousKeys.get(i);
+                valid = CryptoProviders.forKey(previousKey).verify(data, message.getSignature(), previousKey);
+            }
+        }
+        synchronized (this) {
+            verified.put(message, new Verification(senderKey, valid));
+        }
+        return valid;
+    }
+
+    /**
+     * Forgets all memoized verification outcomes.
+     */
+    public synchronized void clear() {
+        verified.clear();
+    }
+
+    /**
+     * Gets the number of verifications answered from memoized outcomes.
+     *
+     * @return The hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of verifications that had to check the signature.
+     *
+     * @return The miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the signed content of a direct message's envelope, or null if it is not an envelope.
+     */
+    private static byte[] directContent(byte[] ciphertext) {
+        try {
+            return Envelope.parse(ciphertext).signedContent();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Serializes the signed fields with length prefixes, so field boundaries are unambiguous.
+     */
+    private static byte[] signedData(String sender, String receiver, String attachment, byte[] content) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(SIGNATURE_CONTEXT);
+            out.writeUTF(sender);
+            out.writeUTF(receiver);
+            out.writeUTF(attachment);
+            out.writeInt(content.length);
+            out.write(content);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode signed data", e);
+        }
+    }
+}
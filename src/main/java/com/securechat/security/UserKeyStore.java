@@ -0,0 +1,391 @@
+package com.securechat.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * File-backed store for users' key pairs.
+ * Public keys are stored in their X.509 encoding; private keys are stored in their
+ * PKCS#8 encoding wrapped with AES-GCM under a master key derived from a master secret,
+ * with the user ID as additional authenticated data, so an entry cannot be moved to another user.
+ * Opening the store only reads the encoded entries; keys are decoded and unwrapped
+ * when a user's key pair is first needed. While a user's key pair is being rotated,
+ * the previous key pair is stored alongside the new one; once the rotation finishes, the
+ * previous public key is kept to verify the messages signed with it.
+ *
+ * <p>User IDs are chosen at registration and participants are not persisted, so each
+ * entry is bound to the account that created it by a keyed hash of the account's
+ * credential, checked before the private key is unwrapped.</p>
+ *
+ * <p>New entries are appended to the store file; the file is only rewritten as a whole
+ * when entries are removed or a key pair rotation starts.</p>
+ *
+ * <p>The default store location and master secret come from the system properties
+ * {@code securechat.keystore.path} and {@code securechat.keystore.secret} (or the
+ * {@code SECURECHAT_KEYSTORE_SECRET} environment variable).</p>
+ */
+public class UserKeyStore {
+
+    private static final String DEFAULT_PATH = "securechat-keys.properties";
+    private static final String DEMO_SECRET = "securechat-demo-master-secret";
+    private static final String SALT_PROPERTY = "salt";
+    private static final String PUBLIC_SUFFIX = ".public";
+    private static final String PRIVATE_SUFFIX = ".private";
+    private static final String PREVIOUS_INFIX = ".previous";
+    private static final String CREDENTIAL_SUFFIX = ".credential";
+    private static final String RETIRED_SUFFIX = ".retired";
+    private static final int SALT_LENGTH = 16;
+    private static final int PBKDF2_ITERATIONS = 100_000;
+    private static final int MASTER_KEY_SIZE = 256;
+
+    private final Path file;
+    private final Properties entries = new Properties();
+    private final ConcurrentMap<String, Object> creationLocks = new ConcurrentHashMap<>();
+    private final SecretKey masterKey;
+
+    /**
+     * Opens the key store at the given path, creating an empty store if the file does not exist.
+     *
+     * @param file The key store file
+     * @param masterSecret The secret used to protect private keys
+     * @throws RuntimeException if the file cannot be read or the master key cannot be derived
+     */
+    public UserKeyStore(Path file, char[] masterSecret) {
+        this.file = file;
+        try {
+            if (Files.exists(file)) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    entries.load(in);
+                }
+            }
+            if (entries.getProperty(SALT_PROPERTY) == null) {
+                byte[] salt = new byte[SALT_LENGTH];
+                RandomSource.nextBytes(salt);
+                entries.setProperty(SALT_PROPERTY, Base64.getEncoder().encodeToString(salt));
+            }
+            this.masterKey = deriveMasterKey(masterSecret,
+                    Base64.getDecoder().decode(entries.getProperty(SALT_PROPERTY)));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open key store " + file, e);
+        }
+    }
+
+    /**
+     * Opens the key store configured through system properties or the environment.
+     * Falls back to a built-in demo secret, with a warning, when none is configured.
+     *
+     * @return The default key store
+     * @throws RuntimeException if the key store cannot be opened
+     */
+    public static UserKeyStore openDefault() {
+        String path = System.getProperty("securechat.keystore.path", DEFAULT_PATH);
+        String secret = System.getProperty("securechat.keystore.secret");
+        if (secret == null) {
+            secret = System.getenv("SECURECHAT_KEYSTORE_SECRET");
+        }
+        if (secret == null) {
+            System.err.println("Warning: No key store secret configured, using the demo secret.");
+            secret = DEMO_SECRET;
+        }
+        return new UserKeyStore(Paths.get(path), secret.toCharArray());
+    }
+
+    /**
+     * Checks whether a key pair is stored for the given user.
+     *
+     * @param userId The user's ID
+     * @return true if a key pair is stored, false otherwise
+     */
+    public boolean contains(String userId) {
+        return entries.getProperty(userId + PUBLIC_SUFFIX) != null
+                && entries.getProperty(userId + PRIVATE_SUFFIX) != null;
+    }
+
+    /**
+     * Loads and decodes the key pair stored for the given user.
+     *
+     * @param userId The user's ID
+     * @return The stored key pair, or null if none is stored
+     * @throws RuntimeException if the stored keys cannot be unwrapped or decoded
+     */
+    public KeyPair load(String userId) {
+        return read(userId, userId);
+    }
+
+    /**
+     * Checks whether a key pair rotation of the given user was started and not finished.
+     *
+     * @param userId The user's ID
+     * @return true if the user's previous key pair is still stored, false otherwise
+     */
+    public boolean hasPrevious(String userId) {
+        return entries.getProperty(userId + PREVIOUS_INFIX + PRIVATE_SUFFIX) != null;
+    }
+
+    /**
+     * Loads and decodes the key pair the user had before the rotation in progress.
+     *
+     * @param userId The user's ID
+     * @return The previous key pair, or null if no rotation is in progress
+     * @throws RuntimeException if the stored keys cannot be unwrapped or decoded
+     */
+    public KeyPair loadPrevious(String userId) {
+        return read(userId, userId + PREVIOUS_INFIX);
+    }
+
+    /**
+     * Stores a user's key pair and writes the store to disk.
+     * The entries are not bound to an account, so {@link #loadOrCreate} rejects them.
+     *
+     * @param userId The user's ID
+     * @param keyPair The key pair to store
+     * @throws RuntimeException if the store cannot be written
+     */
+    public synchronized void store(String userId, KeyPair keyPair) {
+        put(userId, userId, keyPair);
+        append(userId + PUBLIC_SUFFIX, userId + PRIVATE_SUFFIX);
+    }
+
+    /**
+     * Checks whether the keys stored for a user ID were created by another account, in
+     * which case the ID must not be registered again.
+     *
+     * @param userId The user's ID
+     * @param credential The credential of the account, e.g. its password hash
+     * @return true if the stored keys are bound to a different credential or to no account,
+     *         false if none are stored or they belong to this account
+     */
+    public boolean belongsToOtherAccount(String userId, String credential) {
+        String bound = entries.getProperty(userId + CREDENTIAL_SUFFIX);
+        if (bound == null) {
+            return contains(userId);
+        }
+        return !MessageDigest.isEqual(Base64.getDecoder().decode(bound), credentialHash(userId, credential));
+    }
+
+    /**
+     * Stores a user's new key pair together with the previous one in a single write,
+     * so an interrupted rotation can be resumed with both.
+     *
+     * @param userId The user's ID
+     * @param newKeyPair The user's new key pair
+     * @param previousKeyPair The key pair being replaced
+     * @throws RuntimeException if the store cannot be written
+     */
+    public synchronized void storeRotation(String userId, KeyPair newKeyPair, KeyPair previousKeyPair) {
+        put(userId, userId, newKeyPair);
+        put(userId, userId + PREVIOUS_INFIX, previousKeyPair);
+        save();
+    }
+
+    /**
+     * Removes a user's previous private key once its rotation has finished, keeping the
+     * previous public key among the user's retired public keys.
+     *
+     * @param userId The user's ID
+     * @throws RuntimeException if the store cannot be written
+     */
+    public synchronized void retirePrevious(String userId) {
+        String previousPublic = (String) entries.remove(userId + PREVIOUS_INFIX + PUBLIC_SUFFIX);
+        boolean removed = entries.remove(userId + PREVIOUS_INFIX + PRIVATE_SUFFIX) != null;
+        if (previousPublic != null) {
+            String retired = entries.getProperty(userId + RETIRED_SUFFIX);
+            entries.setProperty(userId + RETIRED_SUFFIX,
+                    retired == null ? previousPublic : previousPublic + "," + retired);
+        }
+        if (removed || previousPublic != null) {
+            save();
+        }
+    }
+
+    /**
+     * Loads the public keys a user had before their finished key pair rotations.
+     *
+     * @param userId The user's ID
+     * @return The retired public keys, newest first; empty if the user never rotated
+     * @throws RuntimeException if a stored key cannot be decoded
+     */
+    public List<PublicKey> loadRetiredPublicKeys(String userId) {
+        String retired = entries.getProperty(userId + RETIRED_SUFFIX);
+        if (retired == null) {
+            return Collections.emptyList();
+        }
+        List<PublicKey> keys = new ArrayList<>();
+        for (String encoded : retired.split(",")) {
+            keys.add(CryptoProviders.decodePublicKey(Base64.getDecoder().decode(encoded)));
+        }
+        return keys;
+    }
+
+    /**
+     * Loads the user's stored key pair, or creates and stores a new one bound to the
+     * account if none exists. The account's credential is checked before the stored
+     * private key is unwrapped.
+     *
+     * @param userId The user's ID
+     * @param credential The credential of the account, e.g. its password hash
+     * @param generator Creates a key pair when none is stored
+     * @return The user's key pair
+     * @throws IllegalStateException if the stored keys belong to another account or to none
+     */
+    public KeyPair loadOrCreate(String userId, String credential, Supplier<KeyPair> generator) {
+        synchronized (creationLocks.computeIfAbsent(userId, id -> new Object())) {
+            if (belongsToOtherAccount(userId, credential)) {
+                throw new IllegalStateException("Stored keys of user " + userId + " are not bound to this account");
+            }
+            KeyPair keyPair = load(userId);
+            if (keyPair == null) {
+                keyPair = generator.get();
+                bind(userId, credential, keyPair);
+            }
+            return keyPair;
+        }
+    }
+
+    /**
+     * Creates a lazy key source for a user, suitable for
+     * {@link com.securechat.model.User#User(String, String, String, Supplier)}.
+     * New key pairs are taken from the default {@link KeyPairPool}.
+     *
+     * @param userId The user's ID
+     * @param credential The credential of the account, e.g. its password hash
+     * @return A supplier that loads or creates the user's key pair when called
+     */
+    public Supplier<KeyPair> keySource(String userId, String credential) {
+        return () -> loadOrCreate(userId, credential, () -> KeyPairPool.getDefault().take());
+    }
+
+    /**
+     * Stores a user's key pair bound to the account's credential, appending the entries.
+     */
+    private synchronized void bind(String userId, String credential, KeyPair keyPair) {
+        put(userId, userId, keyPair);
+        entries.setProperty(userId + CREDENTIAL_SUFFIX,
+                Base64.getEncoder().encodeToString(credentialHash(userId, credential)));
+        append(userId + PUBLIC_SUFFIX, userId + PRIVATE_SUFFIX, userId + CREDENTIAL_SUFFIX);
+    }
+
+    /**
+     * Decodes the key pair stored under the given entry prefix, unwrapping the private key.
+     */
+    private KeyPair read(String userId, String prefix) {
+        String encodedPublic = entries.getProperty(prefix + PUBLIC_SUFFIX);
+        String wrappedPrivate = entries.getProperty(prefix + PRIVATE_SUFFIX);
+        if (encodedPublic == null || wrappedPrivate == null) {
+            return null;
+        }
+        byte[] wrapped = Base64.getDecoder().decode(wrappedPrivate);
+        try {
+            byte[] encodedPrivate = RSAUtil.decryptWithKey(wrapped, masterKey, userId.getBytes(StandardCharsets.UTF_8));
+            return CryptoProviders.decodeKeyPair(Base64.getDecoder().decode(encodedPublic), encodedPrivate);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to load key pair for user " + userId, e);
+        }
+    }
+
+    /**
+     * Sets the entries of a user's key pair under the given prefix, wrapping the private key.
+     */
+    private void put(String userId, String prefix, KeyPair keyPair) {
+        byte[] wrappedPrivate = RSAUtil.encryptWithKey(keyPair.getPrivate().getEncoded(), masterKey,
+                userId.getBytes(StandardCharsets.UTF_8));
+        entries.setProperty(prefix + PUBLIC_SUFFIX,
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
+        entries.setProperty(prefix + PRIVATE_SUFFIX, Base64.getEncoder().encodeToString(wrappedPrivate));
+    }
+
+    /**
+     * Computes the keyed hash binding a user ID to an account's credential.
+     */
+    private byte[] credentialHash(String userId, String credential) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterKey.getEncoded(), "HmacSHA256"));
+            mac.update(userId.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(credential.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to hash account credential", e);
+        }
+    }
+
+    /**
+     * Appends the given entries to the store file, so adding a user costs one short write
+     * however many users are stored. Later lines override earlier ones when the file is loaded.
+     */
+    private void append(String... keys) {
+        if (!Files.exists(file)) {
+            save();
+            return;
+        }
+        Properties added = new Properties();
+        for (String key : keys) {
+            added.setProperty(key, entries.getProperty(key));
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            added.store(out, null);
+            Files.write(file, out.toByteArray(), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write key store " + file, e);
+        }
+    }
+
+    /**
+     * Writes all entries to a temporary file and atomically replaces the store file.
+     */
+    private void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "securechat-keys", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                entries.store(out, "Secure Chat user keys - private keys are encrypted");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write key store " + file, e);
+        }
+    }
+
+    /**
+     * Derives the AES master key from the master secret with PBKDF2.
+     */
+    private static SecretKey deriveMasterKey(char[] masterSecret, byte[] salt) {
+        try {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            PBEKeySpec spec = new PBEKeySpec(masterSecret, salt, PBKDF2_ITERATIONS, MASTER_KEY_SIZE);
+            try {
+                return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+            } finally {
+                spec.clearPassword();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to derive key store master key", e);
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package com.securechat.view;
 
 import com.securechat.model.*;
+import com.securechat.security.DecryptionResult;
 import com.securechat.security.MessageProxy;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Observable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.Observer;
 import java.util.Vector;
 
@@ -26,6 +38,40 @@ public class ChatView extends JFrame implements Observer {
     private JComboBox<String> participantDropdown = new JComboBox<>();
     private JTextField messageInput = new JTextField();
     private JButton sendButton = new JButton("Send");
+    private JButton attachButton;
+
+    // Messages backing each row of the message list, used to open attachments
+    private List<Message> displayedMessages = new ArrayList<>();
+    // Sequence number up to which the message model has been rendered
+    private long renderedSequence;
+    // History is shown a page at a time, newest first; older pages load on scrolling to the top
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private boolean historyLoaded;
+    private boolean loadingOlderHistory;
+    // Read and written by render tasks only, which run one at a time
+    private boolean hasOlderHistory;
+    private long olderHistoryCursor;
+    // Once the message log is exhausted, older pages come from the journal's cold storage
+    private boolean hasArchivedHistory = true;
+    private long archivedHistoryCursor = HistoryPage.LATEST;
+
+    // Decrypts and verifies messages off the event dispatch thread, in the order updates arrive
+    private final ExecutorService renderer;
+    private volatile boolean disposed;
+
+    // Rows of messages still being encrypted and sent, shown after the history
+    private List<String> pendingRows = new ArrayList<>();
+    private static final String SENDING_SUFFIX = "  ⏳ sending…";
+    private static final String SENT_SUFFIX = "  ✓";
+    private static final String UNVERIFIED_SUFFIX = "  ⚠ unverified sender";
+    private static final String RESTORED_SENT_CONTENT = "[encrypted for the receiver]";
+
+    // Directory holding encrypted attachments
+    private static final Path ATTACHMENT_DIR = Paths.get(System.getProperty("securechat.attachments.dir", "attachments"));
+
+    // Group containing every other registered participant
+    private static final String EVERYONE_GROUP = "Everyone";
+    private static final String GROUP_PREFIX = "# ";
 
     // Improved color scheme for better readability
     private static final Color PRIMARY_COLOR = new Color(0, 123, 255);
@@ -51,6 +97,11 @@ public class ChatView extends JFrame implements Observer {
         this.messageModel = messageModel;
         this.participantModel = participantModel;
         this.messageProxy = new MessageProxy(messageModel);
+        this.renderer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chat-render-" + user.getPseudoName());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         this.messageModel.addObserver(this);
 
@@ -63,6 +114,8 @@ public class ChatView extends JFrame implements Observer {
 
         setupModernUI();
         initComponents();
+        // Show the newest page of history right away
+        update(messageModel, null);
 
         setVisible(true);
     }
@@ -141,8 +194,8 @@ public class ChatView extends JFrame implements Observer {
         userPanel.add(textPanel);
         headerPanel.add(userPanel, BorderLayout.WEST);
 
-        // Online indicator
-        JLabel onlineLabel = new JLabel("● Online");
+        // Online indicator, with what arrived since the user's previous login
+        JLabel onlineLabel = new JLabel("● Online" + newSinceLastLogin());
         onlineLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         onlineLabel.setForeground(SUCCESS_COLOR);
         headerPanel.add(onlineLabel, BorderLayout.EAST);
@@ -164,11 +217,27 @@ public class ChatView extends JFrame implements Observer {
         messageList.setBorder(new EmptyBorder(15, 20, 15, 20));
         messageList.setSelectionBackground(new Color(230, 240, 255));
         messageList.setCellRenderer(new ModernMessageRenderer());
+        messageList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent evt) {
+                int index = messageList.locationToIndex(evt.getPoint());
+                if (evt.getClickCount() == 2 && index >= 0 && index < displayedMessages.size()) {
+                    saveAttachment(displayedMessages.get(index));
+                }
+            }
+        });
 
         JScrollPane scrollPane = new JScrollPane(messageList);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(222, 226, 230), 1));
         scrollPane.setBackground(CARD_COLOR);
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        JScrollBar scrollBar = scrollPane.getVerticalScrollBar();
+        scrollBar.addAdjustmentListener(e -> {
+            boolean scrollable = scrollBar.getMaximum() > scrollBar.getVisibleAmount();
+            if (scrollable && e.getValue() == scrollBar.getMinimum()) {
+                loadOlderHistory(scrollBar);
+            }
+        });
 
         chatPanel.add(scrollPane, BorderLayout.CENTER);
         return chatPanel;
@@ -215,7 +284,17 @@ public class ChatView extends JFrame implements Observer {
         sendButton = createModernButton("► Send", PRIMARY_COLOR, Color.BLACK);
         sendButton.setPreferredSize(new Dimension(130, 50));
         sendButton.addActionListener(e -> sendMessage());
-        inputPanel.add(sendButton, BorderLayout.EAST);
+
+        // Attach button
+        attachButton = createModernButton("📎 Attach", BACKGROUND_COLOR, Color.BLACK);
+        attachButton.setPreferredSize(new Dimension(130, 50));
+        attachButton.addActionListener(e -> sendAttachment());
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 10, 0));
+        buttonPanel.setBackground(CARD_COLOR);
+        buttonPanel.add(attachButton);
+        buttonPanel.add(sendButton);
+        inputPanel.add(buttonPanel, BorderLayout.EAST);
 
         // Add Enter key support
         messageInput.addActionListener(e -> sendMessage());
@@ -292,25 +371,138 @@ public class ChatView extends JFrame implements Observer {
             return;
         }
 
-        if (receiverName != null) {
+        if (receiverName != null && receiverName.startsWith(GROUP_PREFIX)) {
+            List<User> receivers = new ArrayList<>();
+            for (User u : participantModel.getParticipants()) {
+                if (!u.getPseudoName().equals(user.getPseudoName())) {
+                    receivers.add(u);
+                }
+            }
+            if (!receivers.isEmpty()) {
+                String groupName = receiverName.substring(GROUP_PREFIX.length());
+                trackSending("#" + groupName, content,
+                    messageProxy.sendEncryptedGroupMessageAsync(user, groupName, receivers, content));
+                messageInput.setText("");
+                messageInput.requestFocus();
+            }
+        } else if (receiverName != null) {
             // Remove the icon prefix if present
             if (receiverName.startsWith("● ")) {
                 receiverName = receiverName.substring(2);
             }
             User receiver = participantModel.getUserByPseudo(receiverName);
             if (receiver != null) {
-                messageProxy.sendEncryptedMessage(user, receiver, content);
+                trackSending(receiver.getPseudoName(), content,
+                    messageProxy.sendEncryptedMessageAsync(user, receiver, content));
                 messageInput.setText("");
                 messageInput.requestFocus();
             }
         }
     }
 
+    /**
+     * Shows a message as "sending" until its asynchronous send completes.
+     * Encryption runs on the crypto executor, so the event thread stays responsive.
+     */
+    private void trackSending(String target, String content, CompletableFuture<Void> sent) {
+        String row = "► You → " + target + ": " + content;
+        pendingRows.add(row);
+        msgListModel.addElement(row + SENDING_SUFFIX);
+        messageList.ensureIndexIsVisible(msgListModel.getSize() - 1);
+
+        sent.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            pendingRows.remove(row);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Could not send message: " + error.getMessage(),
+                    "Send Failed", JOptionPane.ERROR_MESSAGE);
+            }
+            update(messageModel, null);
+        }));
+    }
+
+    /**
+     * Lets the user pick a file and sends it encrypted to the selected recipient.
+     * Encryption streams the file on a background thread so large files do not block the UI.
+     */
+    private void sendAttachment() {
+        String receiverName = (String) participantDropdown.getSelectedItem();
+        if (receiverName == null || receiverName.startsWith(GROUP_PREFIX)) {
+            JOptionPane.showMessageDialog(this, "Attachments can only be sent to a single participant.",
+                "Attachment", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (receiverName.startsWith("● ")) {
+            receiverName = receiverName.substring(2);
+        }
+        User receiver = participantModel.getUserByPseudo(receiverName);
+        JFileChooser chooser = new JFileChooser();
+        if (receiver == null || chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        attachButton.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                messageProxy.sendAttachment(user, receiver, file, ATTACHMENT_DIR);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                attachButton.setEnabled(true);
+                try {
+                    get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(ChatView.this, "Could not send attachment: " + e.getMessage(),
+                        "Attachment", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Lets the receiver of an attachment choose where to save it, then decrypts it
+     * straight to that file on a background thread.
+     */
+    private void saveAttachment(Message msg) {
+        if (!(msg instanceof AttachmentMessage) || !msg.getReceiver().equals(user.getPseudoName())) {
+            return;
+        }
+        AttachmentMessage attachment = (AttachmentMessage) msg;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(attachment.getFileName()));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path target = chooser.getSelectedFile().toPath();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                messageProxy.decryptAttachment(attachment, user, target);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(ChatView.this, "Attachment saved to " + target,
+                        "Attachment", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(ChatView.this, "Could not decrypt attachment: " + e.getMessage(),
+                        "Attachment", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Updates the participant dropdown with available users.
      */
     private void updateParticipantDropdown() {
         participantDropdown.removeAllItems();
+        participantDropdown.addItem(GROUP_PREFIX + EVERYONE_GROUP);
         for (User u : participantModel.getParticipants()) {
             if (!u.getPseudoName().equals(user.getPseudoName())) {
                 participantDropdown.addItem("● " + u.getPseudoName());
@@ -320,19 +512,64 @@ public class ChatView extends JFrame implements Observer {
 
     /**
      * Called when the message model is updated.
+     * Only messages appended since the last update are read and added to the list;
+     * replaced messages are swapped in without touching the rendered rows.
      */
     @Override
     public void update(Observable o, Object arg) {
-        msgListModel.clear();
-        for (Message msg : messageModel.getMessages()) {
-            if (msg.getSender().equals(user.getPseudoName())) {
-                // Sender sees their original (clear) message
-                msgListModel.addElement("► You → " + msg.getReceiver() + ": " + msg.getOriginalContent());
-            } else if (msg.getReceiver().equals(user.getPseudoName())) {
-                // Receiver decrypts encrypted message
-                String displayed = messageProxy.decryptMessage(msg, user);
-                msgListModel.addElement("◄ " + msg.getSender() + " → You: " + displayed);
+        // Messages may be added from crypto worker threads; Swing must only be touched on the EDT
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> update(o, arg));
+            return;
+        }
+
+        if (arg instanceof MessageEvent && ((MessageEvent) arg).getType() == MessageEvent.Type.REPLACED) {
+            // Re-wrapped keys do not change what is displayed, but attachments must be
+            // opened from the stored version of their message
+            MessageEvent event = (MessageEvent) arg;
+            for (int i = 0; i < displayedMessages.size(); i++) {
+                if (event.covers(displayedMessages.get(i).getSequence())) {
+                    displayedMessages.set(i, messageModel.getMessageLog().get(displayedMessages.get(i).getSequence()));
+                }
+            }
+            return;
+        }
+
+        String me = user.getPseudoName();
+        long published = messageModel.getMessageCount();
+        long from = renderedSequence;
+        boolean firstPage = !historyLoaded;
+        historyLoaded = true;
+        renderedSequence = published;
+        // Decrypting and verifying a large backlog must not freeze the interface
+        render(() -> {
+            if (firstPage) {
+                // Opening the chat only reads the newest page, however long the history is
+                HistoryPage page = messageModel.getInboxPage(me, published, HISTORY_PAGE_SIZE);
+                hasOlderHistory = page.hasOlder();
+                olderHistoryCursor = page.getOlderCursor();
+                return page.getMessages();
             }
+            // Only this user's messages stored since the last update are read, through the model's per-user index
+            return messageModel.getInbox(me, from, published);
+        }, this::appendRows);
+    }
+
+    /**
+     * Adds rendered messages after the history, keeping the pending rows last.
+     */
+    private void appendRows(List<Message> messages, List<String> rows) {
+        // Pending rows follow the history, so take them off before appending new messages
+        while (msgListModel.getSize() > displayedMessages.size()) {
+            msgListModel.remove(msgListModel.getSize() - 1);
+        }
+        displayedMessages.addAll(messages);
+        for (String row : rows) {
+            msgListModel.addElement(row);
+        }
+
+        for (String row : pendingRows) {
+            msgListModel.addElement(row + SENDING_SUFFIX);
         }
 
         // Auto-scroll to bottom
@@ -343,6 +580,150 @@ public class ChatView extends JFrame implements Observer {
         });
     }
 
+    /**
+     * Reads and renders messages on the render thread, then hands them to the event
+     * dispatch thread. Tasks run one at a time and their results are applied in order.
+     */
+    private void render(Supplier<List<Message>> read, BiConsumer<List<Message>, List<String>> apply) {
+        if (disposed) {
+            return;
+        }
+        renderer.execute(() -> {
+            if (disposed) {
+                return;
+            }
+            List<Message> messages;
+            List<String> rows;
+            try {
+                messages = read.get();
+                rows = renderRows(messages);
+            } catch (RuntimeException e) {
+                // Applied empty, so the view stays consistent and can load again
+                System.err.println("Warning: Could not render messages: " + e.getMessage());
+                messages = new ArrayList<>();
+                rows = new ArrayList<>();
+            }
+            List<Message> rendered = messages;
+            List<String> renderedRows = rows;
+            SwingUtilities.invokeLater(() -> {
+                if (!disposed) {
+                    // Swap in versions replaced while the rows were rendered
+                    List<Message> current = new ArrayList<>(rendered.size());
+                    for (Message msg : rendered) {
+                        current.add(msg.getSequence() >= 0 ? messageModel.getMessageLog().get(msg.getSequence()) : msg);
+                    }
+                    apply.accept(current, renderedRows);
+                }
+            });
+        });
+    }
+
+    /**
+     * Describes how many messages the user received since their previous login.
+     */
+    private String newSinceLastLogin() {
+        long previousLogin = user.getPreviousLoginTime();
+        if (previousLogin == 0) {
+            return "";
+        }
+        int me = messageModel.getParticipantIds().userId(user.getPseudoName());
+        int received = 0;
+        for (Message msg : messageModel.getInboxSince(user.getPseudoName(), previousLogin)) {
+            if (msg.getSenderId() != me) {
+                received++;
+            }
+        }
+        return "  ·  " + received + " new since your last login";
+    }
+
+    /**
+     * Loads the page of history before the oldest displayed message and inserts it above,
+     * keeping the rows the user is looking at in place. One page loads at a time.
+     */
+    private void loadOlderHistory(JScrollBar scrollBar) {
+        if (loadingOlderHistory) {
+            return;
+        }
+        loadingOlderHistory = true;
+        render(() -> {
+            HistoryPage page;
+            if (hasOlderHistory) {
+                page = messageModel.getInboxPage(user.getPseudoName(), olderHistoryCursor, HISTORY_PAGE_SIZE);
+                hasOlderHistory = page.hasOlder();
+                olderHistoryCursor = page.getOlderCursor();
+            } else if (hasArchivedHistory) {
+                // Reading cold storage decompresses files, which must not stall the interface either
+                page = messageModel.getArchivedInboxPage(user.getPseudoName(), archivedHistoryCursor, HISTORY_PAGE_SIZE);
+                hasArchivedHistory = page.hasOlder();
+                archivedHistoryCursor = page.getOlderCursor();
+            } else {
+                return new ArrayList<>();
+            }
+            return page.getMessages();
+        }, (messages, rows) -> {
+            loadingOlderHistory = false;
+            int oldMaximum = scrollBar.getMaximum();
+            displayedMessages.addAll(0, messages);
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                msgListModel.add(0, rows.get(i));
+            }
+            SwingUtilities.invokeLater(() -> scrollBar.setValue(scrollBar.getValue() + scrollBar.getMaximum() - oldMaximum));
+        });
+    }
+
+    /**
+     * Renders one row per message: sent messages in clear, received messages decrypted
+     * and verified as one parallel batch. Runs on the render thread.
+     */
+    private List<String> renderRows(List<Message> messages) {
+        int me = messageModel.getParticipantIds().userId(user.getPseudoName());
+        List<Message> received = new ArrayList<>();
+        for (Message msg : messages) {
+            if (msg.getSenderId() != me) {
+                received.add(msg);
+            }
+        }
+        // Results keep message order; verification outcomes are memoized, so only new messages are checked
+        Iterator<DecryptionResult> decrypted = messageProxy.decryptAll(received, user).iterator();
+        Iterator<Boolean> verified = messageProxy.verifyAll(received, participantModel::getUserByParticipantId).iterator();
+
+        List<String> rows = new ArrayList<>(messages.size());
+        for (Message msg : messages) {
+            if (msg.getSenderId() == me) {
+                // Sender sees their original (clear) message
+                String target = msg instanceof GroupMessage ? "#" + ((GroupMessage) msg).getGroupName() : msg.getReceiver();
+                // Only the ciphertext of messages restored from the journal is kept
+                String content = msg.getOriginalContent() != null ? msg.getOriginalContent() : RESTORED_SENT_CONTENT;
+                rows.add("► You → " + target + ": " + content + SENT_SUFFIX);
+            } else {
+                // Receiver sees the decrypted message
+                DecryptionResult result = decrypted.next();
+                String displayed = result.isSuccess() ? result.getPlainText() : "[Unable to decrypt message]";
+                String target = msg instanceof GroupMessage ? "#" + ((GroupMessage) msg).getGroupName() : "You";
+                String marker = verified.next() ? "" : UNVERIFIED_SUFFIX;
+                rows.add("◄ " + msg.getSender() + " → " + target + ": " + displayed + marker);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Closes the chat window, stops observing the message model and zeroizes
+     * all decrypted messages and session keys held for this user.
+     */
+    @Override
+    public void dispose() {
+        messageModel.deleteObserver(this);
+        messageProxy.clearSecrets();
+        if (!disposed) {
+            disposed = true;
+            // Runs after a render already in progress, so none of its plain text is left behind
+            renderer.execute(messageProxy::clearSecrets);
+            renderer.shutdown();
+        }
+        super.dispose();
+    }
+
     /**
      * Custom renderer for modern message display.
      */
@@ -1,5 +1,6 @@
 package com.securechat.view;
 
+import com.securechat.model.CourseEvent;
 import com.securechat.model.CourseModel;
 
 import javax.swing.*;
@@ -16,6 +17,9 @@ import java.util.Observable;
 public class CourseView extends JFrame implements Observer {
     private CourseModel courseModel;
     private JTextArea courseContentArea;
+    private JLabel idLabel;
+    private JLabel fileLabel;
+    private JLabel pathLabel;
 
     // Improved color scheme for better readability
     private static final Color PRIMARY_COLOR = new Color(0, 123, 255);
@@ -118,7 +122,7 @@ public class CourseView extends JFrame implements Observer {
         titleLabel.setForeground(TEXT_COLOR);
         textPanel.add(titleLabel);
 
-        JLabel idLabel = new JLabel("Course ID: " + courseModel.getCourseId());
+        idLabel = new JLabel("Course ID: " + courseModel.getCourseId());
         idLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         idLabel.setForeground(SECONDARY_COLOR);
         textPanel.add(idLabel);
@@ -131,13 +135,13 @@ public class CourseView extends JFrame implements Observer {
         fileInfoPanel.setLayout(new BoxLayout(fileInfoPanel, BoxLayout.Y_AXIS));
         fileInfoPanel.setBackground(CARD_COLOR);
 
-        JLabel fileLabel = new JLabel("● " + getFileName(courseModel.getCoursePath()));
+        fileLabel = new JLabel("● " + getFileName(courseModel.getCoursePath()));
         fileLabel.setFont(new Font("Arial", Font.BOLD, 14));
         fileLabel.setForeground(PRIMARY_COLOR);
         fileLabel.setAlignmentX(Component.RIGHT_ALIGNMENT);
         fileInfoPanel.add(fileLabel);
 
-        JLabel pathLabel = new JLabel(courseModel.getCoursePath());
+        pathLabel = new JLabel(courseModel.getCoursePath());
         pathLabel.setFont(new Font("Arial", Font.PLAIN, 12));
         pathLabel.setForeground(SECONDARY_COLOR);
         pathLabel.setAlignmentX(Component.RIGHT_ALIGNMENT);
@@ -290,10 +294,17 @@ public class CourseView extends JFrame implements Observer {
 
     /**
      * Called when the course model is updated.
+     * The course file is only reloaded when its path changed.
      */
     @Override
     public void update(Observable o, Object arg) {
-        loadCourseFile(courseModel.getCoursePath());
+        boolean idOnly = arg instanceof CourseEvent && ((CourseEvent) arg).getType() == CourseEvent.Type.ID_CHANGED;
+        if (!idOnly) {
+            loadCourseFile(courseModel.getCoursePath());
+            fileLabel.setText("● " + getFileName(courseModel.getCoursePath()));
+            pathLabel.setText(courseModel.getCoursePath());
+        }
         setTitle("Course Materials - ID: " + courseModel.getCourseId());
+        idLabel.setText("Course ID: " + courseModel.getCourseId());
     }
 }
@@ -4,10 +4,13 @@ import com.securechat.model.ParticipantListModel;
 import com.securechat.model.User;
 import com.securechat.model.MessageListModel;
 import com.securechat.model.CourseModel;
+import com.securechat.security.KeyRotationJob;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Modern main application view displayed after successful login.
@@ -17,6 +20,7 @@ public class MainAppView extends JFrame {
     private User user;
     private MessageListModel messageModel;
     private ParticipantListModel participantModel;
+    private List<ChatView> openChats = new ArrayList<>();
 
     // Improved color scheme for better readability
     private static final Color PRIMARY_COLOR = new Color(0, 123, 255);
@@ -236,14 +240,42 @@ public class MainAppView extends JFrame {
 
         JButton logoutButton = createModernButton("Logout", new Color(220, 53, 69), Color.BLACK);
         logoutButton.addActionListener(e -> {
+            // Close chat windows so their decrypted messages are zeroized
+            for (ChatView chat : openChats) {
+                chat.dispose();
+            }
+            openChats.clear();
             dispose();
             new LoginView(participantModel, messageModel);
         });
         footerPanel.add(logoutButton);
 
+        JButton rotateButton = createModernButton("Rotate Keys", SECONDARY_COLOR, Color.BLACK);
+        rotateButton.addActionListener(e -> rotateKeys(rotateButton));
+        footerPanel.add(rotateButton);
+
         return footerPanel;
     }
 
+    /**
+     * Rotates the user's key pair in the background; the button stays disabled until
+     * all stored messages are re-wrapped for the new key.
+     */
+    private void rotateKeys(JButton rotateButton) {
+        rotateButton.setEnabled(false);
+        new KeyRotationJob(messageModel, user, participantModel.getKeyStore()).start()
+                .whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+                    rotateButton.setEnabled(true);
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(this, "Key rotation failed: " + error.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Keys rotated, " + count + " messages re-wrapped.",
+                                "Key Rotation", JOptionPane.INFORMATION_MESSAGE);
+                    }
+                }));
+    }
+
     /**
      * Creates a modern styled button.
      */
@@ -278,7 +310,7 @@ public class MainAppView extends JFrame {
      * Opens the chat view window.
      */
     private void openChatView() {
-        new ChatView(messageModel, user, participantModel, this.getX() + 50, this.getY() + 50);
+        openChats.add(new ChatView(messageModel, user, participantModel, this.getX() + 50, this.getY() + 50));
     }
 
     /**
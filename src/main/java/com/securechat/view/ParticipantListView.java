@@ -1,5 +1,6 @@
 package com.securechat.view;
 
+import com.securechat.model.ParticipantEvent;
 import com.securechat.model.ParticipantListModel;
 import com.securechat.model.User;
 
@@ -16,6 +17,10 @@ import java.util.Observable;
 public class ParticipantListView extends JFrame implements Observer {
     private ParticipantListModel participantModel;
     private JTextArea userListTextArea;
+    private JLabel countLabel;
+
+    // Offset just past the last user row, where rows of new users are inserted
+    private int rowsEnd;
 
     // Modern color scheme
     private static final Color PRIMARY_COLOR = new Color(64, 128, 255);
@@ -128,7 +133,7 @@ public class ParticipantListView extends JFrame implements Observer {
         statsPanel.setLayout(new BoxLayout(statsPanel, BoxLayout.Y_AXIS));
         statsPanel.setBackground(CARD_COLOR);
 
-        JLabel countLabel = new JLabel("👤 " + participantModel.getParticipants().size() + " users");
+        countLabel = new JLabel("👤 " + participantModel.getParticipants().size() + " users");
         countLabel.setFont(new Font("Segoe UI", Font.BOLD, 14));
         countLabel.setForeground(SUCCESS_COLOR);
         countLabel.setAlignmentX(Component.RIGHT_ALIGNMENT);
@@ -226,10 +231,38 @@ public class ParticipantListView extends JFrame implements Observer {
 
     /**
      * Called when the participant model is updated.
+     * Added and removed users are applied to the displayed list without rebuilding it.
      */
     @Override
     public void update(Observable o, Object arg) {
-        displayUsers();
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> update(o, arg));
+            return;
+        }
+
+        int count = participantModel.getParticipants().size();
+        countLabel.setText("👤 " + count + " users");
+        if (!(arg instanceof ParticipantEvent) || rowsEnd == 0 || count == 0) {
+            // Nothing to patch, or switching to or from the empty list
+            displayUsers();
+            return;
+        }
+
+        ParticipantEvent event = (ParticipantEvent) arg;
+        String row = formatRow(event.getUser());
+        if (event.getType() == ParticipantEvent.Type.ADDED) {
+            userListTextArea.insert(row, rowsEnd);
+            rowsEnd += row.length();
+        } else {
+            int start = userListTextArea.getText().lastIndexOf(row, rowsEnd - row.length());
+            if (start < 0) {
+                displayUsers();
+                return;
+            }
+            userListTextArea.replaceRange("", start, start + row.length());
+            rowsEnd -= row.length();
+        }
+        userListTextArea.replaceRange(formatFooter(count), rowsEnd, userListTextArea.getDocument().getLength());
     }
 
     /**
@@ -237,6 +270,7 @@ public class ParticipantListView extends JFrame implements Observer {
      */
     public void displayUsers() {
         userListTextArea.setText(""); // Clear text area
+        rowsEnd = 0;
 
         if (participantModel.getParticipants().isEmpty()) {
             userListTextArea.append("🚫 No users registered yet.\n\n");
@@ -253,22 +287,34 @@ public class ParticipantListView extends JFrame implements Observer {
 
         // User list with modern formatting
         for (User user : participantModel.getParticipants()) {
-            String status = "🟢 Online";
-            userListTextArea.append(String.format("   %-12s   %-15s   %s\n",
-                user.getId(), user.getPseudoName(), status));
+            userListTextArea.append(formatRow(user));
         }
+        rowsEnd = userListTextArea.getDocument().getLength();
 
         // Footer with statistics
-        userListTextArea.append("\n" + repeatString("─", 50) + "\n");
-        userListTextArea.append(String.format("📊 Total Users: %d  |  🔒 All Encrypted  |  🌐 Active Community\n",
-            participantModel.getParticipants().size()));
-
-        userListTextArea.append("\n💬 Ready to start secure conversations!");
+        userListTextArea.append(formatFooter(participantModel.getParticipants().size()));
 
         // Auto-scroll to top
         userListTextArea.setCaretPosition(0);
     }
 
+    /**
+     * Formats the row of one user.
+     */
+    private String formatRow(User user) {
+        String status = "🟢 Online";
+        return String.format("   %-12s   %-15s   %s\n", user.getId(), user.getPseudoName(), status);
+    }
+
+    /**
+     * Formats the statistics shown after the user rows.
+     */
+    private String formatFooter(int count) {
+        return "\n" + repeatString("─", 50) + "\n"
+            + String.format("📊 Total Users: %d  |  🔒 All Encrypted  |  🌐 Active Community\n", count)
+            + "\n💬 Ready to start secure conversations!";
+    }
+
     /**
      * Helper method to repeat a string n times (Java 8 compatible)
      * @param str the string to repeat
@@ -1,5 +1,6 @@
 package com.securechat.view;
 
+import com.securechat.model.ParticipantEvent;
 import com.securechat.model.ParticipantListModel;
 
 import javax.swing.*;
@@ -274,7 +275,12 @@ public class RegisterView extends JFrame implements Observer {
             return;
         }
 
-        participantModel.registerParticipant(id, pseudo, password);
+        try {
+            participantModel.registerParticipant(id, pseudo, password);
+        } catch (IllegalArgumentException e) {
+            showModernDialog(e.getMessage() + ".", "Registration Failed", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
         clearFields();
     }
 
@@ -301,6 +307,9 @@ public class RegisterView extends JFrame implements Observer {
      */
     @Override
     public void update(Observable o, Object arg) {
+        if (arg instanceof ParticipantEvent && ((ParticipantEvent) arg).getType() != ParticipantEvent.Type.ADDED) {
+            return;
+        }
         showModernDialog("Account created successfully! You can now log in.", "Registration Complete", JOptionPane.INFORMATION_MESSAGE);
         dispose(); // Close the registration window
     }
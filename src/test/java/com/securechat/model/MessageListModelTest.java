@@ -0,0 +1,212 @@
+package com.securechat.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for MessageListModel class.
+ * Tests the conversation and inbox indexes, history paging and change events.
+ */
+public class MessageListModelTest {
+
+    private MessageListModel messageModel;
+
+    @BeforeEach
+    void setUp() {
+        messageModel = new MessageListModel();
+    }
+
+    @Test
+    void testConversationHoldsBothDirections() {
+        messageModel.sendMessage("alice", "bob", "Hi Bob", new byte[1]);
+        messageModel.sendMessage("alice", "charlie", "Hi Charlie", new byte[1]);
+        messageModel.sendMessage("bob", "alice", "Hi Alice", new byte[1]);
+
+        assertEquals(contents("Hi Bob", "Hi Alice"), contents(messageModel.getConversation("alice", "bob")),
+                "Conversation should hold both directions in order");
+        assertEquals(contents("Hi Bob", "Hi Alice"), contents(messageModel.getConversation("bob", "alice")),
+                "Participant order should not matter");
+        assertTrue(messageModel.getConversation("bob", "charlie").isEmpty());
+    }
+
+    @Test
+    void testInboxHoldsSentReceivedAndGroupMessages() {
+        Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+        wrappedKeys.put("bob", new byte[1]);
+        wrappedKeys.put("charlie", new byte[1]);
+        messageModel.sendMessage("alice", "bob", "Hi Bob", new byte[1]);
+        messageModel.sendGroupMessage("alice", "Everyone", "Hi all", new byte[1], wrappedKeys, null);
+        messageModel.sendMessage("charlie", "bob", "Hi from Charlie", new byte[1]);
+        messageModel.sendMessage("dave", "erin", "Unrelated", new byte[1]);
+
+        assertEquals(contents("Hi Bob", "Hi all", "Hi from Charlie"), contents(messageModel.getInbox("bob")));
+        assertEquals(contents("Hi all", "Hi from Charlie"), contents(messageModel.getInbox("charlie")));
+        assertEquals(contents("Hi Bob", "Hi all"), contents(messageModel.getInbox("alice")),
+                "Inbox should include sent messages");
+    }
+
+    @Test
+    void testIndexSeesReplacedMessages() {
+        messageModel.sendMessage("alice", "bob", "Original", new byte[1]);
+        Message stored = messageModel.getMessages().get(0);
+        Map<Message, Message> replacements = new LinkedHashMap<>();
+        replacements.put(stored, new Message("alice", "bob", "Replaced", new byte[1]));
+
+        assertEquals(1, messageModel.replaceMessages(replacements));
+        assertEquals(contents("Replaced"), contents(messageModel.getInbox("bob")),
+                "Index should resolve the replacement");
+    }
+
+    @Test
+    void testHistoryPagesReadBackwards() {
+        for (int i = 0; i < 120; i++) {
+            messageModel.sendMessage("alice", "bob", "Message " + i, new byte[1]);
+            messageModel.sendMessage("charlie", "dave", "Other " + i, new byte[1]);
+        }
+
+        HistoryPage newest = messageModel.getInboxPage("bob", HistoryPage.LATEST, 50);
+        assertEquals(50, newest.getMessages().size());
+        assertEquals("Message 70", newest.getMessages().get(0).getOriginalContent(), "Page should hold the newest messages");
+        assertEquals("Message 119", newest.getMessages().get(49).getOriginalContent(), "Page should be oldest first");
+        assertTrue(newest.hasOlder());
+
+        HistoryPage older = messageModel.getInboxPage("bob", newest.getOlderCursor(), 50);
+        assertEquals("Message 20", older.getMessages().get(0).getOriginalContent());
+        HistoryPage oldest = messageModel.getConversationPage("bob", "alice", older.getOlderCursor(), 50);
+        assertEquals(20, oldest.getMessages().size());
+        assertEquals("Message 0", oldest.getMessages().get(0).getOriginalContent());
+        assertFalse(oldest.hasOlder(), "Last page should report no older messages");
+    }
+
+    @Test
+    void testInboxBetweenSelectsByTime() {
+        long before = System.currentTimeMillis();
+        messageModel.sendMessage("alice", "bob", "Hi Bob", new byte[1]);
+        messageModel.sendMessage("alice", "charlie", "Hi Charlie", new byte[1]);
+        long after = System.currentTimeMillis() + 1;
+
+        assertEquals(contents("Hi Bob"), contents(messageModel.getInboxBetween("bob", before, after)));
+        assertTrue(messageModel.getInboxBetween("bob", after, Long.MAX_VALUE).isEmpty(),
+                "Messages before the range should be excluded");
+        assertTrue(messageModel.getInboxBetween("bob", 0, before).isEmpty(),
+                "Messages after the range should be excluded");
+    }
+
+    @Test
+    void testInboxSinceLastLogin() throws Exception {
+        messageModel.sendMessage("alice", "bob", "Before", new byte[1]);
+        Thread.sleep(5);
+        long lastLogin = System.currentTimeMillis();
+        messageModel.sendMessage("alice", "bob", "After", new byte[1]);
+        messageModel.sendMessage("bob", "charlie", "Reply", new byte[1]);
+
+        assertEquals(contents("After", "Reply"), contents(messageModel.getInboxSince("bob", lastLogin)));
+        assertEquals(contents("Before"), contents(messageModel.getMessagesBetween(0, lastLogin)));
+        assertTrue(messageModel.getInboxSince("bob", System.currentTimeMillis() + 1).isEmpty());
+    }
+
+    @Test
+    void testAppendedEventsCoverEveryMessageOnce() throws Exception {
+        List<MessageEvent> events = new ArrayList<>();
+        messageModel.addObserver((o, arg) -> events.add((MessageEvent) arg));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Void>> sends = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                sends.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        messageModel.sendMessage("alice", "bob", "Hello", new byte[1]);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executor.shutdown();
+        }
+
+        long next = 0;
+        for (MessageEvent event : events) {
+            assertEquals(MessageEvent.Type.APPENDED, event.getType());
+            assertEquals(next, event.getFromSequence(), "Appended ranges should follow each other without gaps");
+            next = event.getToSequence();
+        }
+        assertEquals(2000, next, "Appended ranges should cover every message");
+    }
+
+    @Test
+    void testReplacedEventCoversReplacedMessages() {
+        for (int i = 0; i < 5; i++) {
+            messageModel.sendMessage("alice", "bob", "Message " + i, new byte[1]);
+        }
+        List<MessageEvent> events = new ArrayList<>();
+        messageModel.addObserver((o, arg) -> events.add((MessageEvent) arg));
+        Map<Message, Message> replacements = new LinkedHashMap<>();
+        replacements.put(messageModel.getMessages().get(3), new Message("alice", "bob", "Message 3", new byte[1]));
+        replacements.put(messageModel.getMessages().get(1), new Message("alice", "bob", "Message 1", new byte[1]));
+
+        messageModel.replaceMessages(replacements);
+
+        assertEquals(1, events.size(), "Replacements should be notified once");
+        assertEquals(MessageEvent.Type.REPLACED, events.get(0).getType());
+        assertEquals(1, events.get(0).getFromSequence());
+        assertEquals(4, events.get(0).getToSequence());
+    }
+
+    @Test
+    void testParticipantsAreInternedToIds() {
+        ParticipantListModel participants = new ParticipantListModel();
+        participants.registerParticipant("1", "alice", "secret");
+        participants.registerParticipant("2", "team", "secret");
+        User alice = participants.getUserByPseudo("alice");
+        messageModel = new MessageListModel(null, participants.getParticipantIds());
+        Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+        wrappedKeys.put(new String("alice"), new byte[] {1});
+        wrappedKeys.put("bob", new byte[] {2});
+        // Names decoded from the journal are distinct String instances
+        messageModel.sendMessage(new String("bob"), new String("alice"), "Hi", new byte[1]);
+        messageModel.sendGroupMessage("bob", "team", "Hi team", new byte[1], wrappedKeys, null);
+        messageModel.sendMessage("bob", "team", "Hi, user named team", new byte[1]);
+        Message direct = messageModel.getMessages().get(0);
+        GroupMessage group = (GroupMessage) messageModel.getMessages().get(1);
+        Message toUser = messageModel.getMessages().get(2);
+        int aliceId = participants.getParticipantIds().userId("alice");
+
+        assertSame(participants.getParticipantIds(), direct.getParticipantIds(), "Messages should hold the model's ids");
+        assertEquals(aliceId, direct.getReceiverId(), "Equal names should share one id");
+        assertSame(alice.getPseudoName(), direct.getReceiver(), "Names should be shared with the participant model");
+        assertSame(alice, participants.getUserByParticipantId(direct.getReceiverId()));
+        assertTrue(group.isRecipient(aliceId));
+        assertArrayEquals(new byte[] {2}, group.getWrappedKey("bob"));
+        assertNull(group.getWrappedKey("nobody"), "Unknown names should match no recipient");
+        assertNotEquals(group.getReceiverId(), toUser.getReceiverId(), "Groups and users should not share ids");
+        assertNull(participants.getUserByParticipantId(group.getReceiverId()), "A group id should resolve to no user");
+        assertEquals(contents("Hi, user named team"), contents(messageModel.getInbox("team")),
+                "A user named like a group should not receive the group's messages");
+        assertEquals(2, messageModel.getInbox("alice").size(), "Inboxes should be indexed by id");
+        assertTrue(messageModel.getInbox("nobody").isEmpty());
+        assertEquals(ParticipantIds.UNKNOWN, new ParticipantListModel().getParticipantIds().userId("alice"),
+                "Each participant model should own its ids");
+    }
+
+    private static List<String> contents(String... contents) {
+        return Arrays.asList(contents);
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        List<String> list = new ArrayList<>();
+        for (Message message : messages) {
+            list.add(message.getOriginalContent());
+        }
+        return list;
+    }
+}
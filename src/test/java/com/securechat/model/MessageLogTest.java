@@ -0,0 +1,155 @@
+package com.securechat.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for MessageLog class.
+ * Tests sequence numbers, timestamps, snapshots, cursors, replacement and concurrent appends.
+ */
+public class MessageLogTest {
+
+    private MessageLog log;
+
+    @BeforeEach
+    void setUp() {
+        log = new MessageLog();
+    }
+
+    @Test
+    void testAppendAssignsSequenceNumbersAcrossSegments() {
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i, log.append(message(i)), "Sequence numbers should follow append order");
+        }
+
+        assertEquals(3000, log.size());
+        assertEquals("Message 2999", log.get(2999).getOriginalContent());
+        assertEquals(1500, log.get(1500).getSequence(), "Stored messages should know their sequence number");
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(3000));
+    }
+
+    @Test
+    void testSnapshotKeepsItsSize() {
+        log.append(message(0));
+        log.append(message(1));
+        List<Message> snapshot = log.snapshot();
+
+        log.append(message(2));
+
+        assertEquals(2, snapshot.size(), "Snapshot should not see later appends");
+        assertEquals(3, log.snapshot().size());
+        assertEquals("Message 2", log.since(2).get(0).getOriginalContent());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(message(3)));
+    }
+
+    @Test
+    void testCursorFollowsAppends() {
+        log.append(message(0));
+        MessageLog.Cursor cursor = log.cursor(0);
+
+        assertEquals("Message 0", cursor.next().getOriginalContent());
+        assertFalse(cursor.hasNext());
+        log.append(message(1));
+        assertTrue(cursor.hasNext(), "Cursor should see messages appended after it was opened");
+        assertEquals("Message 1", cursor.next().getOriginalContent());
+        assertEquals(2, cursor.getPosition());
+    }
+
+    @Test
+    void testReplaceKeepsSequenceNumber() {
+        log.append(message(0));
+        Message stored = message(1);
+        log.append(stored);
+        Message replacement = message(2);
+
+        assertTrue(log.replace(stored, replacement));
+        assertSame(replacement, log.get(1));
+        assertEquals(1, replacement.getSequence(), "Replacement should take over the sequence number");
+        assertFalse(log.replace(stored, message(3)), "Replaced message should not be replaced again");
+    }
+
+    @Test
+    void testTimeRangesAcrossSegments() {
+        // Three messages per millisecond, across three segments
+        for (int i = 0; i < 3000; i++) {
+            log.restore(message(i), 1000 + i / 3);
+        }
+        log.restore(message(3000), 500);
+
+        assertEquals(1999, log.get(3000).getTimestamp(), "A timestamp behind the clock should be moved up");
+        assertEquals(0, log.sequenceAt(0));
+        assertEquals(1500, log.sequenceAt(1500), "First message of a millisecond should be found");
+        assertEquals(3000 - 3, log.sequenceAt(1999));
+        assertEquals(3001, log.sequenceAt(2000), "Every message older should give the log size");
+
+        MessageLog.Snapshot range = log.between(1341, 1342);
+        assertEquals(3, range.size());
+        assertEquals(1023, range.getStartSequence(), "Range should span the segment boundary");
+        assertEquals(0, log.between(5000, 6000).size());
+        assertEquals(0, log.between(1500, 1500).size());
+    }
+
+    @Test
+    void testConcurrentAppends() throws Exception {
+        int threads = 4;
+        int perThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<Void>> appends = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * perThread;
+                appends.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        log.append(message(offset + i));
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Message> messages = log.snapshot();
+        assertEquals(threads * perThread, messages.size(), "Every append should be published");
+        Set<String> contents = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(i, messages.get(i).getSequence(), "Sequence numbers should match positions");
+            if (i > 0) {
+                assertTrue(messages.get(i).getTimestamp() >= messages.get(i - 1).getTimestamp(),
+                        "Timestamps should never decrease along the log");
+            }
+            contents.add(messages.get(i).getOriginalContent());
+        }
+        assertEquals(threads * perThread, contents.size(), "No message should be lost or duplicated");
+    }
+
+    @Test
+    void testFailedStoreHookDoesNotStallPublishing() {
+        Message broken = message(1);
+        MessageLog hooked = new MessageLog(message -> {
+            if (message == broken) {
+                throw new IllegalStateException("Index full");
+            }
+        });
+        hooked.append(message(0));
+
+        assertThrows(IllegalStateException.class, () -> hooked.append(broken), "The hook's failure should reach the sender");
+        hooked.append(message(2));
+
+        assertEquals(3, hooked.size(), "Appends after a failed hook should still be published");
+        assertSame(broken, hooked.get(1));
+    }
+
+    private static Message message(int i) {
+        return new Message("alice", "bob", "Message " + i, new byte[] {(byte) i});
+    }
+}
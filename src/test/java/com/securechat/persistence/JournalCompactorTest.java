@@ -0,0 +1,244 @@
+package com.securechat.persistence;
+
+import com.securechat.model.HistoryPage;
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+import com.securechat.model.ParticipantIds;
+import com.securechat.model.User;
+import com.securechat.security.KeyRotationJob;
+import com.securechat.security.MessageProxy;
+import com.securechat.security.RSAUtil;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for JournalCompactor class.
+ * Tests retention by count and age, sparse segment rewrites and cold storage, each across a restart,
+ * and key rotation of archived messages.
+ */
+public class JournalCompactorTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    private static final long HOUR = 3600000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCountRetentionKeepsNewestMessagesPerConversation() throws Exception {
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 10; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            for (int i = 0; i < 3; i++) {
+                messageModel.sendMessage("charlie", "alice", "Other " + i, new byte[] {(byte) (100 + i)});
+            }
+            RetentionPolicy retention = RetentionPolicy.KEEP_ALL.withConversation("bob", "alice", Long.MAX_VALUE, 4);
+            JournalCompactor compactor = new JournalCompactor(journal, retention, Long.MAX_VALUE);
+            compactor.compact();
+            assertEquals(6, compactor.getDeletedCount(), "Messages beyond the conversation's count should be deleted");
+            messageModel.sendMessage("alice", "bob", "After compaction", new byte[] {42});
+        }
+
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            List<Message> conversation = messageModel.getConversation("alice", "bob");
+            assertEquals(5, conversation.size(), "Deleted messages should not be recovered");
+            assertArrayEquals(new byte[] {6}, conversation.get(0).getCiphertext());
+            assertArrayEquals(new byte[] {42}, conversation.get(4).getCiphertext());
+            assertEquals(3, messageModel.getConversation("alice", "charlie").size(), "Other conversations keep their messages");
+            assertEquals(7, conversation.get(4).getSequence(), "Restored messages should be numbered without gaps");
+        }
+    }
+
+    @Test
+    void testReplacementsDoNotRestoreDeletedMessages() throws Exception {
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 5; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            RetentionPolicy retention = RetentionPolicy.KEEP_ALL.withConversation("bob", "alice", Long.MAX_VALUE, 2);
+            new JournalCompactor(journal, retention, Long.MAX_VALUE).compact();
+            // The deleted messages are still in the message log until the next restart
+            Map<Message, Message> replacements = new LinkedHashMap<>();
+            replacements.put(messageModel.getMessages().get(0), new Message("alice", "bob", null, new byte[] {-1}));
+            replacements.put(messageModel.getMessages().get(4), new Message("alice", "bob", null, new byte[] {-5}));
+            assertEquals(2, messageModel.replaceMessages(replacements));
+        }
+
+        try (MessageJournal journal = open()) {
+            List<Message> conversation = new MessageListModel(journal).getConversation("alice", "bob");
+            assertEquals(2, conversation.size(), "A replaced message should stay deleted");
+            assertArrayEquals(new byte[] {3}, conversation.get(0).getCiphertext());
+            assertArrayEquals(new byte[] {-5}, conversation.get(1).getCiphertext(), "Live messages should be replaced");
+        }
+    }
+
+    @Test
+    void testExpiredSegmentsAreRewrittenAndDeleted() throws Exception {
+        long before;
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 20; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            before = segmentBytes();
+            JournalCompactor compactor = new JournalCompactor(journal, new RetentionPolicy(HOUR, Integer.MAX_VALUE),
+                    Long.MAX_VALUE);
+            compactor.compact(System.currentTimeMillis() + 2 * HOUR);
+            assertEquals(20, compactor.getDeletedCount());
+            // The tombstones were written to later segments, so a second pass can drop the sealed ones
+            compactor.compact(System.currentTimeMillis() + 2 * HOUR);
+            assertTrue(compactor.getArchivedCount() + compactor.getRewrittenCount() > 0, "Dead segments should be compacted");
+        }
+
+        assertTrue(segmentBytes() < before, "Compaction should free disk space");
+        try (MessageJournal journal = open()) {
+            assertEquals(0, journal.getRecoveredEntries().size(), "Expired messages should not be recovered");
+            MessageListModel messageModel = new MessageListModel(journal);
+            messageModel.sendMessage("alice", "bob", "New", new byte[] {1});
+            assertEquals(1, messageModel.getMessageCount());
+        }
+    }
+
+    @Test
+    void testSupersededRecordsAreRewritten() throws Exception {
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 10; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            Map<Message, Message> replacements = new LinkedHashMap<>();
+            for (int i = 1; i < 10; i++) {
+                replacements.put(messageModel.getMessages().get(i), new Message("alice", "bob", null, new byte[] {(byte) -i}));
+            }
+            messageModel.replaceMessages(replacements);
+
+            JournalCompactor compactor = new JournalCompactor(journal, RetentionPolicy.KEEP_ALL, Long.MAX_VALUE);
+            compactor.compact();
+            assertTrue(compactor.getRewrittenCount() > 0, "Segments of replaced messages should be rewritten");
+            assertEquals(0, compactor.getDeletedCount());
+        }
+
+        try (MessageJournal journal = open()) {
+            List<Message> messages = new MessageListModel(journal).getMessages();
+            assertEquals(10, messages.size());
+            assertArrayEquals(new byte[] {0}, messages.get(0).getCiphertext(), "Live records should survive rewrites");
+            assertArrayEquals(new byte[] {-9}, messages.get(9).getCiphertext(), "Latest version should win");
+        }
+    }
+
+    @Test
+    void testOldSegmentsMoveToColdStorage() throws Exception {
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 20; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+                messageModel.sendMessage("charlie", "dave", "Unrelated " + i, new byte[] {(byte) i});
+            }
+            JournalCompactor compactor = new JournalCompactor(journal, RetentionPolicy.KEEP_ALL, HOUR);
+            compactor.compact(System.currentTimeMillis() + 2 * HOUR);
+            assertTrue(compactor.getArchivedCount() > 0, "Old segments should move to cold storage");
+            assertTrue(messageModel.getArchivedInboxPage("bob", HistoryPage.LATEST, 10).getMessages().isEmpty(),
+                    "Messages still in the message log should not be read again from the archive");
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.anyMatch(file -> file.toString().endsWith(ColdSegment.SUFFIX)));
+        }
+        try (MessageJournal journal = open()) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            List<Message> hot = messageModel.getInbox("bob");
+            assertTrue(hot.size() < 20, "Archived messages should not be recovered");
+
+            HistoryPage page = messageModel.getArchivedInboxPage("bob", HistoryPage.LATEST, 5);
+            int archived = 0;
+            int expected = 20 - hot.size() - 1;
+            while (!page.getMessages().isEmpty()) {
+                List<Message> messages = page.getMessages();
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    assertArrayEquals(new byte[] {(byte) expected--}, messages.get(i).getCiphertext(),
+                            "Archived pages should be read newest first without gaps");
+                    assertEquals("bob", messages.get(i).getReceiver());
+                    assertTrue(messages.get(i).getTimestamp() > 0);
+                }
+                archived += messages.size();
+                if (!page.hasOlder()) {
+                    break;
+                }
+                page = messageModel.getArchivedInboxPage("bob", page.getOlderCursor(), 5);
+            }
+            assertEquals(20, hot.size() + archived, "Every message should be readable, hot or archived");
+            assertTrue(messageModel.getArchivedInboxPage("nobody", HistoryPage.LATEST, 5).getMessages().isEmpty());
+            assertEquals(ParticipantIds.UNKNOWN, messageModel.getParticipantIds().userId("nobody"),
+                    "Reading the archive should not intern the names looked up");
+
+            JournalCompactor compactor = new JournalCompactor(journal,
+                    RetentionPolicy.KEEP_ALL.withConversation("alice", "bob", Long.MAX_VALUE, 2), HOUR);
+            compactor.compact(System.currentTimeMillis() + 2 * HOUR);
+            int remaining = messageModel.getArchivedInboxPage("bob", HistoryPage.LATEST, 50).getMessages().size();
+            assertTrue(remaining < archived, "Retention should apply to cold segments");
+        }
+    }
+
+    @Test
+    void testKeyRotationRewrapsArchivedMessages() throws Exception {
+        User alice = new User("1", "alice", "hash");
+        User bob = new User("2", "bob", "hash");
+        try (MessageJournal journal = open(4096)) {
+            MessageProxy messageProxy = new MessageProxy(new MessageListModel(journal));
+            for (int i = 0; i < 20; i++) {
+                messageProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+            }
+            JournalCompactor compactor = new JournalCompactor(journal, RetentionPolicy.KEEP_ALL, HOUR);
+            compactor.compact(System.currentTimeMillis() + 2 * HOUR);
+            assertTrue(compactor.getArchivedCount() > 0, "Old segments should move to cold storage");
+        }
+
+        try (MessageJournal journal = open(4096)) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            int hot = messageModel.getInbox("bob").size();
+            long rewrapped = new KeyRotationJob(messageModel, bob, null, null, RSAUtil::generateKeyPair,
+                    ForkJoinPool.commonPool(), 4, 0).start().join();
+            assertEquals(20, rewrapped, "Hot and archived messages should be re-wrapped");
+            assertNull(bob.getPreviousPrivateKey(), "Previous key should be retired");
+
+            List<Message> archived = messageModel.getArchivedInboxPage("bob", HistoryPage.LATEST, 50).getMessages();
+            assertEquals(20 - hot, archived.size(), "Archived messages should keep their place in cold storage");
+            MessageProxy freshProxy = new MessageProxy(messageModel);
+            assertEquals("Message 0", freshProxy.decryptMessage(archived.get(0), bob),
+                    "Archived message should decrypt with the new key");
+            assertTrue(freshProxy.verifyMessage(archived.get(0), alice), "Signature should survive re-wrapping");
+        }
+    }
+
+    private MessageJournal open() {
+        return open(SEGMENT_SIZE);
+    }
+
+    private MessageJournal open(int segmentSize) {
+        return new MessageJournal(tempDir, segmentSize, MessageJournal.DEFAULT_FLUSH_MILLIS);
+    }
+
+    private long segmentBytes() throws Exception {
+        long bytes = 0;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                bytes += Files.size(file);
+            }
+        }
+        return bytes;
+    }
+}
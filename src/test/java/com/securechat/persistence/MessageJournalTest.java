@@ -0,0 +1,141 @@
+package com.securechat.persistence;
+
+import com.securechat.model.AttachmentMessage;
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for MessageJournal class.
+ * Tests recovery of every message type, replacements, segment rollover, torn tails and group commit.
+ */
+public class MessageJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMessagesAreRecovered() throws Exception {
+        Map<String, byte[]> wrappedKeys = new LinkedHashMap<>();
+        wrappedKeys.put("bob", new byte[] {1, 2});
+        wrappedKeys.put("charlie", new byte[] {3});
+        try (MessageJournal journal = open(MessageJournal.DEFAULT_SEGMENT_SIZE)) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            messageModel.sendMessage("alice", "bob", "Secret", new byte[] {9, 8, 7}, new byte[] {5});
+            messageModel.sendGroupMessage("alice", "Everyone", "Hello all", new byte[] {6}, wrappedKeys, null);
+            messageModel.sendAttachment("bob", "alice", "notes.txt", 42, Paths.get("attachments", "a.enc"),
+                    new byte[] {4}, new byte[] {3}, new byte[] {2});
+        }
+
+        try (MessageJournal journal = open(MessageJournal.DEFAULT_SEGMENT_SIZE)) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            List<Message> messages = messageModel.getMessages();
+
+            assertEquals(3, messages.size(), "All messages should be recovered");
+            assertFalse(journal.wasTruncated());
+            assertArrayEquals(new byte[] {9, 8, 7}, messages.get(0).getCiphertext());
+            assertArrayEquals(new byte[] {5}, messages.get(0).getSignature());
+            assertNull(messages.get(0).getOriginalContent(), "Clear text should never be written to disk");
+            assertTrue(messages.get(0).getTimestamp() > 0, "Timestamp should be recovered");
+            GroupMessage group = (GroupMessage) messages.get(1);
+            assertEquals("Everyone", group.getGroupName());
+            assertArrayEquals(new byte[] {1, 2}, group.getWrappedKey("bob"));
+            assertNull(group.getSignature());
+            AttachmentMessage attachment = (AttachmentMessage) messages.get(2);
+            assertEquals("notes.txt", attachment.getFileName());
+            assertEquals(42, attachment.getFileSize());
+            assertArrayEquals(new byte[] {3}, attachment.getKeyCommitment());
+            assertEquals(2, attachment.getSequence());
+            assertEquals(1, messageModel.getInbox("charlie").size(), "Recovered messages should be indexed");
+        }
+    }
+
+    @Test
+    void testReplacementsAndRolloverAreRecovered() throws Exception {
+        try (MessageJournal journal = open(256)) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 20; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            Map<Message, Message> replacements = new LinkedHashMap<>();
+            replacements.put(messageModel.getMessages().get(3), new Message("alice", "bob", null, new byte[] {99}));
+            messageModel.replaceMessages(replacements);
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertTrue(files.count() > 1, "Small segments should roll over");
+        }
+        try (MessageJournal journal = open(256)) {
+            List<Message> messages = new MessageListModel(journal).getMessages();
+            assertEquals(20, messages.size());
+            assertArrayEquals(new byte[] {99}, messages.get(3).getCiphertext(), "Latest version should win");
+            assertArrayEquals(new byte[] {19}, messages.get(19).getCiphertext());
+        }
+    }
+
+    @Test
+    void testTornTailIsTruncated() throws Exception {
+        long written;
+        try (MessageJournal journal = open(MessageJournal.DEFAULT_SEGMENT_SIZE)) {
+            MessageListModel messageModel = new MessageListModel(journal);
+            for (int i = 0; i < 3; i++) {
+                messageModel.sendMessage("alice", "bob", "Message " + i, new byte[] {(byte) i});
+            }
+            written = journal.getByteCount();
+        }
+        // Damage the last byte of the last record, as a crash in the middle of the write would
+        try (RandomAccessFile file = new RandomAccessFile(tempDir.resolve("0000000000.seg").toFile(), "rw")) {
+            file.seek(written - 1);
+            int last = file.read();
+            file.seek(written - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        try (MessageJournal journal = open(MessageJournal.DEFAULT_SEGMENT_SIZE)) {
+            assertTrue(journal.wasTruncated(), "Damaged record should be detected");
+            MessageListModel messageModel = new MessageListModel(journal);
+            assertEquals(2, messageModel.getMessages().size(), "Records before the torn one should survive");
+            messageModel.sendMessage("alice", "bob", "After recovery", new byte[] {42});
+        }
+        try (MessageJournal journal = open(MessageJournal.DEFAULT_SEGMENT_SIZE)) {
+            assertFalse(journal.wasTruncated(), "Truncated journal should end cleanly");
+            assertEquals(3, journal.getRecoveredEntries().size());
+            assertEquals(2, journal.getRecoveredEntries().get(2).getSequence());
+        }
+    }
+
+    @Test
+    void testAppendsAreCommittedInGroups() throws Exception {
+        try (MessageJournal journal = new MessageJournal(tempDir, MessageJournal.DEFAULT_SEGMENT_SIZE, 60000)) {
+            MessageListModel messageModel = new MessageListModel();
+            messageModel.sendMessage("alice", "bob", "First", new byte[1]);
+            messageModel.sendMessage("alice", "bob", "Second", new byte[1]);
+            CompletableFuture<Void> first = journal.append(messageModel.getMessages().get(0));
+            CompletableFuture<Void> second = journal.append(messageModel.getMessages().get(1));
+
+            assertFalse(first.isDone(), "Appends should not wait for the disk");
+            journal.flush();
+            assertTrue(first.isDone() && second.isDone(), "Flush should make every pending append durable");
+            assertEquals(2, journal.getRecordCount());
+            assertEquals(1, journal.getCommitCount(), "Both appends should be made durable by one flush");
+        }
+    }
+
+    private MessageJournal open(int segmentSize) {
+        return new MessageJournal(tempDir, segmentSize, MessageJournal.DEFAULT_FLUSH_MILLIS);
+    }
+}
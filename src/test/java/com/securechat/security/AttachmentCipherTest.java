@@ -0,0 +1,115 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import javax.crypto.SecretKey;
+
+/**
+ * Unit tests for AttachmentCipher class.
+ * Tests chunked file encryption, decryption and tamper detection.
+ */
+public class AttachmentCipherTest {
+    
+    private static final int CHUNK_SIZE = 1024;
+    
+    @TempDir
+    Path tempDir;
+    
+    private Path writeRandomFile(String name, int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return Files.write(tempDir.resolve(name), data);
+    }
+    
+    @Test
+    void testMultiChunkRoundTrip() throws Exception {
+        Path source = writeRandomFile("plain.bin", CHUNK_SIZE * 5 + 123);
+        Path encrypted = tempDir.resolve("plain.enc");
+        Path decrypted = tempDir.resolve("plain.out");
+        SecretKey key = RSAUtil.generateContentKey();
+        
+        AttachmentCipher.encryptFile(source, encrypted, key, CHUNK_SIZE);
+        long written = AttachmentCipher.decryptFile(encrypted, decrypted, key);
+        
+        assertEquals(Files.size(source), written, "All bytes should be decrypted");
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(decrypted), "Content should round-trip");
+    }
+    
+    @Test
+    void testExactChunkMultipleAndEmptyFile() throws Exception {
+        SecretKey key = RSAUtil.generateContentKey();
+        for (int size : new int[] {0, CHUNK_SIZE, CHUNK_SIZE * 3}) {
+            Path source = writeRandomFile("file-" + size, size);
+            Path encrypted = tempDir.resolve("file-" + size + ".enc");
+            Path decrypted = tempDir.resolve("file-" + size + ".out");
+            
+            AttachmentCipher.encryptFile(source, encrypted, key, CHUNK_SIZE);
+            AttachmentCipher.decryptFile(encrypted, decrypted, key);
+            
+            assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(decrypted), "Size " + size + " should round-trip");
+        }
+    }
+    
+    @Test
+    void testTamperedChunkIsRejected() throws Exception {
+        Path source = writeRandomFile("plain.bin", CHUNK_SIZE * 3);
+        Path encrypted = tempDir.resolve("plain.enc");
+        Path decrypted = tempDir.resolve("plain.out");
+        SecretKey key = RSAUtil.generateContentKey();
+        AttachmentCipher.encryptFile(source, encrypted, key, CHUNK_SIZE);
+        
+        byte[] data = Files.readAllBytes(encrypted);
+        data[data.length / 2] ^= 1;
+        Files.write(encrypted, data);
+        
+        assertThrows(RuntimeException.class, () -> AttachmentCipher.decryptFile(encrypted, decrypted, key),
+            "Tampered chunk should fail authentication");
+        assertFalse(Files.exists(decrypted), "Partial output should be removed");
+    }
+    
+    @Test
+    void testTamperedHeaderIsRejected() throws Exception {
+        Path source = writeRandomFile("plain.bin", CHUNK_SIZE / 2);
+        Path encrypted = tempDir.resolve("plain.enc");
+        Path decrypted = tempDir.resolve("plain.out");
+        SecretKey key = RSAUtil.generateContentKey();
+        AttachmentCipher.encryptFile(source, encrypted, key, CHUNK_SIZE);
+        byte[] data = Files.readAllBytes(encrypted);
+        
+        // A single chunk would still be read whole with a larger chunk size
+        ByteBuffer.wrap(data).putInt(4, CHUNK_SIZE * 2);
+        Files.write(encrypted, data);
+        assertThrows(RuntimeException.class, () -> AttachmentCipher.decryptFile(encrypted, decrypted, key),
+            "A changed header should fail authentication");
+        
+        ByteBuffer.wrap(data).putInt(4, Integer.MAX_VALUE);
+        Files.write(encrypted, data);
+        assertThrows(RuntimeException.class, () -> AttachmentCipher.decryptFile(encrypted, decrypted, key),
+            "An oversized chunk size should be rejected before allocating");
+        assertFalse(Files.exists(decrypted), "Partial output should be removed");
+    }
+    
+    @Test
+    void testTruncatedFileIsRejected() throws Exception {
+        Path source = writeRandomFile("plain.bin", CHUNK_SIZE * 3);
+        Path encrypted = tempDir.resolve("plain.enc");
+        SecretKey key = RSAUtil.generateContentKey();
+        AttachmentCipher.encryptFile(source, encrypted, key, CHUNK_SIZE);
+        
+        // Drop the last chunk entirely; the previous chunk was not sealed as the last one
+        try (FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - (CHUNK_SIZE + 16));
+        }
+        
+        assertThrows(RuntimeException.class, () -> AttachmentCipher.decryptFile(encrypted, tempDir.resolve("out"), key),
+            "Truncated attachment should be rejected");
+    }
+}
@@ -0,0 +1,65 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import javax.crypto.SecretKey;
+
+/**
+ * Unit tests for the RSA and EC crypto providers.
+ * Tests key wrapping, algorithm tags, signatures and key decoding.
+ */
+public class CryptoProvidersTest {
+    
+    @Test
+    void testWrapRoundTripForEachProvider() {
+        for (CryptoProvider provider : CryptoProviders.all()) {
+            KeyPair keyPair = provider.generateKeyPair();
+            SecretKey key = RSAUtil.generateContentKey();
+            
+            byte[] wrapped = CryptoProviders.wrapKey(key, keyPair.getPublic());
+            
+            assertEquals(provider.getTag(), wrapped[0], "Wrapped key should start with the provider tag");
+            assertArrayEquals(key.getEncoded(), CryptoProviders.unwrapKey(wrapped, keyPair.getPrivate()).getEncoded(),
+                    provider.getName() + " should recover the wrapped key");
+        }
+    }
+    
+    @Test
+    void testUnwrapRejectsKeyOfOtherAlgorithm() {
+        KeyPair ecKeys = CryptoProviders.forName("ec").generateKeyPair();
+        KeyPair rsaKeys = CryptoProviders.forName("rsa").generateKeyPair();
+        byte[] wrapped = CryptoProviders.wrapKey(RSAUtil.generateContentKey(), ecKeys.getPublic());
+        
+        assertThrows(IllegalArgumentException.class, () -> CryptoProviders.unwrapKey(wrapped, rsaKeys.getPrivate()),
+                "EC-wrapped key should not be unwrapped with an RSA key");
+    }
+    
+    @Test
+    void testSignatureRoundTripForEachProvider() {
+        byte[] data = "signed data".getBytes(StandardCharsets.UTF_8);
+        for (CryptoProvider provider : CryptoProviders.all()) {
+            KeyPair keyPair = provider.generateKeyPair();
+            byte[] signature = provider.sign(data, keyPair.getPrivate());
+            
+            assertTrue(provider.verify(data, signature, keyPair.getPublic()), provider.getName() + " signature should verify");
+            assertFalse(provider.verify("other data".getBytes(StandardCharsets.UTF_8), signature, keyPair.getPublic()),
+                    provider.getName() + " signature should not verify other data");
+        }
+    }
+    
+    @Test
+    void testDecodeKeyPairDetectsAlgorithm() {
+        for (CryptoProvider provider : CryptoProviders.all()) {
+            KeyPair keyPair = provider.generateKeyPair();
+            
+            KeyPair decoded = CryptoProviders.decodeKeyPair(keyPair.getPublic().getEncoded(),
+                    keyPair.getPrivate().getEncoded());
+            
+            assertEquals(provider.getKeyAlgorithm(), decoded.getPublic().getAlgorithm(), "Algorithm should be detected");
+            assertEquals(keyPair.getPublic(), decoded.getPublic(), "Public key should match");
+        }
+    }
+}
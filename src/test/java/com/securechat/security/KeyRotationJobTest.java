@@ -0,0 +1,128 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+import com.securechat.model.User;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Unit tests for KeyRotationJob class.
+ * Tests re-wrapping of stored messages, reads during rotation and resuming after an interruption.
+ */
+public class KeyRotationJobTest {
+    
+    private static final char[] SECRET = "test-secret".toCharArray();
+    
+    @TempDir
+    Path tempDir;
+    
+    private MessageListModel messageModel;
+    private MessageProxy messageProxy;
+    private User alice;
+    private User bob;
+    
+    @BeforeEach
+    void setUp() {
+        messageModel = new MessageListModel();
+        messageProxy = new MessageProxy(messageModel);
+        alice = new User("1", "alice", "hash");
+        bob = new User("2", "bob", "hash");
+    }
+    
+    @Test
+    void testRotationRewrapsStoredMessages() {
+        for (int i = 0; i < 10; i++) {
+            messageProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+        }
+        messageProxy.sendEncryptedGroupMessage(alice, "Everyone", Arrays.asList(bob), "Hello all");
+        KeyPair oldKeys = new KeyPair(bob.getPublicKey(), bob.getPrivateKey());
+        
+        long rewrapped = new KeyRotationJob(messageModel, bob, null, null, RSAUtil::generateKeyPair,
+                ForkJoinPool.commonPool(), 4, 0).start().join();
+        
+        assertEquals(11, rewrapped, "Every message for bob should be re-wrapped");
+        assertNull(bob.getPreviousPrivateKey(), "Previous key should be retired");
+        assertNotEquals(oldKeys.getPublic(), bob.getPublicKey(), "Bob should have a new key pair");
+        MessageProxy freshProxy = new MessageProxy(messageModel);
+        List<Message> messages = messageModel.getMessages();
+        assertEquals("Message 9", freshProxy.decryptMessage(messages.get(9), bob), "Direct message should decrypt");
+        assertEquals("Hello all", freshProxy.decryptMessage(messages.get(10), bob), "Group message should decrypt");
+        assertTrue(freshProxy.verifyMessage(messages.get(9), alice), "Signature should survive re-wrapping");
+    }
+    
+    @Test
+    void testMessagesStayReadableDuringRotation() {
+        messageProxy.sendEncryptedMessage(alice, bob, "Before rotation");
+        
+        bob.rotateKeyPair(RSAUtil.generateKeyPair());
+        messageProxy.sendEncryptedMessage(alice, bob, "After rotation");
+        MessageProxy freshProxy = new MessageProxy(messageModel);
+        
+        assertEquals("Before rotation", freshProxy.decryptMessage(messageModel.getMessages().get(0), bob),
+                "Message for the previous key should decrypt");
+        assertEquals("After rotation", freshProxy.decryptMessage(messageModel.getMessages().get(1), bob),
+                "Message for the new key should decrypt");
+    }
+    
+    @Test
+    void testInterruptedRotationResumes() throws Exception {
+        UserKeyStore keyStore = new UserKeyStore(tempDir.resolve("keys.properties"), SECRET);
+        Path checkpoint = tempDir.resolve("rotation/2.checkpoint");
+        for (int i = 0; i < 6; i++) {
+            messageProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+        }
+        
+        // Simulate a crash right after the new key pair was persisted
+        KeyPair oldKeys = new KeyPair(bob.getPublicKey(), bob.getPrivateKey());
+        KeyPair newKeys = RSAUtil.generateKeyPair();
+        keyStore.loadOrCreate("2", "hash", () -> oldKeys);
+        keyStore.storeRotation("2", newKeys, oldKeys);
+        User restarted = new User("2", "bob", "hash", keyStore.keySource("2", "hash"));
+        
+        assertTrue(keyStore.hasPrevious("2"), "Store should record the unfinished rotation");
+        long rewrapped = new KeyRotationJob(messageModel, restarted, keyStore, checkpoint,
+                () -> { throw new AssertionError("A resumed rotation must not create another key"); },
+                ForkJoinPool.commonPool(), 2, 0).start().join();
+        
+        assertEquals(6, rewrapped, "All messages should be re-wrapped");
+        assertFalse(keyStore.hasPrevious("2"), "Previous key should be removed from the store");
+        assertFalse(Files.exists(checkpoint), "Checkpoint should be deleted when done");
+        assertEquals(newKeys.getPublic(), restarted.getPublicKey(), "Resumed rotation should keep the stored key");
+        assertEquals("Message 5", new MessageProxy(messageModel).decryptMessage(messageModel.getMessages().get(5), restarted),
+                "Messages should decrypt with the new key");
+    }
+    
+    @Test
+    void testSignaturesSurviveSenderRotation() {
+        UserKeyStore keyStore = new UserKeyStore(tempDir.resolve("keys.properties"), SECRET);
+        alice = new User("1", "alice", "hash", keyStore.keySource("1", "hash"));
+        messageProxy.sendEncryptedMessage(alice, bob, "Signed before rotation");
+        
+        new KeyRotationJob(messageModel, alice, keyStore, tempDir.resolve("rotation/1.checkpoint"),
+                RSAUtil::generateKeyPair, ForkJoinPool.commonPool(), 4, 0).start().join();
+        messageProxy.sendEncryptedMessage(alice, bob, "Signed after rotation");
+        
+        List<Message> messages = messageModel.getMessages();
+        assertTrue(new MessageProxy(messageModel).verifyMessage(messages.get(0), alice),
+                "Message signed with the sender's previous key should verify");
+        assertTrue(new MessageProxy(messageModel).verifyMessage(messages.get(1), alice),
+                "Message signed with the sender's new key should verify");
+        User restarted = new User("1", "alice", "hash", keyStore.keySource("1", "hash"));
+        restarted.restoreRetiredPublicKeys(keyStore.loadRetiredPublicKeys("1"));
+        assertTrue(new MessageProxy(messageModel).verifyMessage(messages.get(0), restarted),
+                "Retired public keys should be restored from the key store");
+        assertFalse(new MessageProxy(messageModel).verifyMessage(messages.get(0), bob),
+                "Another user's keys should not verify the message");
+    }
+}
@@ -0,0 +1,229 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.securechat.model.GroupMessage;
+import com.securechat.model.Message;
+import com.securechat.model.MessageListModel;
+import com.securechat.model.ParticipantIds;
+import com.securechat.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * Unit tests for MessageProxy class.
+ * Tests sending and decrypting direct and group messages, session key reuse and signatures.
+ */
+public class MessageProxyTest {
+    
+    private MessageListModel messageModel;
+    private MessageProxy messageProxy;
+    private SessionKeyCache sessions;
+    private User alice;
+    private User bob;
+    private User charlie;
+    
+    @BeforeEach
+    void setUp() {
+        messageModel = new MessageListModel();
+        sessions = new SessionKeyCache();
+        messageProxy = new MessageProxy(messageModel, sessions);
+        alice = new User("1", "alice", "hash");
+        bob = new User("2", "bob", "hash");
+        charlie = new User("3", "charlie", "hash");
+    }
+    
+    @Test
+    void testDirectMessageRoundTrip() {
+        messageProxy.sendEncryptedMessage(alice, bob, "Hello Bob");
+        Message message = messageModel.getMessages().get(0);
+        
+        assertEquals("Hello Bob", messageProxy.decryptMessage(message, bob), "Receiver should decrypt the message");
+        assertNotEquals("Hello Bob", messageProxy.decryptMessage(message, charlie), "Others should not see the plain text");
+    }
+    
+    @Test
+    void testGroupMessageIsStoredOnce() {
+        messageProxy.sendEncryptedGroupMessage(alice, "Everyone", Arrays.asList(bob, charlie), "Hello all");
+        
+        assertEquals(1, messageModel.getMessages().size(), "Group message should be stored as one message");
+        GroupMessage message = (GroupMessage) messageModel.getMessages().get(0);
+        assertEquals("Everyone", message.getGroupName(), "Group name should be kept");
+        assertTrue(message.isRecipient("bob"), "Bob should be a recipient");
+        assertTrue(message.isRecipient("charlie"), "Charlie should be a recipient");
+        assertFalse(message.isRecipient("alice"), "Sender should not be a recipient");
+    }
+    
+    @Test
+    void testGroupMessageDecryptsForEachRecipient() {
+        messageProxy.sendEncryptedGroupMessage(alice, "Everyone", Arrays.asList(bob, charlie), "Hello all");
+        Message message = messageModel.getMessages().get(0);
+        
+        assertEquals("Hello all", messageProxy.decryptMessage(message, bob), "Bob should decrypt the group message");
+        assertEquals("Hello all", messageProxy.decryptMessage(message, charlie), "Charlie should decrypt the group message");
+        assertNotEquals("Hello all", messageProxy.decryptMessage(message, alice), "Non-recipients should not decrypt");
+    }
+    
+    @Test
+    void testConversationReusesSessionKey() {
+        messageProxy.sendEncryptedMessage(alice, bob, "First");
+        messageProxy.sendEncryptedMessage(alice, bob, "Second");
+        messageProxy.sendEncryptedMessage(bob, alice, "Reply");
+        
+        assertEquals(2, sessions.getOutboundSessionCount(), "One session per direction should be set up");
+        assertEquals("First", messageProxy.decryptMessage(messageModel.getMessages().get(0), bob));
+        assertEquals("Second", messageProxy.decryptMessage(messageModel.getMessages().get(1), bob));
+        assertEquals("Reply", messageProxy.decryptMessage(messageModel.getMessages().get(2), alice));
+    }
+    
+    @Test
+    void testReusedSessionIdDoesNotHitAnotherSendersKey() {
+        messageProxy.sendEncryptedMessage(alice, bob, "From alice");
+        messageProxy.sendEncryptedMessage(charlie, bob, "From charlie");
+        Envelope fromAlice = Envelope.parse(messageModel.getMessages().get(0).getCiphertext());
+        Envelope fromCharlie = Envelope.parse(messageModel.getMessages().get(1).getCiphertext());
+        assertEquals("From alice", messageProxy.decryptMessage(messageModel.getMessages().get(0), bob));
+        
+        // Session ids are sent in the clear, so anyone can put alice's on their own envelope
+        byte[] forged = Envelope.session(fromAlice.sessionId, fromCharlie.wrappedKey, fromCharlie.body).toBytes();
+        assertEquals("From charlie", messageProxy.decryptMessage(new Message("charlie", "bob", null, forged), bob),
+                "Another sender's session id should not select alice's cached key");
+        assertEquals("From charlie", messageProxy.decryptMessage(new Message("alice", "bob", null, forged), bob),
+                "A different wrapped key should not select alice's cached key");
+    }
+    
+    @Test
+    void testSessionKeyRotatesAfterMessageLimit() {
+        MessageProxy rotatingProxy = new MessageProxy(messageModel, new SessionKeyCache(60_000, 2, 16));
+        for (int i = 0; i < 5; i++) {
+            rotatingProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+        }
+        
+        // A receiver with a fresh cache must still decrypt messages from every rotated session
+        MessageProxy receiverProxy = new MessageProxy(messageModel);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Message " + i, receiverProxy.decryptMessage(messageModel.getMessages().get(i), bob));
+        }
+    }
+    
+    @Test
+    void testRepeatedDecryptionHitsCache() {
+        messageProxy.sendEncryptedMessage(alice, bob, "Cached");
+        Message message = messageModel.getMessages().get(0);
+        
+        assertEquals("Cached", messageProxy.decryptMessage(message, bob));
+        assertEquals("Cached", messageProxy.decryptMessage(message, bob));
+        assertEquals("Cached", messageProxy.decryptMessage(message, bob));
+        
+        PlaintextCache cache = messageProxy.getPlaintextCache();
+        assertEquals(1, cache.getMisses(), "Only the first decryption should miss");
+        assertEquals(2, cache.getHits(), "Repeated decryptions should hit the cache");
+    }
+    
+    @Test
+    void testClearSecretsEmptiesCache() {
+        messageProxy.sendEncryptedMessage(alice, bob, "Secret");
+        messageProxy.decryptMessage(messageModel.getMessages().get(0), bob);
+        
+        messageProxy.clearSecrets();
+        
+        assertEquals(0, messageProxy.getPlaintextCache().size(), "Cache should be empty after clearing secrets");
+        assertEquals("Secret", messageProxy.decryptMessage(messageModel.getMessages().get(0), bob));
+    }
+    
+    @Test
+    void testDecryptAllKeepsOrderAndReportsFailures() {
+        for (int i = 0; i < 100; i++) {
+            messageProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+        }
+        List<Message> messages = new ArrayList<>(messageModel.getMessages());
+        messages.add(50, new Message("alice", "bob", "Broken", new byte[] {9, 9, 9}));
+        
+        List<DecryptionResult> results = messageProxy.decryptAll(messages, bob);
+        
+        assertEquals(101, results.size(), "Every message should have a result");
+        assertFalse(results.get(50).isSuccess(), "Malformed message should fail on its own");
+        assertNotNull(results.get(50).getError(), "Failure should carry the error");
+        for (int i = 0; i < 101; i++) {
+            if (i != 50) {
+                int expected = i < 50 ? i : i - 1;
+                assertEquals("Message " + expected, results.get(i).getPlainText(), "Results should keep input order");
+            }
+        }
+    }
+    
+    @Test
+    void testAsyncSendsKeepConversationOrder() {
+        List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            sends.add(messageProxy.sendEncryptedMessageAsync(alice, bob, "Async " + i));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+        
+        assertEquals(50, messageModel.getMessages().size(), "All messages should be stored");
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Async " + i, messageModel.getMessages().get(i).getOriginalContent(),
+                "Messages of one conversation should be stored in submission order");
+        }
+    }
+    
+    @Test
+    void testSignatureVerifiesOnlyForRealSender() {
+        messageProxy.sendEncryptedMessage(alice, bob, "Signed");
+        Message message = messageModel.getMessages().get(0);
+        
+        assertTrue(messageProxy.verifyMessage(message, alice), "Signature should verify for the sender");
+        assertFalse(messageProxy.verifyMessage(message, charlie), "Signature should not verify for another user");
+        
+        Message forged = new Message("alice", "bob", "Forged", message.getCiphertext(), message.getSignature());
+        Message retargeted = new Message("alice", "charlie", "Signed", message.getCiphertext(), message.getSignature());
+        assertTrue(messageProxy.verifyMessage(forged, alice), "Original text is not part of the signature");
+        assertFalse(messageProxy.verifyMessage(retargeted, alice), "Changing the receiver should break the signature");
+        assertFalse(messageProxy.verifyMessage(new Message("alice", "bob", "x", new byte[] {1}), alice),
+                "Unsigned messages should not verify");
+    }
+    
+    @Test
+    void testVerifyAllMemoizesOutcomes() {
+        for (int i = 0; i < 40; i++) {
+            messageProxy.sendEncryptedMessage(alice, bob, "Message " + i);
+        }
+        messageProxy.sendEncryptedGroupMessage(charlie, "Everyone", Arrays.asList(alice, bob), "Hello all");
+        List<Message> messages = new ArrayList<>(messageModel.getMessages());
+        messages.add(new Message("mallory", "bob", "Who?", new byte[] {1}, new byte[] {2}));
+        
+        ParticipantIds ids = messageModel.getParticipantIds();
+        IntFunction<User> senders = id -> id == ids.userId("alice") ? alice : id == ids.userId("charlie") ? charlie : null;
+        List<Boolean> first = messageProxy.verifyAll(messages, senders);
+        List<Boolean> second = messageProxy.verifyAll(messages, senders);
+        
+        assertEquals(42, first.size(), "Should return one outcome per message");
+        assertTrue(first.subList(0, 41).stream().allMatch(Boolean::booleanValue), "Signed messages should verify");
+        assertFalse(first.get(41), "Unknown senders should not verify");
+        assertEquals(first, second, "Memoized outcomes should match");
+        assertEquals(41, messageProxy.getSignatureVerifier().getMisses(), "Each message should be checked once");
+        assertEquals(41, messageProxy.getSignatureVerifier().getHits(), "Second pass should be memoized");
+    }
+    
+    @Test
+    void testRsaAndEcUsersCanMessageEachOther() {
+        User dave = new User("4", "dave", "hash", () -> CryptoProviders.forName("ec").generateKeyPair());
+        
+        messageProxy.sendEncryptedMessage(alice, dave, "RSA to EC");
+        messageProxy.sendEncryptedMessage(dave, alice, "EC to RSA");
+        messageProxy.sendEncryptedGroupMessage(alice, "Everyone", Arrays.asList(bob, dave), "Mixed group");
+        List<Message> messages = messageModel.getMessages();
+        
+        assertEquals("RSA to EC", messageProxy.decryptMessage(messages.get(0), dave), "EC user should decrypt");
+        assertEquals("EC to RSA", messageProxy.decryptMessage(messages.get(1), alice), "RSA user should decrypt");
+        assertEquals("Mixed group", messageProxy.decryptMessage(messages.get(2), dave), "EC recipient should decrypt");
+        assertEquals("Mixed group", messageProxy.decryptMessage(messages.get(2), bob), "RSA recipient should decrypt");
+        assertTrue(messageProxy.verifyMessage(messages.get(1), dave), "ECDSA signature should verify");
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.security.PrivateKey;
+import java.util.Base64;
 
 /**
  * Unit tests for RSAUtil class.
@@ -129,4 +130,46 @@ public class RSAUtilTest {
             RSAUtil.decrypt("invalid_cipher_text", privateKey);
         }, "Decrypting invalid cipher text should throw RuntimeException");
     }
+    
+    @Test
+    void testHybridEncryptDecryptLongMessage() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("Long message line ").append(i).append(" 🔒\n");
+        }
+        String longMessage = builder.toString();
+        
+        String encrypted = RSAUtil.encryptHybrid(longMessage, publicKey);
+        String decrypted = RSAUtil.decryptHybrid(encrypted, privateKey);
+        
+        assertEquals(longMessage, decrypted, "Messages longer than the RSA block size should round-trip");
+    }
+    
+    @Test
+    void testHybridEncryptEmptyString() {
+        String encrypted = RSAUtil.encryptHybrid("", publicKey);
+        
+        assertEquals("", RSAUtil.decryptHybrid(encrypted, privateKey), "Empty string should round-trip");
+    }
+    
+    @Test
+    void testHybridDecryptWithWrongKey() {
+        KeyPair wrongKeyPair = RSAUtil.generateKeyPair();
+        String encrypted = RSAUtil.encryptHybrid("Test message", publicKey);
+        
+        assertThrows(RuntimeException.class, () -> {
+            RSAUtil.decryptHybrid(encrypted, wrongKeyPair.getPrivate());
+        }, "Decrypting with wrong key should throw RuntimeException");
+    }
+    
+    @Test
+    void testHybridDecryptTamperedCipherText() {
+        byte[] envelope = Base64.getDecoder().decode(RSAUtil.encryptHybrid("Test message", publicKey));
+        envelope[envelope.length - 1] ^= 1;
+        String tampered = Base64.getEncoder().encodeToString(envelope);
+        
+        assertThrows(RuntimeException.class, () -> {
+            RSAUtil.decryptHybrid(tampered, privateKey);
+        }, "Tampered ciphertext should fail authentication");
+    }
 }
@@ -0,0 +1,42 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit tests for RandomSource class.
+ * Tests per-thread generators and draw timing statistics.
+ */
+public class RandomSourceTest {
+    
+    @Test
+    void testEachThreadGetsItsOwnGenerator() throws Exception {
+        SecureRandom mine = RandomSource.current();
+        SecureRandom other = CompletableFuture.supplyAsync(RandomSource::current, Runnable::run).get();
+        SecureRandom worker = CompletableFuture.supplyAsync(RandomSource::current).get();
+        
+        assertSame(mine, other, "Same thread should reuse its generator");
+        assertNotSame(mine, worker, "Other threads should get their own generator");
+        assertTrue(RandomSource.getInstanceCount() >= 2, "Both generators should be counted");
+        assertTrue(RandomSource.getMaxSeedNanos() > 0, "Seeding each generator should be timed");
+    }
+    
+    @Test
+    void testDrawsAreRecorded() {
+        long before = RandomSource.getDrawCount();
+        byte[] first = new byte[32];
+        byte[] second = new byte[32];
+        
+        RandomSource.nextBytes(first);
+        RSAUtil.generateContentKey();
+        RandomSource.nextBytes(second);
+        
+        assertTrue(RandomSource.getDrawCount() >= before + 3, "Every draw should be counted");
+        assertFalse(Arrays.equals(first, second), "Draws should differ");
+        assertTrue(RandomSource.getMaxDrawNanos() > 0, "Draw time should be recorded");
+    }
+}
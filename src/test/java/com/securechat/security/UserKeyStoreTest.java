@@ -0,0 +1,117 @@
+package com.securechat.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.Base64;
+
+/**
+ * Unit tests for UserKeyStore class.
+ * Tests persistence, reloading and protection of stored key pairs.
+ */
+public class UserKeyStoreTest {
+    
+    private static final char[] SECRET = "test-secret".toCharArray();
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testStoredKeysSurviveReopen() {
+        Path file = tempDir.resolve("keys.properties");
+        KeyPair keyPair = RSAUtil.generateKeyPair();
+        new UserKeyStore(file, SECRET).store("1", keyPair);
+        
+        UserKeyStore reopened = new UserKeyStore(file, SECRET);
+        KeyPair loaded = reopened.load("1");
+        
+        assertTrue(reopened.contains("1"), "Reopened store should contain the user");
+        assertArrayEquals(keyPair.getPublic().getEncoded(), loaded.getPublic().getEncoded(), "Public key should match");
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), loaded.getPrivate().getEncoded(), "Private key should match");
+    }
+    
+    @Test
+    void testOldCiphertextDecryptsAfterReopen() {
+        Path file = tempDir.resolve("keys.properties");
+        KeyPair keyPair = new UserKeyStore(file, SECRET).keySource("1", "hash").get();
+        String encrypted = RSAUtil.encryptHybrid("Hello after restart", keyPair.getPublic());
+        
+        KeyPair reloaded = new UserKeyStore(file, SECRET).keySource("1", "hash").get();
+        
+        assertEquals("Hello after restart", RSAUtil.decryptHybrid(encrypted, reloaded.getPrivate()),
+                "Messages encrypted before a restart should stay readable");
+    }
+    
+    @Test
+    void testStoredKeysAreBoundToTheirAccount() {
+        Path file = tempDir.resolve("keys.properties");
+        KeyPair owner = new UserKeyStore(file, SECRET).keySource("1", "owner-hash").get();
+        new UserKeyStore(file, SECRET).keySource("2", "other-hash").get();
+        
+        UserKeyStore reopened = new UserKeyStore(file, SECRET);
+        assertTrue(reopened.belongsToOtherAccount("1", "intruder-hash"), "Another account should not claim the ID");
+        assertFalse(reopened.belongsToOtherAccount("1", "owner-hash"));
+        assertThrows(IllegalStateException.class, () -> reopened.keySource("1", "intruder-hash").get(),
+                "Another account should not get the stored keys");
+        KeyPair reloaded = reopened.keySource("1", "owner-hash").get();
+        assertArrayEquals(owner.getPrivate().getEncoded(), reloaded.getPrivate().getEncoded(),
+                "Appended entries should be read back");
+    }
+    
+    @Test
+    void testUnboundKeysAreNotClaimedByAnAccount() {
+        Path file = tempDir.resolve("keys.properties");
+        new UserKeyStore(file, SECRET).store("1", RSAUtil.generateKeyPair());
+        
+        UserKeyStore reopened = new UserKeyStore(file, SECRET);
+        assertTrue(reopened.belongsToOtherAccount("1", "owner-hash"), "Keys bound to no account should not be claimed");
+        assertThrows(IllegalStateException.class, () -> reopened.keySource("1", "owner-hash").get(),
+                "The first account to load unbound keys should not get them");
+    }
+    
+    @Test
+    void testWrappedKeyCannotMoveToAnotherUser() throws Exception {
+        Path file = tempDir.resolve("keys.properties");
+        new UserKeyStore(file, SECRET).store("1", RSAUtil.generateKeyPair());
+        String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        Files.write(file, content.replace("1.p", "2.p").getBytes(StandardCharsets.ISO_8859_1));
+        
+        assertThrows(RuntimeException.class, () -> new UserKeyStore(file, SECRET).load("2"),
+                "A private key should only unwrap for the user it was stored for");
+    }
+    
+    @Test
+    void testPrivateKeyIsNotStoredInClear() throws Exception {
+        Path file = tempDir.resolve("keys.properties");
+        KeyPair keyPair = RSAUtil.generateKeyPair();
+        new UserKeyStore(file, SECRET).store("1", keyPair);
+        
+        String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        String clearPrivate = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+        
+        assertFalse(content.contains(clearPrivate.substring(0, 64)), "Private key must be wrapped");
+    }
+    
+    @Test
+    void testWrongSecretCannotLoadPrivateKey() {
+        Path file = tempDir.resolve("keys.properties");
+        new UserKeyStore(file, SECRET).store("1", RSAUtil.generateKeyPair());
+        
+        UserKeyStore wrongSecret = new UserKeyStore(file, "wrong".toCharArray());
+        
+        assertThrows(RuntimeException.class, () -> wrongSecret.load("1"), "Wrong master secret should fail");
+    }
+    
+    @Test
+    void testLoadUnknownUserReturnsNull() {
+        UserKeyStore store = new UserKeyStore(tempDir.resolve("missing.properties"), SECRET);
+        
+        assertNull(store.load("unknown"), "Unknown user should have no stored keys");
+        assertFalse(store.contains("unknown"), "Unknown user should not be contained");
+    }
+}